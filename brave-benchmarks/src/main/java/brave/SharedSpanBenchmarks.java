@@ -0,0 +1,86 @@
+package brave;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin.reporter.Reporter;
+
+/**
+ * Compares synchronized and lock-free recording when many threads mutate the same span, as happens
+ * with asynchronous clients. Each thread annotates and tags the current span, periodically
+ * finishing it and replacing it with a new one.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@Threads(8)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SharedSpanBenchmarks {
+  static final int MUTATIONS_PER_SPAN = 32;
+
+  Tracer synchronizedTracer;
+  Tracer lockFreeTracer;
+  AtomicReference<Span> synchronizedSpan;
+  AtomicReference<Span> lockFreeSpan;
+
+  @State(Scope.Thread)
+  public static class Counter {
+    int count;
+  }
+
+  @Setup
+  public void setup() {
+    synchronizedTracer = Tracer.newBuilder()
+        .reporter(Reporter.NOOP)
+        .build();
+    lockFreeTracer = Tracer.newBuilder()
+        .reporter(Reporter.NOOP)
+        .lockFreeRecording(true)
+        .build();
+    synchronizedSpan = new AtomicReference<>(synchronizedTracer.newTrace().start());
+    lockFreeSpan = new AtomicReference<>(lockFreeTracer.newTrace().start());
+  }
+
+  @Benchmark
+  public void sharedSpan_synchronized(Counter counter) {
+    mutateSharedSpan(synchronizedTracer, synchronizedSpan, counter);
+  }
+
+  @Benchmark
+  public void sharedSpan_lockFree(Counter counter) {
+    mutateSharedSpan(lockFreeTracer, lockFreeSpan, counter);
+  }
+
+  static void mutateSharedSpan(Tracer tracer, AtomicReference<Span> current, Counter counter) {
+    Span span = current.get();
+    span.annotate("callback");
+    span.tag("thread", "worker");
+    if (++counter.count % MUTATIONS_PER_SPAN != 0) return;
+    if (current.compareAndSet(span, tracer.newTrace().start())) span.finish();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + SharedSpanBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -18,8 +18,10 @@ import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.Warmup;
+import zipkin.Codec;
 import zipkin.Constants;
 import zipkin.TraceKeys;
+import zipkin.reporter.Encoding;
 import zipkin.reporter.Reporter;
 
 import static brave.Span.Kind.CLIENT;
@@ -33,6 +35,9 @@ import static brave.Span.Kind.CLIENT;
 public class SpanCreationBenchmarks {
 
   Tracer tracer;
+  Tracer recyclingTracer;
+  Tracer encodingTracer;
+  Tracer bytesTracer;
   Recorder recorder;
   Clock clock;
   Brave brave;
@@ -43,6 +48,18 @@ public class SpanCreationBenchmarks {
     tracer = Tracer.newBuilder()
         .reporter(Reporter.NOOP)
         .build();
+    recyclingTracer = Tracer.newBuilder()
+        .reporter(Reporter.NOOP)
+        .recycleSpans(true)
+        .build();
+    // compares encoding a zipkin.Span vs encoding the recorded state directly
+    encodingTracer = Tracer.newBuilder()
+        .reporter(span -> Codec.JSON.writeSpan(span))
+        .build();
+    bytesTracer = Tracer.newBuilder()
+        .reporter(Encoding.JSON, span -> {
+        })
+        .build();
     recorder = tracer.recorder;
     clock = tracer.clock;
     brave = new Brave.Builder()
@@ -106,6 +123,80 @@ public class SpanCreationBenchmarks {
     return span;
   }
 
+  /** Like {@link #elaborateSpan_brave4()}, except fields are applied to the span in one step. */
+  @Benchmark
+  public Span elaborateSpan_brave4_fields() {
+    Span span = tracer.newTrace().start(new SpanFields()
+        .kind(CLIENT)
+        .name("getOrCreate")
+        .tag("clnt/finagle.version", "6.36.0")
+        .tag(TraceKeys.HTTP_PATH, "/api")
+        .remoteEndpoint(zipkin.Endpoint.builder()
+            .serviceName("backend")
+            .ipv4(127 << 24 | 1)
+            .port(8080).build()));
+
+    span.annotate(Constants.WIRE_SEND);
+    span.annotate(Constants.WIRE_RECV);
+    span.finish();
+
+    return span;
+  }
+
+  @Benchmark
+  public Span simpleRootSpan_brave4_recycled() {
+    Span span = recyclingTracer.newTrace().name("encode").start();
+    span.finish();
+    return span; // to satisfy the signature
+  }
+
+  @Benchmark
+  public Span elaborateSpan_brave4_recycled() {
+    Span span = recyclingTracer.newTrace().kind(CLIENT).name("getOrCreate");
+
+    span.tag("clnt/finagle.version", "6.36.0");
+    span.tag(TraceKeys.HTTP_PATH, "/api");
+    span.remoteEndpoint(zipkin.Endpoint.builder()
+        .serviceName("backend")
+        .ipv4(127 << 24 | 1)
+        .port(8080).build());
+
+    span.start();
+    span.annotate(Constants.WIRE_SEND);
+    span.annotate(Constants.WIRE_RECV);
+    span.finish();
+
+    return span;
+  }
+
+  @Benchmark
+  public Span elaborateSpan_brave4_encoded() {
+    return elaborateSpan(encodingTracer);
+  }
+
+  @Benchmark
+  public Span elaborateSpan_brave4_bytes() {
+    return elaborateSpan(bytesTracer);
+  }
+
+  static Span elaborateSpan(Tracer tracer) {
+    Span span = tracer.newTrace().kind(CLIENT).name("getOrCreate");
+
+    span.tag("clnt/finagle.version", "6.36.0");
+    span.tag(TraceKeys.HTTP_PATH, "/api");
+    span.remoteEndpoint(zipkin.Endpoint.builder()
+        .serviceName("backend")
+        .ipv4(127 << 24 | 1)
+        .port(8080).build());
+
+    span.start();
+    span.annotate(Constants.WIRE_SEND);
+    span.annotate(Constants.WIRE_RECV);
+    span.finish();
+
+    return span;
+  }
+
   @Benchmark
   public Recorder simpleRootSpan_brave4_recorder() {
     TraceContext context = tracer.nextContext(null, SamplingFlags.SAMPLED);
@@ -0,0 +1,121 @@
+package brave.propagation;
+
+import com.github.kristofa.brave.Brave;
+import com.github.kristofa.brave.BraveExecutorService;
+import com.github.kristofa.brave.SpanId;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin.reporter.Reporter;
+
+/**
+ * Measures the per-task overhead of executor wrappers which propagate the current span. Tasks run
+ * on the calling thread, so the results exclude the cost of handing off to another thread.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class CurrentTraceContextExecutorBenchmarks {
+  static final TraceContext CONTEXT = TraceContext.newBuilder().traceId(1L).spanId(2L).build();
+
+  final ExecutorService bare = new DirectExecutorService();
+  final CurrentTraceContext currentTraceContext = CurrentTraceContext.Default.create();
+  final ExecutorService currentTraceContextExecutor = currentTraceContext.executorService(bare);
+  final Brave brave = new Brave.Builder("benchmark")
+      .reporter(Reporter.NOOP).build();
+  final ExecutorService braveExecutorService = BraveExecutorService.wrap(bare, brave);
+
+  CurrentTraceContext.Scope scope;
+
+  /** Runs on the benchmark thread, as the state is per-thread */
+  @Setup public void inScope() {
+    scope = currentTraceContext.newScope(CONTEXT);
+    brave.serverTracer().setStateCurrentTrace(SpanId.builder().traceId(1L).spanId(2L).build(),
+        "benchmark");
+  }
+
+  @TearDown public void closeScope() {
+    scope.close();
+    brave.serverTracer().clearCurrentSpan();
+  }
+
+  @Benchmark public void execute_bare(final Blackhole bh) {
+    bare.execute(new Runnable() {
+      @Override public void run() {
+        bh.consume(CONTEXT);
+      }
+    });
+  }
+
+  @Benchmark public void execute_currentTraceContext(final Blackhole bh) {
+    currentTraceContextExecutor.execute(new Runnable() {
+      @Override public void run() {
+        bh.consume(currentTraceContext.get());
+      }
+    });
+  }
+
+  /** Brave 3 wraps each task in a BraveRunnable, which binds both the server and local span */
+  @Benchmark public void execute_braveExecutorService(final Blackhole bh) {
+    braveExecutorService.execute(new Runnable() {
+      @Override public void run() {
+        bh.consume(brave.serverSpanThreadBinder().getCurrentServerSpan());
+      }
+    });
+  }
+
+  static final class DirectExecutorService extends AbstractExecutorService {
+    @Override public void execute(Runnable command) {
+      command.run();
+    }
+
+    @Override public void shutdown() {
+    }
+
+    @Override public List<Runnable> shutdownNow() {
+      return Collections.emptyList();
+    }
+
+    @Override public boolean isShutdown() {
+      return false;
+    }
+
+    @Override public boolean isTerminated() {
+      return false;
+    }
+
+    @Override public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return false;
+    }
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + CurrentTraceContextExecutorBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,170 @@
+package brave.propagation;
+
+import brave.internal.HexCodec;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the cost of injecting and extracting a trace context with each propagation format.
+ * The {@code charSequence} benchmarks read values held as ASCII bytes, like Netty's {@code
+ * AsciiString}, without converting them to strings.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class PropagationBenchmarks {
+  static final Charset ASCII = Charset.forName("US-ASCII");
+
+  static final B3Propagation<String> b3 = B3Propagation.create(Propagation.KeyFactory.STRING);
+  static final B3SinglePropagation<String> b3Single =
+      B3SinglePropagation.create(Propagation.KeyFactory.STRING);
+  static final BinaryPropagation<String> binary =
+      BinaryPropagation.create(Propagation.KeyFactory.STRING);
+
+  static final TraceContext.Injector<Map<String, String>> b3Injector = b3.injector(Map::put);
+  static final TraceContext.Injector<Map<String, String>> b3SingleInjector =
+      b3Single.injector(Map::put);
+  static final TraceContext.Injector<Map<String, byte[]>> binaryInjector =
+      binary.injector(Map::put);
+
+  static final TraceContext.Extractor<Map<String, String>> b3Extractor = b3.extractor(Map::get);
+  static final TraceContext.Extractor<Map<String, AsciiString>> b3CharSequenceExtractor =
+      b3.charSequenceExtractor(Map::get);
+  /** What a carrier holding bytes had to do before {@link Propagation.CharSequenceGetter} */
+  static final TraceContext.Extractor<Map<String, AsciiString>> b3ViaStringExtractor =
+      b3.extractor((carrier, key) -> {
+        AsciiString value = carrier.get(key);
+        return value != null ? value.toString() : null;
+      });
+  static final TraceContext.Extractor<Map<String, String>> b3SingleExtractor =
+      b3Single.extractor(Map::get);
+  static final TraceContext.Extractor<Map<String, AsciiString>> b3SingleCharSequenceExtractor =
+      b3Single.charSequenceExtractor(Map::get);
+  static final TraceContext.Extractor<Map<String, byte[]>> binaryExtractor =
+      binary.extractor(Map::get);
+
+  static final TraceContext context = TraceContext.newBuilder()
+      .traceIdHigh(333L)
+      .traceId(444L)
+      .parentId(1L)
+      .spanId(3L)
+      .sampled(true)
+      .build();
+
+  static final Map<String, String> incoming = new LinkedHashMap<>();
+  static final Map<String, AsciiString> incomingAscii = new LinkedHashMap<>();
+  static final Map<String, String> incomingSingle = new LinkedHashMap<>();
+  static final Map<String, AsciiString> incomingSingleAscii = new LinkedHashMap<>();
+  static final Map<String, byte[]> incomingBinary = new LinkedHashMap<>();
+  static final String spanIdHex = context.spanIdString();
+
+  static {
+    b3Injector.inject(context, incoming);
+    for (Map.Entry<String, String> entry : incoming.entrySet()) {
+      incomingAscii.put(entry.getKey(), new AsciiString(entry.getValue()));
+    }
+    b3SingleInjector.inject(context, incomingSingle);
+    for (Map.Entry<String, String> entry : incomingSingle.entrySet()) {
+      incomingSingleAscii.put(entry.getKey(), new AsciiString(entry.getValue()));
+    }
+    binaryInjector.inject(context, incomingBinary);
+  }
+
+  Map<String, String> carrier = new LinkedHashMap<>();
+  Map<String, byte[]> binaryCarrier = new LinkedHashMap<>();
+
+  @Benchmark public Map<String, String> inject_b3() {
+    b3Injector.inject(context, carrier);
+    return carrier;
+  }
+
+  @Benchmark public Map<String, String> inject_b3Single() {
+    b3SingleInjector.inject(context, carrier);
+    return carrier;
+  }
+
+  @Benchmark public Map<String, byte[]> inject_binary() {
+    binaryInjector.inject(context, binaryCarrier);
+    return binaryCarrier;
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_b3() {
+    return b3Extractor.extract(incoming);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_b3_charSequence() {
+    return b3CharSequenceExtractor.extract(incomingAscii);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_b3_charSequence_viaString() {
+    return b3ViaStringExtractor.extract(incomingAscii);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_b3Single() {
+    return b3SingleExtractor.extract(incomingSingle);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_b3Single_charSequence() {
+    return b3SingleCharSequenceExtractor.extract(incomingSingleAscii);
+  }
+
+  @Benchmark public TraceContextOrSamplingFlags extract_binary() {
+    return binaryExtractor.extract(incomingBinary);
+  }
+
+  @Benchmark public long lowerHexToUnsignedLong() {
+    return HexCodec.lowerHexToUnsignedLong(spanIdHex);
+  }
+
+  /** Like Netty's {@code AsciiString}, this holds characters as bytes. */
+  static final class AsciiString implements CharSequence {
+    final byte[] value;
+
+    AsciiString(String value) {
+      this.value = value.getBytes(ASCII);
+    }
+
+    @Override public int length() {
+      return value.length;
+    }
+
+    @Override public char charAt(int index) {
+      return (char) (value[index] & 0xff);
+    }
+
+    @Override public CharSequence subSequence(int start, int end) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public String toString() {
+      return new String(value, ASCII);
+    }
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + PropagationBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,102 @@
+package brave.sampler;
+
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the cost of a sampling decision with the samplers in {@code brave.sampler}. The {@code
+ * contended} benchmarks run on 8 threads, as happens when a busy server starts a trace for each
+ * request.
+ *
+ * <p>This only tests performance, not how close samplers get to their rate.
+ *
+ * @see com.github.kristofa.brave.SamplerBenchmarks for Brave 3 and reference samplers
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class SamplerBenchmarks {
+  static final float SAMPLE_RATE = 0.01f;
+  static final long TRACE_ID = 1234567890987654321L;
+
+  final Sampler boundary = BoundarySampler.create(SAMPLE_RATE);
+  final Sampler counting = CountingSampler.create(SAMPLE_RATE);
+  final Sampler rateLimiting = RateLimitingSampler.create(100);
+  final Sampler synchronizedCounting = new SynchronizedCountingSampler(SAMPLE_RATE);
+
+  @Benchmark public boolean sampler_boundary() {
+    return boundary.isSampled(TRACE_ID);
+  }
+
+  @Benchmark @Threads(8) public boolean sampler_boundary_contended() {
+    return boundary.isSampled(TRACE_ID);
+  }
+
+  @Benchmark public boolean sampler_counting() {
+    return counting.isSampled(TRACE_ID);
+  }
+
+  @Benchmark @Threads(8) public boolean sampler_counting_contended() {
+    return counting.isSampled(TRACE_ID);
+  }
+
+  @Benchmark public boolean sampler_synchronizedCounting() {
+    return synchronizedCounting.isSampled(TRACE_ID);
+  }
+
+  @Benchmark @Threads(8) public boolean sampler_synchronizedCounting_contended() {
+    return synchronizedCounting.isSampled(TRACE_ID);
+  }
+
+  @Benchmark public boolean sampler_rateLimiting() {
+    return rateLimiting.isSampled(TRACE_ID);
+  }
+
+  @Benchmark @Threads(8) public boolean sampler_rateLimiting_contended() {
+    return rateLimiting.isSampled(TRACE_ID);
+  }
+
+  /** The former implementation of {@link CountingSampler}, which had 1% granularity */
+  static final class SynchronizedCountingSampler extends Sampler {
+    private int i; // guarded by this
+    private final BitSet sampleDecisions;
+
+    SynchronizedCountingSampler(float rate) {
+      int outOf100 = (int) (rate * 100.0f);
+      this.sampleDecisions = CountingSampler.randomBitSet(100, outOf100, new Random());
+    }
+
+    @Override public synchronized boolean isSampled(long traceIdIgnored) {
+      boolean result = sampleDecisions.get(i++);
+      if (i == 100) i = 0;
+      return result;
+    }
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + SamplerBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
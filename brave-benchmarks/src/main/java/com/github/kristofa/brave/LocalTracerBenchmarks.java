@@ -0,0 +1,93 @@
+package com.github.kristofa.brave;
+
+import com.twitter.zipkin.gen.Endpoint;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import zipkin.reporter.Reporter;
+
+/**
+ * Compares the overhead of {@link ServerClientAndLocalSpanState} implementations when starting and
+ * finishing local spans, which reads and writes the current span several times.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class LocalTracerBenchmarks {
+  static final Endpoint ENDPOINT = Endpoint.create("benchmark", 127 << 24 | 1);
+
+  final LocalTracer threadLocal = localTracer(new ThreadLocalServerClientAndLocalSpanState(ENDPOINT));
+  final LocalTracer singleThreadLocal =
+      localTracer(new SingleThreadLocalServerClientAndLocalSpanState(ENDPOINT));
+  final LocalTracer inheritable =
+      localTracer(new InheritableServerClientAndLocalSpanState(ENDPOINT));
+
+  static LocalTracer localTracer(ServerClientAndLocalSpanState state) {
+    return new Brave.Builder(state).reporter(Reporter.NOOP).build().localTracer();
+  }
+
+  @Benchmark
+  public void startFinish_threadLocal() {
+    startFinish(threadLocal);
+  }
+
+  @Benchmark
+  public void startFinish_singleThreadLocal() {
+    startFinish(singleThreadLocal);
+  }
+
+  @Benchmark
+  public void startFinish_inheritable() {
+    startFinish(inheritable);
+  }
+
+  @Benchmark
+  public void startFinishNested_threadLocal() {
+    startFinishNested(threadLocal);
+  }
+
+  @Benchmark
+  public void startFinishNested_singleThreadLocal() {
+    startFinishNested(singleThreadLocal);
+  }
+
+  @Benchmark
+  public void startFinishNested_inheritable() {
+    startFinishNested(inheritable);
+  }
+
+  static void startFinish(LocalTracer tracer) {
+    tracer.startNewSpan("benchmark", "outer");
+    tracer.finishSpan();
+  }
+
+  static void startFinishNested(LocalTracer tracer) {
+    tracer.startNewSpan("benchmark", "outer");
+    tracer.startNewSpan("benchmark", "inner");
+    tracer.finishSpan();
+    tracer.finishSpan();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + LocalTracerBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
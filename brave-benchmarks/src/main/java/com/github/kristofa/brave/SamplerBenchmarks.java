@@ -87,6 +87,15 @@ public class SamplerBenchmarks {
 
   static final Sampler TRACE_ID_SAMPLER_COUNTING = CountingSampler.create(SAMPLE_RATE);
 
+  /**
+   * Like {@link #sampler_counting}, except on 8 threads, as happens when a busy server starts a
+   * trace for each request.
+   */
+  @Benchmark @Threads(8)
+  public boolean sampler_counting_contended(Args args) {
+    return TRACE_ID_SAMPLER_COUNTING.isSampled(args.traceId);
+  }
+
   /**
    * Finagle's scala sampler samples using modulo 10000 arithmetic, which allows a minimum sample
    * rate of 0.01%.
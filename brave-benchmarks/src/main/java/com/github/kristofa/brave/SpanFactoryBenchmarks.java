@@ -0,0 +1,65 @@
+package com.github.kristofa.brave;
+
+import com.twitter.zipkin.gen.Span;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares provisioning new traces from a shared {@link Random} vs one per thread. Run with {@code
+ * -t} set to the number of cores to see how each scales.
+ */
+@Measurement(iterations = 5, time = 1)
+@Warmup(iterations = 10, time = 1)
+@Fork(3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Threads(8)
+@State(Scope.Benchmark)
+public class SpanFactoryBenchmarks {
+  final SpanFactory sharedRandom = SpanFactory.Default.builder()
+      .randomGenerator(new Random()).build();
+  final SpanFactory threadLocalRandom = SpanFactory.Default.builder().build();
+
+  @Benchmark
+  public Span nextSpan_sharedRandom() {
+    return sharedRandom.nextSpan(null);
+  }
+
+  @Benchmark
+  public Span nextSpan_threadLocalRandom() {
+    return threadLocalRandom.nextSpan(null);
+  }
+
+  @Benchmark
+  public long nextLong_sharedRandom() {
+    return ((SpanFactory.Default) sharedRandom).nextLong();
+  }
+
+  @Benchmark
+  public long nextLong_threadLocalRandom() {
+    return ((SpanFactory.Default) threadLocalRandom).nextLong();
+  }
+
+  // Convenience main entry-point
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+        .include(".*" + SpanFactoryBenchmarks.class.getSimpleName() + ".*")
+        .build();
+
+    new Runner(opt).run();
+  }
+}
@@ -0,0 +1,240 @@
+package com.github.kristofa.brave;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import zipkin.reporter.ReporterMetrics;
+
+import static com.github.kristofa.brave.internal.Util.checkNotNull;
+import static zipkin.internal.Util.checkArgument;
+
+/**
+ * This sampler lowers its rate while the reporter can't keep up, so that traces are dropped whole
+ * at the root, instead of spans being dropped at random after they were recorded.
+ *
+ * <p>The reporter signals pressure via {@link ReporterMetrics}. Pass the result of {@link
+ * #wrap(ReporterMetrics)} when building it:
+ * <pre>{@code
+ * sampler = AdaptiveSampler.newBuilder().rate(0.1f).build();
+ * reporter = AsyncReporter.builder(sender)
+ *     .metrics(sampler.wrap(metrics))
+ *     .build();
+ * braveBuilder.traceSampler(sampler).reporter(reporter);
+ * }</pre>
+ *
+ * <p>When using a {@link SpanCollector}, pass the result of {@link
+ * #wrap(SpanCollectorMetricsHandler)} to it instead. Span collectors only report drops, not queue
+ * depth.
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>Once per {@link Builder#adjustmentInterval(long, TimeUnit) interval}, the first caller of
+ * {@link #isSampled(long)} adjusts the rate. If spans were dropped, or more spans were queued than
+ * {@link Builder#maxQueuedSpans(int)}, the rate halves, down to {@link Builder#minRate(float)}.
+ * Otherwise, it recovers a tenth of the configured rate, up to that rate. Halving quickly sheds
+ * load, while the linear recovery avoids flapping back into pressure.
+ *
+ * <p>Like {@link BoundarySampler}, decisions are made on the trace ID with modulo 10000
+ * arithmetic, so the granularity is 0.01%. The rate is an atomic integer, and only the caller that
+ * wins the compare-and-set of the next deadline adjusts it. Callers never block each other.
+ */
+public final class AdaptiveSampler extends Sampler {
+  static final long SALT = new Random().nextLong();
+  static final int SCALE = 10000;
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  public static final class Builder {
+    float rate = 1.0f, minRate = 0.0001f;
+    int maxQueuedSpans = Integer.MAX_VALUE;
+    long adjustmentIntervalNanos = TimeUnit.SECONDS.toNanos(1);
+
+    /** The rate to sample at when there's no pressure. Defaults to 1.0, or all traces. */
+    public Builder rate(float rate) {
+      checkArgument(rate >= 0.0001f && rate <= 1, "rate should be between 0.0001 and 1: was %s",
+          rate);
+      this.rate = rate;
+      return this;
+    }
+
+    /** The rate never drops below this, so some traces get through. Defaults to 0.0001. */
+    public Builder minRate(float minRate) {
+      checkArgument(minRate >= 0 && minRate <= 1, "minRate should be between 0 and 1: was %s",
+          minRate);
+      this.minRate = minRate;
+      return this;
+    }
+
+    /**
+     * Queued spans over this are pressure, even if none were dropped yet. Defaults to only consider
+     * dropped spans.
+     */
+    public Builder maxQueuedSpans(int maxQueuedSpans) {
+      checkArgument(maxQueuedSpans >= 0, "maxQueuedSpans < 0");
+      this.maxQueuedSpans = maxQueuedSpans;
+      return this;
+    }
+
+    /** How often the rate is adjusted. Defaults to one second. */
+    public Builder adjustmentInterval(long duration, TimeUnit unit) {
+      checkArgument(duration > 0, "duration <= 0");
+      this.adjustmentIntervalNanos = unit.toNanos(duration);
+      return this;
+    }
+
+    public AdaptiveSampler build() {
+      checkArgument(minRate <= rate, "minRate > rate");
+      return new AdaptiveSampler(this);
+    }
+
+    Builder() {
+    }
+  }
+
+  final int maxRate, minRate, step, maxQueuedSpans;
+  final long adjustmentIntervalNanos;
+  /** The current rate, out of {@link #SCALE} */
+  final AtomicInteger rate;
+  final AtomicInteger droppedSpans = new AtomicInteger();
+  volatile int queuedSpans;
+  final AtomicLong nextAdjustment;
+
+  AdaptiveSampler(Builder builder) {
+    maxRate = Math.round(builder.rate * SCALE);
+    minRate = Math.round(builder.minRate * SCALE);
+    step = Math.max(1, maxRate / 10);
+    maxQueuedSpans = builder.maxQueuedSpans;
+    adjustmentIntervalNanos = builder.adjustmentIntervalNanos;
+    rate = new AtomicInteger(maxRate);
+    nextAdjustment = new AtomicLong(System.nanoTime() + adjustmentIntervalNanos);
+  }
+
+  /**
+   * Returns metrics that record pressure on this sampler before delegating. Pass this to the
+   * reporter whose pressure should lower the sample rate.
+   */
+  public ReporterMetrics wrap(ReporterMetrics delegate) {
+    return new PressureMetrics(this, checkNotNull(delegate, "delegate"));
+  }
+
+  /**
+   * Returns a metrics handler that records dropped spans on this sampler before delegating. Pass
+   * this to the span collector whose pressure should lower the sample rate.
+   */
+  public SpanCollectorMetricsHandler wrap(SpanCollectorMetricsHandler delegate) {
+    return new PressureMetricsHandler(this, checkNotNull(delegate, "delegate"));
+  }
+
+  /** Records spans that were dropped. Use this if the reporter doesn't use ReporterMetrics. */
+  public void incrementSpansDropped(int quantity) {
+    droppedSpans.addAndGet(quantity);
+  }
+
+  /** Records the count of spans queued. Use this if the reporter doesn't use ReporterMetrics. */
+  public void updateQueuedSpans(int update) {
+    queuedSpans = update;
+  }
+
+  /** Returns the current sample rate, which is lower than the configured one under pressure. */
+  public float rate() {
+    return rate.get() / (float) SCALE;
+  }
+
+  @Override public boolean isSampled(long traceId) {
+    long now = System.nanoTime(), adjustAt = nextAdjustment.get();
+    if (now - adjustAt >= 0) { // subtract, as nanoTime can overflow
+      // Only one caller wins the adjustment. Losers use the current rate.
+      if (nextAdjustment.compareAndSet(adjustAt, now + adjustmentIntervalNanos)) adjust();
+    }
+    long t = (traceId ^ SALT) & Long.MAX_VALUE;
+    return t % SCALE < rate.get();
+  }
+
+  void adjust() {
+    int dropped = droppedSpans.getAndSet(0);
+    int current = rate.get();
+    if (dropped > 0 || queuedSpans > maxQueuedSpans) {
+      rate.set(Math.max(minRate, current / 2));
+    } else if (current < maxRate) {
+      rate.set(Math.min(maxRate, current + step));
+    }
+  }
+
+  @Override public String toString() {
+    return "AdaptiveSampler(" + rate() + ")";
+  }
+
+  static final class PressureMetrics implements ReporterMetrics {
+    final AdaptiveSampler sampler;
+    final ReporterMetrics delegate;
+
+    PressureMetrics(AdaptiveSampler sampler, ReporterMetrics delegate) {
+      this.sampler = sampler;
+      this.delegate = delegate;
+    }
+
+    @Override public void incrementSpansDropped(int quantity) {
+      sampler.incrementSpansDropped(quantity);
+      delegate.incrementSpansDropped(quantity);
+    }
+
+    @Override public void updateQueuedSpans(int update) {
+      sampler.updateQueuedSpans(update);
+      delegate.updateQueuedSpans(update);
+    }
+
+    @Override public void incrementMessages() {
+      delegate.incrementMessages();
+    }
+
+    @Override public void incrementMessagesDropped(Throwable cause) {
+      delegate.incrementMessagesDropped(cause);
+    }
+
+    @Override public void incrementSpans(int quantity) {
+      delegate.incrementSpans(quantity);
+    }
+
+    @Override public void incrementSpanBytes(int quantity) {
+      delegate.incrementSpanBytes(quantity);
+    }
+
+    @Override public void incrementMessageBytes(int quantity) {
+      delegate.incrementMessageBytes(quantity);
+    }
+
+    @Override public void updateQueuedBytes(int update) {
+      delegate.updateQueuedBytes(update);
+    }
+
+    @Override public String toString() {
+      return delegate.toString();
+    }
+  }
+
+  static final class PressureMetricsHandler implements SpanCollectorMetricsHandler {
+    final AdaptiveSampler sampler;
+    final SpanCollectorMetricsHandler delegate;
+
+    PressureMetricsHandler(AdaptiveSampler sampler, SpanCollectorMetricsHandler delegate) {
+      this.sampler = sampler;
+      this.delegate = delegate;
+    }
+
+    @Override public void incrementAcceptedSpans(int quantity) {
+      delegate.incrementAcceptedSpans(quantity);
+    }
+
+    @Override public void incrementDroppedSpans(int quantity) {
+      sampler.incrementSpansDropped(quantity);
+      delegate.incrementDroppedSpans(quantity);
+    }
+
+    @Override public String toString() {
+      return delegate.toString();
+    }
+  }
+}
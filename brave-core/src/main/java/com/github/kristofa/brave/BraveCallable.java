@@ -31,21 +31,26 @@ public abstract class BraveCallable<T> implements Callable<T> {
             brave.localSpanThreadBinder(),
             brave.localSpanThreadBinder().getCurrentLocalSpan(),
             brave.serverSpanThreadBinder(),
-            brave.serverSpanThreadBinder().getCurrentServerSpan()
+            brave.serverSpanThreadBinder().getCurrentServerSpan(),
+            null,
+            0L
         );
     }
 
     static <T> BraveCallable<T> wrap( // hidden for package-scoped use
         Callable<T> callable,
         LocalSpanThreadBinder localSpanThreadBinder,
-        ServerSpanThreadBinder serverSpanThreadBinder
+        ServerSpanThreadBinder serverSpanThreadBinder,
+        @Nullable Recorder timingRecorder
     ) {
         return new AutoValue_BraveCallable(
             callable,
             localSpanThreadBinder,
             localSpanThreadBinder.getCurrentLocalSpan(),
             serverSpanThreadBinder,
-            serverSpanThreadBinder.getCurrentServerSpan()
+            serverSpanThreadBinder.getCurrentServerSpan(),
+            timingRecorder,
+            timingRecorder != null ? timingRecorder.currentTimeMicroseconds() : 0L
         );
     }
 
@@ -61,7 +66,9 @@ public abstract class BraveCallable<T> implements Callable<T> {
             null,
             null,
             serverSpanThreadBinder,
-            serverSpanThreadBinder.getCurrentServerSpan()
+            serverSpanThreadBinder.getCurrentServerSpan(),
+            null,
+            0L
         );
     }
 
@@ -73,6 +80,14 @@ public abstract class BraveCallable<T> implements Callable<T> {
     abstract ServerSpanThreadBinder serverSpanThreadBinder();
     @Nullable
     abstract ServerSpan currentServerSpan();
+    /**
+     * When present, the clock and recorder used to annotate the current span with timing. This is
+     * held here, as neither the thread binders nor {@link #wrap} callers can reach the recorder.
+     */
+    @Nullable
+    abstract Recorder timingRecorder();
+    /** Epoch microseconds when this task was submitted, or zero when not timing. */
+    abstract long submitTimestamp();
 
     /**
      * {@inheritDoc}
@@ -85,6 +100,18 @@ public abstract class BraveCallable<T> implements Callable<T> {
         }
         ServerSpan previousServerSpan = serverSpanThreadBinder().getCurrentServerSpan();
         Span previousLocalSpan = localSpanThreadBinder().getCurrentLocalSpan();
+        Recorder recorder = timingRecorder();
+        Span timedSpan = recorder != null
+            ? BraveExecutorService.timedSpan(currentLocalSpan(), currentServerSpan())
+            : null;
+        long startTimestamp = 0L;
+        if (timedSpan != null) { // record the queue wait now, as the span may finish while we run
+            startTimestamp = recorder.currentTimeMicroseconds();
+            if (!BraveExecutorService.annotateTaskStart(
+                recorder, timedSpan, submitTimestamp(), startTimestamp)) {
+                timedSpan = null; // already finished, so there's nothing to annotate at the end
+            }
+        }
         try {
             serverSpanThreadBinder().setCurrentSpan(currentServerSpan());
             localSpanThreadBinder().setCurrentSpan(currentLocalSpan());
@@ -92,6 +119,9 @@ public abstract class BraveCallable<T> implements Callable<T> {
         } finally {
             serverSpanThreadBinder().setCurrentSpan(previousServerSpan);
             localSpanThreadBinder().setCurrentSpan(previousLocalSpan);
+            if (timedSpan != null) {
+                BraveExecutorService.annotateTaskEnd(recorder, timedSpan, startTimestamp);
+            }
         }
     }
 
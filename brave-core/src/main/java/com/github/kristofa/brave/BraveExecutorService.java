@@ -1,6 +1,7 @@
 package com.github.kristofa.brave;
 
 import com.github.kristofa.brave.internal.Nullable;
+import com.twitter.zipkin.gen.Span;
 import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -22,6 +23,10 @@ import static com.github.kristofa.brave.internal.Util.checkNotNull;
  * <p/>
  * It also implements {@link Closeable}, calling {@link BraveExecutorService#shutdown()}, so the executor service is
  * shut down properly when for example using Spring.
+ * <p/>
+ * When built with {@link Builder#recordQueueWaitAndRunTime(boolean)}, each task also annotates the
+ * span current at submit time when it starts and ends, with how long it waited in the queue and how
+ * long it ran.
  * 
  * @author kristof
  * @see BraveCallable
@@ -33,7 +38,53 @@ public class BraveExecutorService implements ExecutorService, Closeable {
      * @since 3.17
      */
     public static BraveExecutorService wrap(ExecutorService wrappedExecutor, Brave brave) {
-        return new BraveExecutorService(wrappedExecutor, brave);
+        return new BraveExecutorService(wrappedExecutor, brave, false);
+    }
+
+    /**
+     * @since 3.18
+     */
+    public static Builder builder(Brave brave) {
+        return new Builder(brave);
+    }
+
+    /**
+     * Prefix of the annotation added to the current span when a task starts. The value ends with
+     * the microseconds the task waited in the queue, like "executor.task_start queue_wait_us=50".
+     */
+    public static final String TASK_START = "executor.task_start";
+
+    /**
+     * Prefix of the annotation added to the current span when a task ends. The value ends with the
+     * microseconds the task ran, like "executor.task_end run_us=25".
+     */
+    public static final String TASK_END = "executor.task_end";
+
+    public static final class Builder {
+        final Brave brave;
+        boolean recordQueueWaitAndRunTime;
+
+        Builder(Brave brave) { // intentionally hidden
+            this.brave = checkNotNull(brave, "brave");
+        }
+
+        /**
+         * When true, each task annotates the span current at submit time with {@link #TASK_START}
+         * and {@link #TASK_END}, using the tracer's clock. Annotations are timestamped, so tasks
+         * fanned out from the same span don't overwrite each other.
+         *
+         * <p>No span is created per task. Tasks submitted without a sampled span in scope aren't
+         * timed, and nothing is added once that span has finished, as it was already reported.
+         * Defaults to false.
+         */
+        public Builder recordQueueWaitAndRunTime(boolean recordQueueWaitAndRunTime) {
+            this.recordQueueWaitAndRunTime = recordQueueWaitAndRunTime;
+            return this;
+        }
+
+        public BraveExecutorService wrap(ExecutorService wrappedExecutor) {
+            return new BraveExecutorService(wrappedExecutor, brave, recordQueueWaitAndRunTime);
+        }
     }
 
     private final ExecutorService wrappedExecutor;
@@ -42,11 +93,16 @@ public class BraveExecutorService implements ExecutorService, Closeable {
     @Nullable // when using deprecated constructor
     private final LocalSpanThreadBinder localSpanThreadBinder;
 
-    BraveExecutorService(ExecutorService wrappedExecutor, Brave brave) { // intentionally hidden
+    @Nullable // when not recording queue wait and run time
+    private final Recorder timingRecorder;
+
+    BraveExecutorService(ExecutorService wrappedExecutor, Brave brave,
+        boolean recordQueueWaitAndRunTime) { // intentionally hidden
         this.wrappedExecutor = checkNotNull(wrappedExecutor, "wrappedExecutor");
         checkNotNull(brave, "brave");
         this.localSpanThreadBinder = brave.localSpanThreadBinder();
         this.serverSpanThreadBinder = brave.serverSpanThreadBinder();
+        this.timingRecorder = recordQueueWaitAndRunTime ? brave.serverTracer().recorder() : null;
     }
 
     /**
@@ -58,6 +114,7 @@ public class BraveExecutorService implements ExecutorService, Closeable {
         this.wrappedExecutor = checkNotNull(wrappedExecutor, "Null wrappedExecutor");
         this.localSpanThreadBinder = null;
         this.serverSpanThreadBinder = checkNotNull(serverSpanThreadBinder, "Null serverSpanThreadBinder");
+        this.timingRecorder = null;
     }
 
     /**
@@ -187,13 +244,42 @@ public class BraveExecutorService implements ExecutorService, Closeable {
     BraveRunnable wrap(Runnable arg0) {
         return localSpanThreadBinder == null
             ? BraveRunnable.create(arg0, serverSpanThreadBinder)
-            : BraveRunnable.wrap(arg0, localSpanThreadBinder, serverSpanThreadBinder);
+            : BraveRunnable.wrap(arg0, localSpanThreadBinder, serverSpanThreadBinder, timingRecorder);
     }
 
     // avoids deprecated BraveCallable factory when we weren't called with a deprecated constructor
     <T> BraveCallable<T> wrap(Callable<T> arg0) {
         return localSpanThreadBinder == null
             ? BraveCallable.create(arg0, serverSpanThreadBinder)
-            : BraveCallable.wrap(arg0, localSpanThreadBinder, serverSpanThreadBinder);
+            : BraveCallable.wrap(arg0, localSpanThreadBinder, serverSpanThreadBinder, timingRecorder);
+    }
+
+    /**
+     * Returns the span that was current when the task was submitted, or null if there was none.
+     * The local span is preferred, as it is the most specific.
+     */
+    @Nullable static Span timedSpan(@Nullable Span localSpan, @Nullable ServerSpan serverSpan) {
+        if (localSpan != null) return localSpan;
+        if (serverSpan != null && Boolean.TRUE.equals(serverSpan.getSample())) {
+            return serverSpan.getSpan();
+        }
+        return null;
+    }
+
+    /**
+     * Annotates the span when a task starts, recording how long it waited in the queue. Returns
+     * false if the span already finished, in which case nothing was added.
+     */
+    static boolean annotateTaskStart(Recorder recorder, Span span, long submitTimestamp,
+        long startTimestamp) {
+        return recorder.annotateIfInFlight(span, startTimestamp,
+            TASK_START + " queue_wait_us=" + (startTimestamp - submitTimestamp));
+    }
+
+    /** Annotates the span when a task ends, unless the span finished while the task ran. */
+    static void annotateTaskEnd(Recorder recorder, Span span, long startTimestamp) {
+        long endTimestamp = recorder.currentTimeMicroseconds();
+        recorder.annotateIfInFlight(span, endTimestamp,
+            TASK_END + " run_us=" + (endTimestamp - startTimestamp));
     }
 }
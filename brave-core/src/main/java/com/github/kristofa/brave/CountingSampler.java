@@ -2,6 +2,7 @@ package com.github.kristofa.brave;
 
 import java.util.BitSet;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static zipkin.internal.Util.checkArgument;
 
@@ -12,38 +13,43 @@ import static zipkin.internal.Util.checkArgument;
  *
  * <h3>Implementation</h3>
  *
- * <p>This initializes a random bitset of size 100 (corresponding to 1% granularity). This means
- * that it is accurate in units of 100 traces. At runtime, this loops through the bitset, returning
- * the value according to a counter.
+ * <p>This initializes a random bitset of size 10000 (corresponding to 0.01% granularity). This
+ * means that it is accurate in units of 10000 traces. At runtime, this loops through the bitset,
+ * returning the value according to a counter.
+ *
+ * <p>The counter is atomic, so concurrent callers never wait on a lock. As each call claims its own
+ * count, every window of 10000 consecutive calls sees each decision exactly once.
  */
 public final class CountingSampler extends Sampler {
 
+  static final int SIZE = 10000;
+
   /**
-   * @param rate 0 means never sample, 1 means always sample. Otherwise minimum sample rate is 0.01,
-   * or 1% of traces
+   * @param rate 0 means never sample, 1 means always sample. Otherwise minimum sample rate is
+   * 0.0001, or 0.01% of traces
    */
   public static Sampler create(final float rate) {
     if (rate == 0) return NEVER_SAMPLE;
     if (rate == 1.0) return ALWAYS_SAMPLE;
-    checkArgument(rate >= 0.01f && rate < 1, "rate should be between 0.01 and 1: was %s", rate);
+    checkArgument(rate >= 0.0001f && rate < 1,
+        "rate should be between 0.0001 and 1: was %s", rate);
     return new CountingSampler(rate);
   }
 
-  private int i; // guarded by this
-  private final BitSet sampleDecisions;
+  // a long can't practically overflow, so the index never skips when the counter wraps around
+  private final AtomicLong counter = new AtomicLong();
+  private final BitSet sampleDecisions; // never modified after construction
 
   /** Fills a bitset with decisions according to the supplied rate. */
   CountingSampler(float rate) {
-    int outOf100 = (int) (rate * 100.0f);
-    this.sampleDecisions = randomBitSet(100, outOf100, new Random());
+    int outOf10000 = Math.round(rate * SIZE); // round, as 0.0001f * 10000 is slightly less than 1
+    this.sampleDecisions = randomBitSet(SIZE, outOf10000, new Random());
   }
 
-  /** loops over the pre-canned decisions, resetting to zero when it gets to the end. */
+  /** loops over the pre-canned decisions, according to an atomic counter. */
   @Override
-  public synchronized boolean isSampled(long traceIdIgnored) {
-    boolean result = sampleDecisions.get(i++);
-    if (i == 100) i = 0;
-    return result;
+  public boolean isSampled(long traceIdIgnored) {
+    return sampleDecisions.get((int) (counter.getAndIncrement() % SIZE));
   }
 
   @Override
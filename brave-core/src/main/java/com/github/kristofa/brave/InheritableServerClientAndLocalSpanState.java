@@ -1,8 +1,5 @@
 package com.github.kristofa.brave;
 
-import java.util.Deque;
-import java.util.concurrent.LinkedBlockingDeque;
-
 import com.github.kristofa.brave.internal.Util;
 import com.twitter.zipkin.gen.Endpoint;
 import com.twitter.zipkin.gen.Span;
@@ -11,6 +8,9 @@ import com.twitter.zipkin.gen.Span;
  * {@link ServerClientAndLocalSpanState} implementation that keeps trace state using {@link InheritableThreadLocal}
  * variables and provides local span inheritence from parent to children.
  * <p>
+ * Each thread's local spans are a stack only it modifies. A child thread starts with a copy of its
+ * parent's stack, so spans it starts or finishes don't affect the parent.
+ * <p>
  * Important note: when using {@link InheritableServerClientAndLocalSpanState}, tracers must
  * {@link LocalTracer#finishSpan() finish spans} or clear the local span at
  * completion of the local trace span to avoid linking spans with incorrect
@@ -28,11 +28,17 @@ public final class InheritableServerClientAndLocalSpanState implements ServerCli
 
     private final InheritableThreadLocal<Span> currentClientSpan = new InheritableThreadLocal<Span>();
 
-    private final InheritableThreadLocal<Deque<Span>> currentLocalSpan =
-            new InheritableThreadLocal<Deque<Span>>() {
+    private final InheritableThreadLocal<LocalSpanStack> currentLocalSpan =
+            new InheritableThreadLocal<LocalSpanStack>() {
+                @Override
+                protected LocalSpanStack initialValue() {
+                    return new LocalSpanStack();
+                }
+
+                /** Copies the parent's stack, as only the owning thread may modify it. */
                 @Override
-                protected Deque<Span> initialValue() {
-                    return new LinkedBlockingDeque<Span>();
+                protected LocalSpanStack childValue(LocalSpanStack parentValue) {
+                    return parentValue.copy();
                 }
             };
 
@@ -82,7 +88,7 @@ public final class InheritableServerClientAndLocalSpanState implements ServerCli
 
     @Override
     public Span getCurrentLocalSpan() {
-        return currentLocalSpan.get().peekFirst();
+        return currentLocalSpan.get().peek();
     }
 
     /**
@@ -93,12 +99,11 @@ public final class InheritableServerClientAndLocalSpanState implements ServerCli
      */
     @Override
     public void setCurrentLocalSpan(Span span) {
-        Deque<Span> deque = currentLocalSpan.get();
+        LocalSpanStack stack = currentLocalSpan.get();
         if (span == null) {
-            // pop to remove
-            deque.pollFirst();
+            stack.pop();
         } else {
-            deque.addFirst(span);
+            stack.push(span);
         }
     }
 
@@ -0,0 +1,48 @@
+package com.github.kristofa.brave;
+
+import com.github.kristofa.brave.internal.Nullable;
+import com.twitter.zipkin.gen.Span;
+import java.util.Arrays;
+
+/**
+ * Nested local spans of one thread, with the current span on top.
+ * <p/>
+ * Only the owning thread reads or writes this, so it isn't synchronized: pushing and popping are a
+ * few field writes. A child thread gets a {@link #copy()}, so it can't corrupt its parent's stack.
+ */
+final class LocalSpanStack {
+  Span[] spans = new Span[4];
+  int size;
+
+  @Nullable Span peek() {
+    return size == 0 ? null : spans[size - 1];
+  }
+
+  /** Returns the span under the top, or null if there isn't one. */
+  @Nullable Span peekPrevious() {
+    return size < 2 ? null : spans[size - 2];
+  }
+
+  void push(Span span) {
+    if (size == spans.length) spans = Arrays.copyOf(spans, size * 2);
+    spans[size++] = span;
+  }
+
+  /** Removes the top span, if there is one. */
+  void pop() {
+    if (size == 0) return;
+    spans[--size] = null; // don't retain finished spans
+  }
+
+  LocalSpanStack copy() {
+    LocalSpanStack result = new LocalSpanStack();
+    if (size > result.spans.length) result.spans = new Span[spans.length];
+    System.arraycopy(spans, 0, result.spans, 0, size);
+    result.size = size;
+    return result;
+  }
+
+  @Override public String toString() {
+    return Arrays.toString(Arrays.copyOf(spans, size));
+  }
+}
@@ -0,0 +1,65 @@
+package com.github.kristofa.brave;
+
+import java.util.Random;
+import org.jvnet.animal_sniffer.IgnoreJRERequirement;
+
+/**
+ * Provisions trace and span IDs without contending on a shared {@link Random}.
+ *
+ * <p>{@link Random#nextLong()} is a compare-and-set loop on a single seed, so sharing one instance
+ * across request threads serializes them. This uses {@link java.util.concurrent.ThreadLocalRandom}
+ * when available, like {@code brave.internal.Platform} does, or a random per thread on JRE 6.
+ */
+abstract class RandomIds {
+  static final RandomIds INSTANCE = findRandomIds();
+
+  static RandomIds get() {
+    return INSTANCE;
+  }
+
+  abstract long nextLong();
+
+  static RandomIds findRandomIds() {
+    RandomIds jre7 = Jre7.buildIfSupported();
+    if (jre7 != null) return jre7;
+    return new Jre6();
+  }
+
+  static final class Jre7 extends RandomIds {
+    static Jre7 buildIfSupported() {
+      // Find JRE 7 new methods
+      try {
+        Class.forName("java.util.concurrent.ThreadLocalRandom");
+        return new Jre7();
+      } catch (ClassNotFoundException e) {
+        // pre JRE 7
+      }
+      return null;
+    }
+
+    @IgnoreJRERequirement
+    @Override long nextLong() {
+      return java.util.concurrent.ThreadLocalRandom.current().nextLong();
+    }
+
+    @Override public String toString() {
+      return "ThreadLocalRandom";
+    }
+  }
+
+  static final class Jre6 extends RandomIds {
+    final ThreadLocal<Random> prng = new ThreadLocal<Random>() {
+      @Override protected Random initialValue() {
+        return new Random();
+      }
+    };
+
+    @Override long nextLong() {
+      return prng.get().nextLong();
+    }
+
+    @Override public String toString() {
+      return "ThreadLocal<Random>";
+    }
+  }
+}
@@ -33,6 +33,13 @@ abstract class Recorder implements AnnotationSubmitter.Clock {
   /** Reports whatever is present even if unfinished. */
   abstract void flush(Span span);
 
+  /**
+   * Like {@link #annotate(Span, long, String)}, except the check and the annotation are atomic.
+   * Returns false without annotating when the span already finished, after which recorded data
+   * would be lost or reported as a separate fragment.
+   */
+  abstract boolean annotateIfInFlight(Span span, long timestamp, String value);
+
   @AutoValue
   static abstract class Default extends Recorder {
     abstract Endpoint localEndpoint();
@@ -111,5 +118,14 @@ abstract class Recorder implements AnnotationSubmitter.Clock {
       }
       reporter().report(toZipkin(span));
     }
+
+    @Override boolean annotateIfInFlight(Span span, long timestamp, String value) {
+      Annotation annotation = Annotation.create(timestamp, value, localEndpoint());
+      synchronized (span) {
+        if (span.getDuration() != null) return false;
+        span.addToAnnotations(annotation);
+      }
+      return true;
+    }
   }
 }
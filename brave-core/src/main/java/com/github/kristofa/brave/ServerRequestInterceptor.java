@@ -45,6 +45,9 @@ public class ServerRequestInterceptor {
             LOGGER.fine("Received span information as part of request.");
             // We are now joining the span propagated to us, by re-using the trace and span ids here.
             span = serverTracer.spanFactory().joinSpan(traceData.getSpanId());
+        } else if (sample != null) {
+            LOGGER.fine("Received a sampling decision, but no span state.");
+            span = serverTracer.spanFactory().newTrace(sample);
         } else {
             LOGGER.fine("Received no span state.");
             span = serverTracer.spanFactory().nextSpan(null);
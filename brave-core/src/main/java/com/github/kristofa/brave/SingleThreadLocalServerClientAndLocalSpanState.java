@@ -0,0 +1,115 @@
+package com.github.kristofa.brave;
+
+import com.github.kristofa.brave.internal.Nullable;
+import com.github.kristofa.brave.internal.Util;
+import com.twitter.zipkin.gen.Endpoint;
+import com.twitter.zipkin.gen.Span;
+
+/**
+ * {@link ServerClientAndLocalSpanState} implementation that keeps trace state in a single
+ * ThreadLocal variable, holding a mutable record per thread.
+ * <p/>
+ * Unlike {@link ThreadLocalServerClientAndLocalSpanState}, which uses a ThreadLocal for each of the
+ * server, client and local span, this does one lookup no matter which span is read. Clearing a span
+ * writes a field, as opposed to removing a ThreadLocal entry which is re-allocated on the next set.
+ * <p/>
+ * Local spans are kept in a stack, so finishing a nested local span makes its parent current again.
+ * Setting a span pushes it, and setting null pops. Setting the span under the top pops back to it,
+ * so that restoring the previous span after a task, as {@link BraveRunnable} does, doesn't grow the
+ * stack.
+ */
+public final class SingleThreadLocalServerClientAndLocalSpanState
+    implements ServerClientAndLocalSpanState {
+
+  private static final ThreadLocal<State> currentState = new ThreadLocal<State>() {
+    @Override protected State initialValue() {
+      return new State();
+    }
+  };
+
+  private final Endpoint endpoint;
+
+  // visible for testing
+  public static void clear() {
+    currentState.remove();
+  }
+
+  /**
+   * @param endpoint Endpoint of the local service being traced.
+   */
+  public SingleThreadLocalServerClientAndLocalSpanState(Endpoint endpoint) {
+    Util.checkNotNull(endpoint, "endpoint must be specified.");
+    Util.checkNotBlank(endpoint.service_name, "Service name must be specified.");
+    this.endpoint = endpoint;
+  }
+
+  /** Never returns null: {@code setCurrentServerSpan(null)} coerces to {@link ServerSpan#EMPTY} */
+  @Override
+  public ServerSpan getCurrentServerSpan() {
+    return currentState.get().serverSpan;
+  }
+
+  @Override
+  public void setCurrentServerSpan(ServerSpan span) {
+    currentState.get().serverSpan = span != null ? span : ServerSpan.EMPTY;
+  }
+
+  @Override
+  public Endpoint endpoint() {
+    return endpoint;
+  }
+
+  @Override
+  public Span getCurrentClientSpan() {
+    return currentState.get().clientSpan;
+  }
+
+  @Override
+  public void setCurrentClientSpan(Span span) {
+    currentState.get().clientSpan = span;
+  }
+
+  @Override
+  public Boolean sample() {
+    return currentState.get().serverSpan.getSample();
+  }
+
+  @Override
+  public Span getCurrentLocalSpan() {
+    return currentState.get().currentLocalSpan();
+  }
+
+  /**
+   * Pushes the specified local span, or if null, pops the top of the stack.
+   *
+   * @param span Local span.
+   */
+  @Override
+  public void setCurrentLocalSpan(Span span) {
+    currentState.get().setCurrentLocalSpan(span);
+  }
+
+  @Override
+  public String toString() {
+    return "SingleThreadLocalServerClientAndLocalSpanState{endpoint=" + endpoint + "}";
+  }
+
+  /** Trace state of one thread. Only that thread reads or writes it, so it isn't synchronized. */
+  static final class State {
+    ServerSpan serverSpan = ServerSpan.EMPTY;
+    Span clientSpan;
+    final LocalSpanStack localSpans = new LocalSpanStack();
+
+    @Nullable Span currentLocalSpan() {
+      return localSpans.peek();
+    }
+
+    void setCurrentLocalSpan(@Nullable Span span) {
+      if (span == null || span == localSpans.peekPrevious()) {
+        localSpans.pop();
+      } else {
+        localSpans.push(span);
+      }
+    }
+  }
+}
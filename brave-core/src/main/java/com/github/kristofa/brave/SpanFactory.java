@@ -10,6 +10,9 @@ abstract class SpanFactory {
   /** Returns the next span ID derived from the input, or a new trace if null. */
   abstract Span nextSpan(@Nullable SpanId maybeParent);
 
+  /** Returns a new trace, with a sampling decision made before the span was created. */
+  abstract Span newTrace(boolean sampled);
+
   /**
    * Joining is re-using the same trace and span ids extracted from an incoming request. Here, we
    * ensure a sampling decision has been made. If the span passed sampling, we assume this is a
@@ -24,14 +27,14 @@ abstract class SpanFactory {
     static Builder builder() {
       return new AutoValue_SpanFactory_Default.Builder()
           .traceId128Bit(false)
-          .randomGenerator(new Random())
           .sampler(Sampler.ALWAYS_SAMPLE);
     }
 
     abstract Builder toBuilder();
 
     @AutoValue.Builder interface Builder {
-      Builder randomGenerator(Random randomGenerator);
+      /** Defaults to a random per thread, so that request threads don't contend on IDs. */
+      Builder randomGenerator(@Nullable Random randomGenerator);
 
       Builder traceId128Bit(boolean traceId128Bit);
 
@@ -40,21 +43,17 @@ abstract class SpanFactory {
       Default build();
     }
 
-    abstract Random randomGenerator();
+    /** When null, IDs are provisioned by {@link RandomIds} */
+    @Nullable abstract Random randomGenerator();
 
     abstract boolean traceId128Bit();
 
     abstract Sampler sampler();
 
     @Override Span nextSpan(@Nullable SpanId maybeParent) {
-      long newSpanId = randomGenerator().nextLong();
+      long newSpanId = nextLong();
       if (maybeParent == null) { // new trace
-        return Brave.toSpan(SpanId.builder()
-            .traceIdHigh(traceId128Bit() ? randomGenerator().nextLong() : 0L)
-            .traceId(newSpanId)
-            .spanId(newSpanId)
-            .sampled(sampler().isSampled(newSpanId))
-            .build());
+        return newTrace(newSpanId, sampler().isSampled(newSpanId));
       }
       return Brave.toSpan(maybeParent.toBuilder()
           .parentId(maybeParent.spanId)
@@ -63,6 +62,24 @@ abstract class SpanFactory {
           .build());
     }
 
+    @Override Span newTrace(boolean sampled) {
+      return newTrace(nextLong(), sampled);
+    }
+
+    Span newTrace(long newSpanId, boolean sampled) {
+      return Brave.toSpan(SpanId.builder()
+          .traceIdHigh(traceId128Bit() ? nextLong() : 0L)
+          .traceId(newSpanId)
+          .spanId(newSpanId)
+          .sampled(sampled)
+          .build());
+    }
+
+    long nextLong() {
+      Random randomGenerator = randomGenerator();
+      return randomGenerator != null ? randomGenerator.nextLong() : RandomIds.get().nextLong();
+    }
+
     @Override Span joinSpan(SpanId context) {
       // If the sampled flag was left unset, we need to make the decision here
       if (context.sampled() == null) {
@@ -12,6 +12,11 @@ public abstract class TraceData {
     public static final TraceData EMPTY = new AutoValue_TraceData(null, null);
     /** An caller didn't report this trace, and neither should this hop. */
     public static final TraceData NOT_SAMPLED = new AutoValue_TraceData(null, false);
+    /**
+     * The caller didn't start a trace, but this hop should sample the one it starts. For example,
+     * when a {@link RuleSampler} matched the request.
+     */
+    public static final TraceData SAMPLED = new AutoValue_TraceData(null, true);
 
     /**
      * @deprecated use {@link #create(SpanId)} or one of the constants.
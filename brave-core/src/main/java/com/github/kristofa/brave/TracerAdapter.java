@@ -103,6 +103,12 @@ public final class TracerAdapter {
       return Brave.toSpan(toSpanId(span.context()));
     }
 
+    @Override Span newTrace(boolean sampled) {
+      brave.Span span =
+          delegate.newTrace(sampled ? SamplingFlags.SAMPLED : SamplingFlags.NOT_SAMPLED);
+      return Brave.toSpan(toSpanId(span.context()));
+    }
+
     @Override Span joinSpan(SpanId spanId) {
       TraceContext context = toTraceContext(spanId);
       return Brave.toSpan(toSpanId(delegate.joinSpan(context).context()));
@@ -165,6 +171,12 @@ public final class TracerAdapter {
       brave4(span).flush();
     }
 
+    @Override boolean annotateIfInFlight(Span span, long timestamp, String value) {
+      // unlike brave4(span), this doesn't create state, so can't orphan a fragment
+      TraceContext context = toTraceContext(InternalSpan.instance.context(span));
+      return Internal.instance.annotateIfInFlight(tracer, context, timestamp, value);
+    }
+
     // If garbage becomes a concern, we can introduce caching or thread locals.
     brave.Span brave4(Span span) {
       return tracer.toSpan(toTraceContext(InternalSpan.instance.context(span)));
@@ -0,0 +1,161 @@
+package com.github.kristofa.brave;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import zipkin.reporter.InMemoryReporterMetrics;
+import zipkin.reporter.ReporterMetrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.Offset.offset;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(AdaptiveSampler.class)
+public class AdaptiveSamplerTest {
+  static final long INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+  long now;
+  AdaptiveSampler sampler;
+
+  @Before public void setup() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenAnswer(i -> now);
+    sampler = AdaptiveSampler.newBuilder().rate(0.5f).minRate(0.01f).build();
+  }
+
+  @Test public void samplesAtRate_withoutPressure() {
+    assertThat(countSampled(sampler, 100000)).isCloseTo(50000, offset(1000));
+  }
+
+  @Test public void halvesRateOnDrops() {
+    sampler.incrementSpansDropped(1);
+    assertThat(sampler.rate()).isEqualTo(0.5f); // not until the next adjustment
+
+    nextInterval();
+    assertThat(sampler.rate()).isEqualTo(0.25f);
+    assertThat(countSampled(sampler, 100000)).isCloseTo(25000, offset(1000));
+  }
+
+  @Test public void halvesRateOnQueuedSpans() {
+    sampler = AdaptiveSampler.newBuilder().rate(0.5f).maxQueuedSpans(100).build();
+
+    sampler.updateQueuedSpans(100);
+    nextInterval();
+    assertThat(sampler.rate()).isEqualTo(0.5f);
+
+    sampler.updateQueuedSpans(101);
+    nextInterval();
+    assertThat(sampler.rate()).isEqualTo(0.25f);
+  }
+
+  @Test public void dropsCountOncePerInterval() {
+    sampler.incrementSpansDropped(1000);
+    nextInterval();
+    nextInterval();
+
+    // halved once, then started to recover
+    assertThat(sampler.rate()).isEqualTo(0.3f);
+  }
+
+  @Test public void neverBelowMinRate() {
+    for (int i = 0; i < 20; i++) {
+      sampler.incrementSpansDropped(1);
+      nextInterval();
+    }
+
+    assertThat(sampler.rate()).isEqualTo(0.01f);
+  }
+
+  @Test public void recoversGraduallyToRate() {
+    sampler.incrementSpansDropped(1);
+    nextInterval();
+    sampler.incrementSpansDropped(1);
+    nextInterval();
+    assertThat(sampler.rate()).isEqualTo(0.125f);
+
+    nextInterval();
+    assertThat(sampler.rate()).isEqualTo(0.175f);
+
+    for (int i = 0; i < 10; i++) nextInterval();
+    assertThat(sampler.rate()).isEqualTo(0.5f);
+  }
+
+  @Test public void wrap_recordsPressureAndDelegates() {
+    InMemoryReporterMetrics delegate = new InMemoryReporterMetrics();
+    ReporterMetrics metrics = sampler.wrap(delegate);
+
+    metrics.incrementSpans(2);
+    metrics.incrementSpansDropped(2);
+    metrics.updateQueuedSpans(3);
+
+    assertThat(delegate.spans()).isEqualTo(2);
+    assertThat(delegate.spansDropped()).isEqualTo(2);
+    assertThat(delegate.queuedSpans()).isEqualTo(3);
+    assertThat(sampler.droppedSpans.get()).isEqualTo(2);
+    assertThat(sampler.queuedSpans).isEqualTo(3);
+  }
+
+  @Test public void wrap_spanCollectorMetricsHandler() {
+    SpanCollectorMetricsHandler delegate = mock(SpanCollectorMetricsHandler.class);
+    SpanCollectorMetricsHandler metrics = sampler.wrap(delegate);
+
+    metrics.incrementAcceptedSpans(2);
+    metrics.incrementDroppedSpans(2);
+
+    verify(delegate).incrementAcceptedSpans(2);
+    verify(delegate).incrementDroppedSpans(2);
+    assertThat(sampler.droppedSpans.get()).isEqualTo(2);
+  }
+
+  /** System.nanoTime can be negative, and can overflow */
+  @Test public void worksWithNegativeNanoTime() {
+    now = Long.MAX_VALUE - INTERVAL / 2;
+    sampler = AdaptiveSampler.newBuilder().rate(0.5f).build();
+
+    sampler.incrementSpansDropped(1);
+    nextInterval();
+    assertThat(sampler.rate()).isEqualTo(0.25f);
+  }
+
+  @Test public void zeroMinRate_canDropAllTraces() {
+    sampler = AdaptiveSampler.newBuilder().rate(0.0001f).minRate(0).build();
+
+    sampler.incrementSpansDropped(1);
+    nextInterval();
+    assertThat(sampler.rate()).isZero();
+    assertThat(countSampled(sampler, 100000)).isZero();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void minRateCantExceedRate() {
+    AdaptiveSampler.newBuilder().rate(0.1f).minRate(0.2f).build();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rateCantBeZero() {
+    AdaptiveSampler.newBuilder().rate(0);
+  }
+
+  /** Advances past the next adjustment, and triggers it */
+  void nextInterval() {
+    now += INTERVAL;
+    sampler.isSampled(0L);
+  }
+
+  static int countSampled(Sampler sampler, int attempts) {
+    Random random = new Random();
+    int result = 0;
+    for (int i = 0; i < attempts; i++) {
+      if (sampler.isSampled(random.nextLong())) result++;
+    }
+    return result;
+  }
+}
@@ -1,19 +1,25 @@
 package com.github.kristofa.brave;
 
+import brave.Tracer;
 import com.github.kristofa.brave.example.TestServerClientAndLocalSpanStateCompilation;
 import com.twitter.zipkin.gen.Span;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import org.junit.Test;
+import zipkin.internal.Util;
 import zipkin.reporter.Reporter;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 public class BraveExecutorServiceTest {
   // Ensures one at-a-time, but also on a different thread
@@ -167,6 +173,121 @@ public class BraveExecutorServiceTest {
     assertThat(wrappedExecutor.isShutdown()).isTrue();
   }
 
+  @Test
+  public void recordQueueWaitAndRunTime_annotatesLocalSpan() throws Exception {
+    AtomicLong clock = new AtomicLong(100L);
+    Brave brave = new Brave.Builder(new TestServerClientAndLocalSpanStateCompilation())
+        .clock(clock::get)
+        .reporter(Reporter.NOOP)
+        .traceSampler(Sampler.ALWAYS_SAMPLE).build();
+    BraveExecutorService executor = BraveExecutorService.builder(brave)
+        .recordQueueWaitAndRunTime(true)
+        .wrap(wrappedExecutor);
+
+    brave.localTracer().startNewSpan(getClass().getSimpleName(), "test");
+    Span span = brave.localSpanThreadBinder().getCurrentLocalSpan();
+    BraveRunnable task = executor.wrap((Runnable) () -> clock.addAndGet(25L));
+    clock.set(150L); // waited in the queue
+    task.run();
+
+    assertThat(span.getAnnotations())
+        .extracting(a -> a.timestamp, a -> a.value)
+        .containsExactly(
+            tuple(150L, BraveExecutorService.TASK_START + " queue_wait_us=50"),
+            tuple(175L, BraveExecutorService.TASK_END + " run_us=25")
+        );
+    assertThat(span.getBinary_annotations())
+        .extracting(b -> b.key)
+        .doesNotContain(BraveExecutorService.TASK_START, BraveExecutorService.TASK_END);
+  }
+
+  @Test
+  public void recordQueueWaitAndRunTime_annotatesServerSpanPerTask() throws Exception {
+    ExecutorService executor = BraveExecutorService.builder(brave)
+        .recordQueueWaitAndRunTime(true)
+        .wrap(wrappedExecutor);
+
+    Span span = createServerSpan.get();
+    executor.invokeAll(asList(() -> true, () -> true));
+
+    assertThat(span.getAnnotations())
+        .extracting(a -> a.value.substring(0, a.value.indexOf(' ')))
+        .containsExactly(
+            BraveExecutorService.TASK_START, BraveExecutorService.TASK_END,
+            BraveExecutorService.TASK_START, BraveExecutorService.TASK_END
+        );
+  }
+
+  @Test
+  public void recordQueueWaitAndRunTime_ignoresSpanFinishedBeforeTaskRuns() throws Exception {
+    BraveExecutorService executor = BraveExecutorService.builder(brave)
+        .recordQueueWaitAndRunTime(true)
+        .wrap(wrappedExecutor);
+
+    Span span = createLocalSpan.get();
+    BraveRunnable task = executor.wrap((Runnable) () -> {
+    });
+    brave.localTracer().finishSpan();
+    task.run();
+
+    assertThat(span.getAnnotations()).isEmpty();
+  }
+
+  @Test
+  public void recordQueueWaitAndRunTime_skipsTaskEndWhenSpanFinishesWhileRunning()
+      throws Exception {
+    BraveExecutorService executor = BraveExecutorService.builder(brave)
+        .recordQueueWaitAndRunTime(true)
+        .wrap(wrappedExecutor);
+
+    Span span = createLocalSpan.get();
+    executor.wrap((Runnable) () -> brave.localTracer().finishSpan()).run();
+
+    assertThat(span.getAnnotations())
+        .extracting(a -> a.value)
+        .hasSize(1)
+        .allMatch(v -> v.startsWith(BraveExecutorService.TASK_START));
+  }
+
+  @Test
+  public void recordQueueWaitAndRunTime_brave4_doesntReportFragmentForFinishedSpan()
+      throws Exception {
+    List<zipkin.Span> spans = new ArrayList<>();
+    Brave brave = TracerAdapter.newBrave(Tracer.newBuilder().reporter(spans::add).build());
+    BraveExecutorService executor = BraveExecutorService.builder(brave)
+        .recordQueueWaitAndRunTime(true)
+        .wrap(wrappedExecutor);
+
+    brave.localTracer().startNewSpan(getClass().getSimpleName(), "test");
+    BraveRunnable task = executor.wrap((Runnable) () -> {
+    });
+    brave.localTracer().finishSpan();
+    task.run();
+
+    assertThat(spans).hasSize(1);
+    assertThat(spans.get(0).annotations).isEmpty();
+  }
+
+  @Test
+  public void recordQueueWaitAndRunTime_ignoresTasksWithoutSpan() throws Exception {
+    ExecutorService executor = BraveExecutorService.builder(brave)
+        .recordQueueWaitAndRunTime(true)
+        .wrap(wrappedExecutor);
+
+    assertThat(executor.submit(() -> true).get()).isTrue();
+  }
+
+  @Test
+  public void doesntRecordQueueWaitAndRunTimeByDefault() throws Exception {
+    ExecutorService executor = BraveExecutorService.wrap(wrappedExecutor, brave);
+
+    Span span = createServerSpan.get();
+    executor.submit(() -> true).get();
+
+    assertThat(span.getAnnotations()).isEmpty();
+    assertThat(span.getBinary_annotations()).isEmpty();
+  }
+
   void eachTaskHasCorrectSpanAttached(Supplier<Span> createSpan, Callable<?> scheduleTwoTasks)
       throws Exception {
     Span parent = createSpan.get();
@@ -7,6 +7,9 @@ import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -94,6 +97,63 @@ public class InheritableServerClientAndLocalSpanStateTest {
         assertNull(state.getCurrentClientSpan());
     }
 
+    @Test
+    public void childThreadInheritsCopyOfLocalSpans() throws Exception {
+        Span parentSpan = mock(Span.class);
+        Span childSpan = mock(Span.class);
+        state.setCurrentLocalSpan(parentSpan);
+
+        AtomicReference<Span> inherited = new AtomicReference<>();
+        Thread child = new Thread(() -> {
+            inherited.set(state.getCurrentLocalSpan());
+            state.setCurrentLocalSpan(childSpan);
+            state.setCurrentLocalSpan(null);
+            state.setCurrentLocalSpan(null); // pops the inherited span in the child only
+        });
+        child.start();
+        child.join();
+
+        assertThat(inherited.get()).isSameAs(parentSpan);
+        assertSame(parentSpan, state.getCurrentLocalSpan());
+    }
+
+    @Test
+    public void parentChangesAfterChildStartDontAffectChild() throws Exception {
+        state.setCurrentLocalSpan(mockSpan);
+
+        CountDownLatch parentChanged = new CountDownLatch(1);
+        AtomicReference<Span> inherited = new AtomicReference<>();
+        Thread child = new Thread(() -> {
+            try {
+                parentChanged.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inherited.set(state.getCurrentLocalSpan());
+        });
+        child.start();
+        state.setCurrentLocalSpan(null);
+        parentChanged.countDown();
+        child.join();
+
+        assertThat(inherited.get()).isSameAs(mockSpan);
+        assertNull(state.getCurrentLocalSpan());
+    }
+
+    @Test
+    public void nestedLocalSpansPopInOrder() {
+        Span[] spans = new Span[10];
+        for (int i = 0; i < spans.length; i++) {
+            spans[i] = mock(Span.class);
+            state.setCurrentLocalSpan(spans[i]);
+        }
+        for (int i = spans.length - 1; i >= 0; i--) {
+            assertSame(spans[i], state.getCurrentLocalSpan());
+            state.setCurrentLocalSpan(null);
+        }
+        assertNull(state.getCurrentLocalSpan());
+    }
+
     @Test
     public void testGetParentSpan_localSpan_exists() throws Exception {
         Span currentServerSpan = mock(Span.class);
@@ -0,0 +1,33 @@
+package com.github.kristofa.brave;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RandomIdsTest {
+
+  @Test public void usesThreadLocalRandomWhenAvailable() {
+    assertThat(RandomIds.get()).isInstanceOf(RandomIds.Jre7.class);
+  }
+
+  @Test public void jre6_differsPerCall() {
+    RandomIds jre6 = new RandomIds.Jre6();
+
+    assertThat(jre6.nextLong()).isNotEqualTo(jre6.nextLong());
+  }
+
+  @Test public void spanFactory_defaultsToRandomIds() {
+    SpanFactory.Default factory = SpanFactory.Default.builder().build();
+
+    assertThat(factory.randomGenerator()).isNull();
+    assertThat(factory.nextSpan(null).getId()).isNotZero();
+  }
+
+  @Test public void spanFactory_usesConfiguredRandom() {
+    SpanFactory.Default factory = SpanFactory.Default.builder()
+        .randomGenerator(new Random(1L)).build();
+
+    assertThat(factory.nextSpan(null).getId()).isEqualTo(new Random(1L).nextLong());
+  }
+}
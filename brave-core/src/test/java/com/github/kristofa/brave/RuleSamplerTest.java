@@ -0,0 +1,152 @@
+package com.github.kristofa.brave;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RuleSamplerTest {
+  /** Requests are "METHOD path" strings, so tests read like access logs */
+  static final RuleSampler.Adapter<String> ADAPTER = new RuleSampler.Adapter<String>() {
+    @Override public String method(String request) {
+      int space = request.indexOf(' ');
+      return space == -1 ? null : request.substring(0, space);
+    }
+
+    @Override public String path(String request) {
+      return request.substring(request.indexOf(' ') + 1);
+    }
+  };
+
+  @Test public void noRules_noDecision() {
+    RuleSampler<String> sampler = RuleSampler.newBuilder(ADAPTER).build();
+
+    assertThat(sampler.isSampled("GET /foo")).isNull();
+  }
+
+  @Test public void noMatch_noDecision() {
+    RuleSampler<String> sampler = RuleSampler.newBuilder(ADAPTER)
+        .addRule(null, "/foo", 1.0f)
+        .build();
+
+    assertThat(sampler.isSampled("GET /bar")).isNull();
+    assertThat(sampler.isSampled("GET /fo")).isNull();
+  }
+
+  @Test public void matchesPrefix() {
+    RuleSampler<String> sampler = RuleSampler.newBuilder(ADAPTER)
+        .addRule(null, "/foo", 1.0f)
+        .build();
+
+    assertThat(sampler.isSampled("GET /foo")).isTrue();
+    assertThat(sampler.isSampled("POST /foo/bar")).isTrue();
+  }
+
+  @Test public void emptyPathMatchesEverything() {
+    RuleSampler<String> sampler = RuleSampler.newBuilder(ADAPTER)
+        .addRule(null, "", 0.0f)
+        .build();
+
+    assertThat(sampler.isSampled("GET /foo")).isFalse();
+    assertThat(sampler.isSampled("/")).isFalse();
+  }
+
+  @Test public void longestPathWins() {
+    RuleSampler<String> sampler = RuleSampler.newBuilder(ADAPTER)
+        .addRule(null, "/foo/bar", 1.0f)
+        .addRule(null, "/foo", 0.0f)
+        .build();
+
+    assertThat(sampler.isSampled("GET /foo/baz")).isFalse();
+    assertThat(sampler.isSampled("GET /foo/bar/baz")).isTrue();
+  }
+
+  @Test public void methodRuleWinsOverAnyMethod_samePath() {
+    RuleSampler<String> sampler = RuleSampler.newBuilder(ADAPTER)
+        .addRule(null, "/foo", 0.0f)
+        .addRule("post", "/foo", 1.0f)
+        .build();
+
+    assertThat(sampler.isSampled("POST /foo")).isTrue();
+    assertThat(sampler.isSampled("GET /foo")).isFalse();
+    assertThat(sampler.isSampled("/foo")).isFalse(); // no method
+  }
+
+  @Test public void methodIgnoresCase() {
+    RuleSampler<String> sampler = RuleSampler.newBuilder(ADAPTER)
+        .addRule(null, "/foo", 0.0f)
+        .addRule("Post", "/foo", 1.0f)
+        .build();
+
+    assertThat(sampler.isSampled("POST /foo")).isTrue();
+    assertThat(sampler.isSampled("post /foo")).isTrue();
+    assertThat(sampler.isSampled("get /foo")).isFalse();
+  }
+
+  @Test public void build_laterRulesDontAffectBuiltSampler() {
+    RuleSampler.Builder<String> builder = RuleSampler.newBuilder(ADAPTER)
+        .addRule(null, "/foo", 0.0f);
+    RuleSampler<String> sampler = builder.build();
+
+    builder.addRule(null, "/foo", 1.0f)
+        .addRule("GET", "/foo/bar", 1.0f)
+        .addRule(null, "/baz", 1.0f);
+
+    assertThat(sampler.isSampled("GET /foo/bar")).isFalse();
+    assertThat(sampler.isSampled("GET /baz")).isNull();
+    assertThat(builder.build().isSampled("GET /foo/bar")).isTrue();
+  }
+
+  @Test public void longerPathWinsOverMethodRule() {
+    RuleSampler<String> sampler = RuleSampler.newBuilder(ADAPTER)
+        .addRule("GET", "/foo", 0.0f)
+        .addRule(null, "/foo/bar", 1.0f)
+        .build();
+
+    assertThat(sampler.isSampled("GET /foo/bar")).isTrue();
+  }
+
+  @Test public void addRule_replacesSameMethodAndPath() {
+    RuleSampler<String> sampler = RuleSampler.newBuilder(ADAPTER)
+        .addRule("GET", "/foo", 0.0f)
+        .addRule("GET", "/foo", 1.0f)
+        .build();
+
+    assertThat(sampler.isSampled("GET /foo")).isTrue();
+  }
+
+  @Test public void nullPath_noDecision() {
+    RuleSampler<String> sampler = RuleSampler.newBuilder(new RuleSampler.Adapter<String>() {
+      @Override public String method(String request) {
+        return null;
+      }
+
+      @Override public String path(String request) {
+        return null;
+      }
+    }).addRule(null, "", 1.0f).build();
+
+    assertThat(sampler.isSampled("GET /foo")).isNull();
+  }
+
+  @Test public void samplesAtRuleRate() {
+    RuleSampler<String> sampler = RuleSampler.newBuilder(ADAPTER)
+        .addRule(null, "/foo", 0.1f)
+        .build();
+
+    int sampled = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (sampler.isSampled("GET /foo")) sampled++;
+    }
+    assertThat(sampled).isEqualTo(1000);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void addRule_invalidRate() {
+    RuleSampler.newBuilder(ADAPTER).addRule(null, "/foo", 1.1f);
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void addRule_nullPath() {
+    RuleSampler.newBuilder(ADAPTER).addRule(null, null, 1.0f);
+  }
+}
@@ -64,6 +64,22 @@ public class ServerRequestInterceptorTest {
             .isEqualTo(SPAN_NAME.toLowerCase());
     }
 
+    @Test
+    public void handleNoState_whenSampledByRule() {
+        brave = new Brave.Builder(ENDPOINT).reporter(spans::add)
+            .traceSampler(Sampler.NEVER_SAMPLE).build();
+        interceptor = new ServerRequestInterceptor(brave.serverTracer());
+        when(adapter.getTraceData()).thenReturn(TraceData.SAMPLED);
+        when(adapter.getSpanName()).thenReturn(SPAN_NAME);
+        when(adapter.requestAnnotations()).thenReturn(Collections.EMPTY_LIST);
+
+        interceptor.handle(adapter);
+
+        // overrides the tracer's sampler
+        assertThat(brave.serverTracer().currentSpan().sampled())
+            .isTrue();
+    }
+
     @Test
     public void handleSampleRequestWithParentSpanId() {
         SpanId spanId = SpanId.builder()
@@ -0,0 +1,131 @@
+package com.github.kristofa.brave;
+
+import com.twitter.zipkin.gen.Endpoint;
+import com.twitter.zipkin.gen.Span;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class SingleThreadLocalServerClientAndLocalSpanStateTest {
+  SingleThreadLocalServerClientAndLocalSpanState state =
+      new SingleThreadLocalServerClientAndLocalSpanState(
+          Endpoint.builder().serviceName("service").ipv4(192 << 24 | 168 << 16 | 1).build());
+  ServerSpan serverSpan = mock(ServerSpan.class);
+  Span span1 = mock(Span.class), span2 = mock(Span.class), span3 = mock(Span.class);
+
+  @After
+  public void clear() {
+    SingleThreadLocalServerClientAndLocalSpanState.clear();
+  }
+
+  @Test
+  public void setCurrentServerSpanNullRevertsToEmpty() {
+    state.setCurrentServerSpan(serverSpan);
+    state.setCurrentServerSpan(null);
+
+    assertThat(state.getCurrentServerSpan()).isEqualTo(ServerSpan.EMPTY);
+  }
+
+  @Test
+  public void getAndSetCurrentServerSpan() {
+    state.setCurrentServerSpan(serverSpan);
+
+    assertThat(state.getCurrentServerSpan()).isSameAs(serverSpan);
+    assertThat(state.getCurrentClientSpan()).isNull();
+    assertThat(state.getCurrentLocalSpan()).isNull();
+  }
+
+  @Test
+  public void getAndSetCurrentClientSpan() {
+    state.setCurrentClientSpan(span1);
+
+    assertThat(state.getCurrentClientSpan()).isSameAs(span1);
+    assertThat(state.getCurrentServerSpan()).isEqualTo(ServerSpan.EMPTY);
+
+    state.setCurrentClientSpan(null);
+    assertThat(state.getCurrentClientSpan()).isNull();
+  }
+
+  @Test
+  public void localSpans_nullPopsToParent() {
+    state.setCurrentLocalSpan(span1);
+    state.setCurrentLocalSpan(span2);
+
+    assertThat(state.getCurrentLocalSpan()).isSameAs(span2);
+    state.setCurrentLocalSpan(null);
+    assertThat(state.getCurrentLocalSpan()).isSameAs(span1);
+    state.setCurrentLocalSpan(null);
+    assertThat(state.getCurrentLocalSpan()).isNull();
+    state.setCurrentLocalSpan(null); // extra pops are ignored
+    assertThat(state.getCurrentLocalSpan()).isNull();
+  }
+
+  @Test
+  public void localSpans_settingPreviousPopsToIt() {
+    state.setCurrentLocalSpan(span1);
+    Span previous = state.getCurrentLocalSpan();
+    state.setCurrentLocalSpan(span2);
+    state.setCurrentLocalSpan(previous);
+
+    assertThat(state.getCurrentLocalSpan()).isSameAs(span1);
+    state.setCurrentLocalSpan(null);
+    assertThat(state.getCurrentLocalSpan()).isNull();
+  }
+
+  @Test
+  public void localSpans_growsPastInitialCapacity() {
+    Span[] spans = new Span[10];
+    for (int i = 0; i < spans.length; i++) {
+      spans[i] = mock(Span.class);
+      state.setCurrentLocalSpan(spans[i]);
+    }
+    for (int i = spans.length - 1; i >= 0; i--) {
+      assertThat(state.getCurrentLocalSpan()).isSameAs(spans[i]);
+      state.setCurrentLocalSpan(null);
+    }
+    assertThat(state.getCurrentLocalSpan()).isNull();
+  }
+
+  @Test
+  public void stateIsPerThread() throws Exception {
+    state.setCurrentServerSpan(serverSpan);
+    state.setCurrentClientSpan(span1);
+    state.setCurrentLocalSpan(span2);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      executor.submit(() -> {
+        assertThat(state.getCurrentServerSpan()).isEqualTo(ServerSpan.EMPTY);
+        assertThat(state.getCurrentClientSpan()).isNull();
+        assertThat(state.getCurrentLocalSpan()).isNull();
+        state.setCurrentLocalSpan(span3);
+      }).get();
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(state.getCurrentLocalSpan()).isSameAs(span2);
+  }
+
+  @Test
+  public void braveRunnable_restoresPreviousLocalSpanWithoutGrowingStack() {
+    Brave brave = new Brave.Builder(state).build();
+    state.setCurrentLocalSpan(span1);
+
+    BraveRunnable.wrap(() -> assertThat(state.getCurrentLocalSpan()).isSameAs(span1), brave)
+        .run();
+    state.setCurrentLocalSpan(span2);
+    BraveRunnable task = BraveRunnable.wrap(() -> {
+    }, brave);
+    state.setCurrentLocalSpan(null);
+    task.run();
+
+    assertThat(state.getCurrentLocalSpan()).isSameAs(span1);
+    state.setCurrentLocalSpan(null);
+    assertThat(state.getCurrentLocalSpan()).isNull();
+  }
+}
@@ -6,6 +6,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.github.kristofa.brave.Brave;
 import com.github.kristofa.brave.KeyValueAnnotation;
+import com.github.kristofa.brave.RuleSampler;
 import com.github.kristofa.brave.ServerRequestAdapter;
 import com.github.kristofa.brave.ServerRequestInterceptor;
 import com.github.kristofa.brave.ServerResponseAdapter;
@@ -13,6 +14,7 @@ import com.github.kristofa.brave.ServerResponseInterceptor;
 import com.github.kristofa.brave.SpanId;
 import com.github.kristofa.brave.TraceData;
 
+import com.github.kristofa.brave.internal.Nullable;
 import com.github.kristofa.brave.internal.Util;
 import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
 import io.grpc.Metadata;
@@ -41,11 +43,23 @@ public final class BraveGrpcServerInterceptor implements ServerInterceptor {
 
     public static final class Builder {
         final Brave brave;
+        RuleSampler<MethodDescriptor<?, ?>> sampler;
 
         Builder(Brave brave) { // intentionally hidden
             this.brave = Util.checkNotNull(brave, "brave");
         }
 
+        /**
+         * Decides whether to sample calls whose caller didn't, before any span is created. When
+         * unset or no rule matches, the tracer's sampler decides.
+         *
+         * @see GrpcRuleSampler
+         */
+        public Builder sampler(RuleSampler<MethodDescriptor<?, ?>> sampler) {
+            this.sampler = Util.checkNotNull(sampler, "sampler");
+            return this;
+        }
+
         public BraveGrpcServerInterceptor build() {
             return new BraveGrpcServerInterceptor(this);
         }
@@ -54,11 +68,13 @@ public final class BraveGrpcServerInterceptor implements ServerInterceptor {
     private final ServerRequestInterceptor serverRequestInterceptor;
     private final ServerResponseInterceptor serverResponseInterceptor;
     private final MaybeAddClientAddressFromAttributes maybeAddClientAddressFromAttributes;
+    @Nullable private final RuleSampler<MethodDescriptor<?, ?>> sampler;
 
     BraveGrpcServerInterceptor(Builder b) { // intentionally hidden
         this.serverRequestInterceptor = b.brave.serverRequestInterceptor();
         this.serverResponseInterceptor = b.brave.serverResponseInterceptor();
         this.maybeAddClientAddressFromAttributes = new MaybeAddClientAddressFromAttributes(b.brave);
+        this.sampler = b.sampler;
     }
 
     /**
@@ -75,7 +91,8 @@ public final class BraveGrpcServerInterceptor implements ServerInterceptor {
         return next.startCall(new SimpleForwardingServerCall<ReqT, RespT>(call) {
             @Override
             public void request(int numMessages) {
-                serverRequestInterceptor.handle(new GrpcServerRequestAdapter<>(call, requestHeaders));
+                serverRequestInterceptor.handle(
+                    new GrpcServerRequestAdapter<>(call, requestHeaders, sampler));
                 maybeAddClientAddressFromAttributes.accept(call.attributes());
                 super.request(numMessages);
             }
@@ -93,11 +110,14 @@ public final class BraveGrpcServerInterceptor implements ServerInterceptor {
         private final ServerCall<ReqT, RespT> call;
         private final MethodDescriptor<ReqT, RespT> method;
         private final Metadata requestHeaders;
+        @Nullable private final RuleSampler<MethodDescriptor<?, ?>> sampler;
 
-        GrpcServerRequestAdapter(ServerCall<ReqT, RespT> call, Metadata requestHeaders) {
+        GrpcServerRequestAdapter(ServerCall<ReqT, RespT> call, Metadata requestHeaders,
+            @Nullable RuleSampler<MethodDescriptor<?, ?>> sampler) {
             this.call = checkNotNull(call);
             this.method = checkNotNull(call.getMethodDescriptor());
             this.requestHeaders = checkNotNull(requestHeaders);
+            this.sampler = sampler;
         }
 
         @Override
@@ -113,12 +133,13 @@ public final class BraveGrpcServerInterceptor implements ServerInterceptor {
                 : null;
 
             if (traceId != null && spanId != null) {
+                if (parsedSampled == null && sampler != null) parsedSampled = sampler.isSampled(method);
                 return TraceData.create(getSpanId(traceId, spanId, parentSpanId, parsedSampled));
-            } else if (parsedSampled == null) {
-                return TraceData.EMPTY;
-            } else if (parsedSampled.booleanValue()) {
-                // Invalid: The caller requests the trace to be sampled, but didn't pass IDs
-                return TraceData.EMPTY;
+            } else if (parsedSampled == null || parsedSampled.booleanValue()) {
+                // When true, the caller requests the trace to be sampled, but didn't pass IDs (invalid)
+                Boolean ruled = sampler != null ? sampler.isSampled(method) : null;
+                if (ruled == null) return TraceData.EMPTY;
+                return ruled ? TraceData.SAMPLED : TraceData.NOT_SAMPLED;
             } else {
                 return TraceData.NOT_SAMPLED;
             }
@@ -0,0 +1,44 @@
+package com.github.kristofa.brave.grpc;
+
+import com.github.kristofa.brave.RuleSampler;
+import io.grpc.MethodDescriptor;
+
+/**
+ * Samples gRPC calls by service or method. Rule paths are prefixes of the full method name, so
+ * {@code "helloworld.Greeter/"} matches all methods of that service. Pass the result to {@link
+ * BraveGrpcServerInterceptor.Builder#sampler(RuleSampler)}.
+ *
+ * <pre>{@code
+ * sampler = GrpcRuleSampler.newBuilder()
+ *     .addRule(null, "helloworld.Greeter/SayHello", 1.0f)
+ *     .addRule(null, "grpc.health.v1.Health/", 0.001f)
+ *     .build();
+ * }</pre>
+ *
+ * @see RuleSampler
+ */
+public final class GrpcRuleSampler {
+
+    /** gRPC has no method in the http sense, so this only matches the full method name. */
+    public static final RuleSampler.Adapter<MethodDescriptor<?, ?>> ADAPTER =
+        new RuleSampler.Adapter<MethodDescriptor<?, ?>>() {
+            @Override public String method(MethodDescriptor<?, ?> request) {
+                return null;
+            }
+
+            @Override public String path(MethodDescriptor<?, ?> request) {
+                return request.getFullMethodName();
+            }
+
+            @Override public String toString() {
+                return "MethodDescriptor";
+            }
+        };
+
+    public static RuleSampler.Builder<MethodDescriptor<?, ?>> newBuilder() {
+        return RuleSampler.newBuilder(ADAPTER);
+    }
+
+    GrpcRuleSampler() {
+    }
+}
@@ -14,6 +14,7 @@ import static junit.framework.Assert.assertNull;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -24,15 +25,16 @@ public class GrpcServerRequestAdapterTest {
   private static final String PARENT_SPAN_ID = "8000000000000000";
 
   Metadata metadata = new Metadata();
+  ServerCall serverCall = mock(ServerCall.class);
   GrpcServerRequestAdapter adapter;
 
   @Before
   public void initMocks() {
-    ServerCall serverCall = mock(ServerCall.class);
     MethodDescriptor method = mock(MethodDescriptor.class);
+    when(method.getFullMethodName()).thenReturn("helloworld.Greeter/SayHello");
     when(serverCall.getMethodDescriptor()).thenReturn(method);
 
-    adapter = new GrpcServerRequestAdapter(serverCall, metadata);
+    adapter = new GrpcServerRequestAdapter(serverCall, metadata, null);
   }
 
   @Test
@@ -172,4 +174,20 @@ public class GrpcServerRequestAdapterTest {
     assertEquals(IdConversion.convertToLong(SPAN_ID), spanId.spanId);
     assertNull(spanId.nullableParentId());
   }
+
+  @Test
+  public void getTraceData_ruleSampler_decidesWhenCallerDidnt() {
+    adapter = new GrpcServerRequestAdapter(serverCall, metadata,
+        GrpcRuleSampler.newBuilder().addRule(null, "helloworld.Greeter/", 1.0f).build());
+
+    assertSame(TraceData.SAMPLED, adapter.getTraceData());
+  }
+
+  @Test
+  public void getTraceData_ruleSampler_noMatch() {
+    adapter = new GrpcServerRequestAdapter(serverCall, metadata,
+        GrpcRuleSampler.newBuilder().addRule(null, "grpc.health.v1.Health/", 0.0f).build());
+
+    assertSame(TraceData.EMPTY, adapter.getTraceData());
+  }
 }
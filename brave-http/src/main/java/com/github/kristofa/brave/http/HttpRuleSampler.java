@@ -0,0 +1,44 @@
+package com.github.kristofa.brave.http;
+
+import com.github.kristofa.brave.RuleSampler;
+import java.net.URI;
+
+/**
+ * Samples http requests by method and path prefix. Pass the result to {@link
+ * HttpServerRequestAdapter}, so the decision is made before a span is created.
+ *
+ * <pre>{@code
+ * sampler = HttpRuleSampler.newBuilder()
+ *     .addRule(null, "/checkout", 1.0f)
+ *     .addRule("GET", "/health", 0.001f)
+ *     .build();
+ * }</pre>
+ *
+ * @see RuleSampler
+ */
+public final class HttpRuleSampler {
+
+    /** Matches the {@link HttpRequest#getHttpMethod() method} and path of the request URI. */
+    public static final RuleSampler.Adapter<HttpRequest> ADAPTER =
+        new RuleSampler.Adapter<HttpRequest>() {
+            @Override public String method(HttpRequest request) {
+                return request.getHttpMethod();
+            }
+
+            @Override public String path(HttpRequest request) {
+                URI uri = request.getUri();
+                return uri != null ? uri.getPath() : null;
+            }
+
+            @Override public String toString() {
+                return "HttpRequest";
+            }
+        };
+
+    public static RuleSampler.Builder<HttpRequest> newBuilder() {
+        return RuleSampler.newBuilder(ADAPTER);
+    }
+
+    HttpRuleSampler() {
+    }
+}
@@ -1,9 +1,11 @@
 package com.github.kristofa.brave.http;
 
 import com.github.kristofa.brave.KeyValueAnnotation;
+import com.github.kristofa.brave.RuleSampler;
 import com.github.kristofa.brave.ServerRequestAdapter;
 import com.github.kristofa.brave.SpanId;
 import com.github.kristofa.brave.TraceData;
+import com.github.kristofa.brave.internal.Nullable;
 import java.util.Collection;
 import java.util.Collections;
 import zipkin.TraceKeys;
@@ -13,10 +15,22 @@ import static com.github.kristofa.brave.IdConversion.convertToLong;
 public class HttpServerRequestAdapter implements ServerRequestAdapter {
     private final HttpServerRequest request;
     private final SpanNameProvider spanNameProvider;
+    @Nullable private final RuleSampler<? super HttpServerRequest> sampler;
 
     public HttpServerRequestAdapter(HttpServerRequest request, SpanNameProvider spanNameProvider) {
+        this(request, spanNameProvider, null);
+    }
+
+    /**
+     * @param sampler decides when the caller didn't, before any span is created. When null or no
+     * rule matches, the tracer's sampler decides.
+     * @see HttpRuleSampler
+     */
+    public HttpServerRequestAdapter(HttpServerRequest request, SpanNameProvider spanNameProvider,
+        @Nullable RuleSampler<? super HttpServerRequest> sampler) {
         this.request = request;
         this.spanNameProvider = spanNameProvider;
+        this.sampler = sampler;
     }
 
     @Override
@@ -32,12 +46,13 @@ public class HttpServerRequestAdapter implements ServerRequestAdapter {
             : null;
 
         if (traceId != null && spanId != null) {
+            if (parsedSampled == null && sampler != null) parsedSampled = sampler.isSampled(request);
             return TraceData.create(getSpanId(traceId, spanId, parentSpanId, parsedSampled));
-        } else if (parsedSampled == null) {
-            return TraceData.EMPTY;
-        } else if (parsedSampled.booleanValue()) {
-            // Invalid: The caller requests the trace to be sampled, but didn't pass IDs
-            return TraceData.EMPTY;
+        } else if (parsedSampled == null || parsedSampled.booleanValue()) {
+            // When true, the caller requests the trace to be sampled, but didn't pass IDs (invalid)
+            Boolean ruled = sampler != null ? sampler.isSampled(request) : null;
+            if (ruled == null) return TraceData.EMPTY;
+            return ruled ? TraceData.SAMPLED : TraceData.NOT_SAMPLED;
         } else {
             return TraceData.NOT_SAMPLED;
         }
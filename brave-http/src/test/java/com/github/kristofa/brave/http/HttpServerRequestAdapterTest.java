@@ -179,4 +179,49 @@ public class HttpServerRequestAdapterTest {
         assertEquals(IdConversion.convertToLong(SPAN_ID), spanId.spanId);
         assertNull(spanId.nullableParentId());
     }
+
+    @Test
+    public void getTraceData_ruleSampler_decidesWhenCallerDidnt() throws Exception {
+        when(serverRequest.getHttpMethod()).thenReturn("GET");
+        when(serverRequest.getUri()).thenReturn(new URI("http://youruri.com/health?verbose"));
+        adapter = new HttpServerRequestAdapter(serverRequest, spanNameProvider,
+            HttpRuleSampler.newBuilder().addRule("GET", "/health", 0.0f).build());
+
+        assertSame(TraceData.NOT_SAMPLED, adapter.getTraceData());
+    }
+
+    @Test
+    public void getTraceData_ruleSampler_noMatch() throws Exception {
+        when(serverRequest.getHttpMethod()).thenReturn("GET");
+        when(serverRequest.getUri()).thenReturn(new URI("http://youruri.com/checkout"));
+        adapter = new HttpServerRequestAdapter(serverRequest, spanNameProvider,
+            HttpRuleSampler.newBuilder().addRule("GET", "/health", 0.0f).build());
+
+        assertSame(TraceData.EMPTY, adapter.getTraceData());
+    }
+
+    @Test
+    public void getTraceData_ruleSampler_samplesExternallyProvidedIds() throws Exception {
+        when(serverRequest.getHttpHeaderValue(BraveHttpHeaders.TraceId.getName())).thenReturn(TRACE_ID);
+        when(serverRequest.getHttpHeaderValue(BraveHttpHeaders.SpanId.getName())).thenReturn(SPAN_ID);
+        when(serverRequest.getHttpMethod()).thenReturn("POST");
+        when(serverRequest.getUri()).thenReturn(new URI("http://youruri.com/checkout"));
+        adapter = new HttpServerRequestAdapter(serverRequest, spanNameProvider,
+            HttpRuleSampler.newBuilder().addRule(null, "/checkout", 1.0f).build());
+
+        TraceData traceData = adapter.getTraceData();
+        assertTrue(traceData.getSample());
+        assertEquals(IdConversion.convertToLong(SPAN_ID), traceData.getSpanId().spanId);
+    }
+
+    @Test
+    public void getTraceData_ruleSampler_doesntOverrideCaller() throws Exception {
+        when(serverRequest.getHttpHeaderValue(BraveHttpHeaders.Sampled.getName())).thenReturn("0");
+        when(serverRequest.getHttpMethod()).thenReturn("POST");
+        when(serverRequest.getUri()).thenReturn(new URI("http://youruri.com/checkout"));
+        adapter = new HttpServerRequestAdapter(serverRequest, spanNameProvider,
+            HttpRuleSampler.newBuilder().addRule(null, "/checkout", 1.0f).build());
+
+        assertSame(TraceData.NOT_SAMPLED, adapter.getTraceData());
+    }
 }
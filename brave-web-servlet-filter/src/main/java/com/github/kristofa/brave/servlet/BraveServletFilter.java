@@ -1,10 +1,13 @@
 package com.github.kristofa.brave.servlet;
 
 import com.github.kristofa.brave.Brave;
+import com.github.kristofa.brave.RuleSampler;
 import com.github.kristofa.brave.ServerRequestInterceptor;
 import com.github.kristofa.brave.ServerResponseInterceptor;
 import com.github.kristofa.brave.ServerTracer;
 import com.github.kristofa.brave.http.DefaultSpanNameProvider;
+import com.github.kristofa.brave.http.HttpRuleSampler;
+import com.github.kristofa.brave.http.HttpServerRequest;
 import com.github.kristofa.brave.http.HttpServerRequestAdapter;
 import com.github.kristofa.brave.http.HttpServerResponseAdapter;
 import com.github.kristofa.brave.http.SpanNameProvider;
@@ -43,6 +46,7 @@ public class BraveServletFilter implements Filter {
     public static final class Builder {
         final Brave brave;
         SpanNameProvider spanNameProvider = new DefaultSpanNameProvider();
+        RuleSampler<? super HttpServerRequest> sampler;
 
         Builder(Brave brave) { // intentionally hidden
             this.brave = checkNotNull(brave, "brave");
@@ -53,6 +57,17 @@ public class BraveServletFilter implements Filter {
             return this;
         }
 
+        /**
+         * Decides whether to sample requests whose caller didn't, before any span is created. When
+         * unset or no rule matches, the tracer's sampler decides.
+         *
+         * @see HttpRuleSampler
+         */
+        public Builder sampler(RuleSampler<? super HttpServerRequest> sampler) {
+            this.sampler = checkNotNull(sampler, "sampler");
+            return this;
+        }
+
         public BraveServletFilter build() {
             return new BraveServletFilter(this);
         }
@@ -61,6 +76,7 @@ public class BraveServletFilter implements Filter {
     private final ServerRequestInterceptor requestInterceptor;
     private final ServerResponseInterceptor responseInterceptor;
     private final SpanNameProvider spanNameProvider;
+    @Nullable private final RuleSampler<? super HttpServerRequest> sampler;
     @Nullable // while deprecated constructor is in use
     private final ServerTracer serverTracer;
     private final MaybeAddClientAddressFromRequest maybeAddClientAddressFromRequest;
@@ -71,6 +87,7 @@ public class BraveServletFilter implements Filter {
         this.requestInterceptor = b.brave.serverRequestInterceptor();
         this.responseInterceptor = b.brave.serverResponseInterceptor();
         this.spanNameProvider = b.spanNameProvider;
+        this.sampler = b.sampler;
         this.serverTracer = b.brave.serverTracer();
         this.maybeAddClientAddressFromRequest = MaybeAddClientAddressFromRequest.create(b.brave);
     }
@@ -83,6 +100,7 @@ public class BraveServletFilter implements Filter {
         this.requestInterceptor = requestInterceptor;
         this.responseInterceptor = responseInterceptor;
         this.spanNameProvider = spanNameProvider;
+        this.sampler = null;
         this.serverTracer = null;
         this.maybeAddClientAddressFromRequest = null;
     }
@@ -106,7 +124,8 @@ public class BraveServletFilter implements Filter {
 
             HttpServletRequest httpRequest = (HttpServletRequest) request;
             final StatusExposingServletResponse statusExposingServletResponse = new StatusExposingServletResponse((HttpServletResponse) response);
-            requestInterceptor.handle(new HttpServerRequestAdapter(new ServletHttpServerRequest(httpRequest), spanNameProvider));
+            requestInterceptor.handle(new HttpServerRequestAdapter(
+                new ServletHttpServerRequest(httpRequest), spanNameProvider, sampler));
 
             if (maybeAddClientAddressFromRequest != null) {
                 maybeAddClientAddressFromRequest.accept(httpRequest);
@@ -0,0 +1,32 @@
+package brave;
+
+import zipkin.reporter.AsyncReporter;
+import zipkin.reporter.Encoder;
+import zipkin.reporter.Encoding;
+
+/**
+ * Passes spans already encoded by the tracer through as-is. Use this to build an {@link
+ * AsyncReporter} for {@link Tracer.Builder#reporter(Encoding, zipkin.reporter.Reporter)}.
+ */
+public final class BytesEncoder implements Encoder<byte[]> {
+  public static final Encoder<byte[]> JSON = new BytesEncoder(Encoding.JSON);
+  public static final Encoder<byte[]> THRIFT = new BytesEncoder(Encoding.THRIFT);
+
+  final Encoding encoding;
+
+  BytesEncoder(Encoding encoding) {
+    this.encoding = encoding;
+  }
+
+  @Override public Encoding encoding() {
+    return encoding;
+  }
+
+  @Override public byte[] encode(byte[] span) {
+    return span;
+  }
+
+  @Override public String toString() {
+    return "BytesEncoder(" + encoding + ")";
+  }
+}
@@ -0,0 +1,110 @@
+package brave;
+
+import brave.internal.recorder.TailCapture;
+import brave.propagation.TraceContext;
+import zipkin.Endpoint;
+
+/**
+ * An unsampled span recorded into a slot of the {@link TailCapture} ring. It is reported only if
+ * its local root ends in error or is slow. Handles of the same unfinished span share its claim.
+ *
+ * @see Tracer.Builder#tailCapture(int, long, java.util.concurrent.TimeUnit)
+ */
+final class CapturedSpan extends Span {
+
+  final TraceContext context;
+  final Clock clock;
+  final TailCapture tailCapture;
+  final long claim;
+
+  CapturedSpan(TraceContext context, Clock clock, TailCapture tailCapture, long claim) {
+    this.context = context;
+    this.clock = clock;
+    this.tailCapture = tailCapture;
+    this.claim = claim;
+  }
+
+  /** False, as instrumentation must still record tags such as "error" for capture to work. */
+  @Override public boolean isNoop() {
+    return false;
+  }
+
+  @Override public TraceContext context() {
+    return context;
+  }
+
+  @Override public Span start() {
+    return start(clock.currentTimeMicroseconds());
+  }
+
+  @Override public Span start(long timestamp) {
+    tailCapture.start(claim, timestamp);
+    return this;
+  }
+
+  @Override public Span start(SpanFields fields) {
+    tailCapture.customize(claim, fields, clock.currentTimeMicroseconds());
+    return this;
+  }
+
+  @Override public Span customize(SpanFields fields) {
+    tailCapture.customize(claim, fields, 0L);
+    return this;
+  }
+
+  @Override public Span name(String name) {
+    tailCapture.name(claim, name);
+    return this;
+  }
+
+  @Override public Span kind(Kind kind) {
+    tailCapture.kind(claim, kind);
+    return this;
+  }
+
+  @Override public Span annotate(String value) {
+    return annotate(clock.currentTimeMicroseconds(), value);
+  }
+
+  @Override public Span annotate(long timestamp, String value) {
+    tailCapture.annotate(claim, timestamp, value);
+    return this;
+  }
+
+  @Override public Span tag(String key, String value) {
+    tailCapture.tag(claim, key, value);
+    return this;
+  }
+
+  @Override public Span remoteEndpoint(Endpoint remoteEndpoint) {
+    tailCapture.remoteEndpoint(claim, remoteEndpoint);
+    return this;
+  }
+
+  @Override public void finish() {
+    finish(clock.currentTimeMicroseconds());
+  }
+
+  @Override public void finish(long timestamp) {
+    tailCapture.finish(claim, timestamp);
+  }
+
+  @Override public void flush() {
+    tailCapture.finish(claim, null);
+  }
+
+  @Override
+  public String toString() {
+    return "CapturedSpan(" + context + ")";
+  }
+
+  @Override public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof CapturedSpan)) return false;
+    return context.equals(((CapturedSpan) o).context);
+  }
+
+  @Override public int hashCode() {
+    return context.hashCode();
+  }
+}
@@ -0,0 +1,112 @@
+package brave;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts tracer metrics in memory, for example to expose them via an existing metrics library.
+ *
+ * @see JmxTracerMetrics
+ */
+public final class InMemoryTracerMetrics implements TracerMetrics {
+  final AtomicLong spansStarted = new AtomicLong();
+  final AtomicLong spansFinished = new AtomicLong();
+  final AtomicLong spansFlushed = new AtomicLong();
+  final AtomicLong orphanedSpans = new AtomicLong();
+  final AtomicLong expiredSpans = new AtomicLong();
+  final AtomicLong reports = new AtomicLong();
+  final AtomicLong reportNanos = new AtomicLong();
+  final AtomicLong maxReportNanos = new AtomicLong();
+
+  @Override public void incrementSpansStarted() {
+    spansStarted.incrementAndGet();
+  }
+
+  public long spansStarted() {
+    return spansStarted.get();
+  }
+
+  @Override public void incrementSpansFinished() {
+    spansFinished.incrementAndGet();
+  }
+
+  public long spansFinished() {
+    return spansFinished.get();
+  }
+
+  @Override public void incrementSpansFlushed() {
+    spansFlushed.incrementAndGet();
+  }
+
+  public long spansFlushed() {
+    return spansFlushed.get();
+  }
+
+  @Override public void incrementOrphanedSpans() {
+    orphanedSpans.incrementAndGet();
+  }
+
+  public long orphanedSpans() {
+    return orphanedSpans.get();
+  }
+
+  @Override public void incrementExpiredSpans() {
+    expiredSpans.incrementAndGet();
+  }
+
+  public long expiredSpans() {
+    return expiredSpans.get();
+  }
+
+  /** Spans started, but not yet reported. This can be briefly inaccurate under concurrency. */
+  public long inFlightSpans() {
+    long ended = spansFinished() + spansFlushed() + orphanedSpans() + expiredSpans();
+    return Math.max(spansStarted() - ended, 0L);
+  }
+
+  @Override public void recordReportNanos(long nanos) {
+    reports.incrementAndGet();
+    reportNanos.addAndGet(nanos);
+    long max;
+    while (nanos > (max = maxReportNanos.get())) {
+      if (maxReportNanos.compareAndSet(max, nanos)) break;
+    }
+  }
+
+  /** Count of calls to the reporter, including failed ones. */
+  public long reports() {
+    return reports.get();
+  }
+
+  /** Total time spent in the reporter. Divide by {@link #reports()} for the mean. */
+  public long reportNanos() {
+    return reportNanos.get();
+  }
+
+  /** The longest time spent in the reporter for a single span. */
+  public long maxReportNanos() {
+    return maxReportNanos.get();
+  }
+
+  public void clear() {
+    spansStarted.set(0);
+    spansFinished.set(0);
+    spansFlushed.set(0);
+    orphanedSpans.set(0);
+    expiredSpans.set(0);
+    reports.set(0);
+    reportNanos.set(0);
+    maxReportNanos.set(0);
+  }
+
+  @Override public String toString() {
+    return "InMemoryTracerMetrics{spansStarted=" + spansStarted
+        + ", spansFinished=" + spansFinished
+        + ", spansFlushed=" + spansFlushed
+        + ", orphanedSpans=" + orphanedSpans
+        + ", expiredSpans=" + expiredSpans
+        + ", reports=" + reports
+        + ", reportNanos=" + reportNanos
+        + ", maxReportNanos=" + maxReportNanos
+        + "}";
+  }
+}
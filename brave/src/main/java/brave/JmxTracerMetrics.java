@@ -0,0 +1,88 @@
+package brave;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * Exports {@link InMemoryTracerMetrics} as a JMX MBean.
+ *
+ * <p>Ex.
+ * <pre>{@code
+ * InMemoryTracerMetrics metrics = new InMemoryTracerMetrics();
+ * tracer = Tracer.newBuilder().localServiceName("frontend").metrics(metrics).build();
+ * JmxTracerMetrics.create(metrics).register("frontend");
+ * }</pre>
+ */
+public final class JmxTracerMetrics extends StandardMBean implements TracerMetricsMBean {
+
+  public static JmxTracerMetrics create(InMemoryTracerMetrics delegate) {
+    return new JmxTracerMetrics(delegate);
+  }
+
+  final InMemoryTracerMetrics delegate;
+
+  JmxTracerMetrics(InMemoryTracerMetrics delegate) {
+    super(TracerMetricsMBean.class, false);
+    if (delegate == null) throw new NullPointerException("delegate == null");
+    this.delegate = delegate;
+  }
+
+  /**
+   * Registers with the platform MBean server, named "brave:type=TracerMetrics,service=$service".
+   *
+   * @return the name registered, which can be passed to {@link MBeanServer#unregisterMBean}
+   */
+  public ObjectName register(String localServiceName) throws JMException {
+    if (localServiceName == null) throw new NullPointerException("localServiceName == null");
+    return register(ManagementFactory.getPlatformMBeanServer(), objectName(localServiceName));
+  }
+
+  /** Like {@link #register(String)}, except with a given server and name. */
+  public ObjectName register(MBeanServer server, ObjectName name) throws JMException {
+    return server.registerMBean(this, name).getObjectName();
+  }
+
+  static ObjectName objectName(String localServiceName) throws JMException {
+    return new ObjectName(
+        "brave:type=TracerMetrics,service=" + ObjectName.quote(localServiceName));
+  }
+
+  @Override public long getSpansStarted() {
+    return delegate.spansStarted();
+  }
+
+  @Override public long getSpansFinished() {
+    return delegate.spansFinished();
+  }
+
+  @Override public long getSpansFlushed() {
+    return delegate.spansFlushed();
+  }
+
+  @Override public long getOrphanedSpans() {
+    return delegate.orphanedSpans();
+  }
+
+  @Override public long getExpiredSpans() {
+    return delegate.expiredSpans();
+  }
+
+  @Override public long getInFlightSpans() {
+    return delegate.inFlightSpans();
+  }
+
+  @Override public long getReports() {
+    return delegate.reports();
+  }
+
+  @Override public long getReportNanos() {
+    return delegate.reportNanos();
+  }
+
+  @Override public long getMaxReportNanos() {
+    return delegate.maxReportNanos();
+  }
+}
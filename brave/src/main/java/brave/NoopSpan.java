@@ -26,6 +26,14 @@ final class NoopSpan extends Span {
     return this;
   }
 
+  @Override public Span start(SpanFields fields) {
+    return this;
+  }
+
+  @Override public Span customize(SpanFields fields) {
+    return this;
+  }
+
   @Override public Span name(String name) {
     return this;
   }
@@ -63,4 +71,14 @@ final class NoopSpan extends Span {
   public String toString() {
     return "NoopSpan(" + context + ")";
   }
+
+  @Override public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof NoopSpan)) return false;
+    return context.equals(((NoopSpan) o).context);
+  }
+
+  @Override public int hashCode() {
+    return context.hashCode();
+  }
 }
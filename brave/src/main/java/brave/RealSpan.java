@@ -1,20 +1,60 @@
 package brave;
 
+import brave.internal.TickClock;
+import brave.internal.recorder.MutableSpan;
 import brave.internal.recorder.Recorder;
 import brave.propagation.TraceContext;
 import zipkin.Endpoint;
 
-/** This wraps the public api and guards access to a mutable span. */
+/**
+ * This wraps the public api and guards access to a mutable span.
+ *
+ * <p>The mutable span is looked up on first mutation and retained, so subsequent mutations don't
+ * pay for a lookup. The recorder remains the source of truth: other handles for the same context,
+ * such as those from {@link Tracer#toSpan(TraceContext)}, resolve the same mutable span.
+ *
+ * <p>With {@link Tracer.Builder#mapFreeSpans(boolean)}, spans created by the tracer are instead
+ * handed state that isn't registered in the recorder's map. No lookup happens at all, and finishing
+ * reports the state held here.
+ *
+ * <p>Mutations pass this handle's context, so that the recorder drops them once the span finished.
+ * Otherwise, a late mutation could corrupt an unrelated span that re-used the recycled state.
+ */
 final class RealSpan extends Span {
 
   final TraceContext context;
   final Clock clock;
   final Recorder recorder;
+  volatile MutableSpan state; // lazily resolved, as many spans are created only for their context
+  /** True when the state isn't in the recorder's map, so only this handle can finish it. */
+  final boolean ownsState;
 
   RealSpan(TraceContext context, Clock clock, Recorder recorder) {
     this.context = context;
     this.clock = clock;
     this.recorder = recorder;
+    this.ownsState = false;
+  }
+
+  /** Creates a handle for state from {@link Recorder#newSpan(TraceContext)}. */
+  RealSpan(TraceContext context, Clock clock, Recorder recorder, MutableSpan state) {
+    this.context = context;
+    this.clock = clock;
+    this.recorder = recorder;
+    this.state = state;
+    this.ownsState = true;
+    if (clock instanceof TickClock) recorder.clock(state, clock);
+  }
+
+  MutableSpan state() {
+    MutableSpan result = state;
+    if (result == null) {
+      // racing threads resolve the same instance, so there's no need to lock here
+      state = result = recorder.span(context);
+      // children and re-attached handles look this up to share the trace's anchor
+      if (clock instanceof TickClock) recorder.clock(result, clock);
+    }
+    return result;
   }
 
   @Override public boolean isNoop() {
@@ -30,17 +70,27 @@ final class RealSpan extends Span {
   }
 
   @Override public Span start(long timestamp) {
-    recorder.start(context, timestamp);
+    recorder.start(state(), context, timestamp);
+    return this;
+  }
+
+  @Override public Span start(SpanFields fields) {
+    recorder.customize(state(), context, fields, clock.currentTimeMicroseconds());
+    return this;
+  }
+
+  @Override public Span customize(SpanFields fields) {
+    recorder.customize(state(), context, fields, 0L);
     return this;
   }
 
   @Override public Span name(String name) {
-    recorder.name(context, name);
+    recorder.name(state(), context, name);
     return this;
   }
 
   @Override public Span kind(Kind kind) {
-    recorder.kind(context, kind);
+    recorder.kind(state(), context, kind);
     return this;
   }
 
@@ -49,17 +99,17 @@ final class RealSpan extends Span {
   }
 
   @Override public Span annotate(long timestamp, String value) {
-    recorder.annotate(context, timestamp, value);
+    recorder.annotate(state(), context, timestamp, value);
     return this;
   }
 
   @Override public Span tag(String key, String value) {
-    recorder.tag(context, key, value);
+    recorder.tag(state(), context, key, value);
     return this;
   }
 
   @Override public Span remoteEndpoint(Endpoint remoteEndpoint) {
-    recorder.remoteEndpoint(context, remoteEndpoint);
+    recorder.remoteEndpoint(state(), context, remoteEndpoint);
     return this;
   }
 
@@ -68,15 +118,34 @@ final class RealSpan extends Span {
   }
 
   @Override public void finish(long timestamp) {
-    recorder.finish(context, timestamp);
+    if (ownsState) {
+      recorder.finish(state, context, timestamp);
+    } else {
+      recorder.finish(context, timestamp);
+    }
   }
 
   @Override public void flush() {
-    recorder.flush(context);
+    if (ownsState) {
+      recorder.flush(state, context);
+    } else {
+      recorder.flush(context);
+    }
   }
 
   @Override
   public String toString() {
     return "RealSpan(" + context + ")";
   }
+
+  /** Equal when the contexts are, as handles for the same context record to the same span. */
+  @Override public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof RealSpan)) return false;
+    return context.equals(((RealSpan) o).context);
+  }
+
+  @Override public int hashCode() {
+    return context.hashCode();
+  }
 }
@@ -48,6 +48,18 @@ public abstract class Span {
   /** Like {@link #start()}, except with a given timestamp in microseconds. */
   public abstract Span start(long timestamp);
 
+  /**
+   * Like {@link #customize(SpanFields)}, except also {@link #start() starts} the span, all in one
+   * step.
+   */
+  public abstract Span start(SpanFields fields);
+
+  /**
+   * Applies all fields to the span at once. This is cheaper than calling {@link #name(String)},
+   * {@link #tag(String, String)} etc. one at a time, as the span is only locked once.
+   */
+  public abstract Span customize(SpanFields fields);
+
   /**
    * Sets the string name for the logical operation this span represents.
    */
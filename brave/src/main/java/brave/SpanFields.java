@@ -0,0 +1,129 @@
+package brave;
+
+import brave.internal.Nullable;
+import java.util.Arrays;
+import zipkin.Endpoint;
+
+/**
+ * Collects fields to apply to a span in one step, via {@link Span#customize(SpanFields)} or {@link
+ * Span#start(SpanFields)}.
+ *
+ * <p>Setting fields one at a time on a span costs a lock for each call. Collecting them here first
+ * means the span is locked once, no matter how many tags there are.
+ * <pre>{@code
+ * SpanFields fields = new SpanFields()
+ *     .kind(Span.Kind.CLIENT)
+ *     .name("get")
+ *     .tag(TraceKeys.HTTP_PATH, "/api")
+ *     .remoteEndpoint(backend);
+ * Span span = tracer.newTrace().start(fields);
+ * }</pre>
+ *
+ * <p>This type is not thread-safe. It can be re-used after {@link #clear() clearing}, for example
+ * per thread, as spans copy what they need from it.
+ */
+public final class SpanFields {
+  String name;
+  Span.Kind kind;
+  Endpoint remoteEndpoint;
+  int tagCount;
+  String[] tagKeys = new String[4];
+  String[] tagValues = new String[4];
+
+  /** @see Span#name(String) */
+  public SpanFields name(String name) {
+    if (name == null) throw new NullPointerException("name == null");
+    this.name = name;
+    return this;
+  }
+
+  /** @see Span#kind(Span.Kind) */
+  public SpanFields kind(Span.Kind kind) {
+    if (kind == null) throw new NullPointerException("kind == null");
+    this.kind = kind;
+    return this;
+  }
+
+  /** @see Span#remoteEndpoint(Endpoint) */
+  public SpanFields remoteEndpoint(Endpoint remoteEndpoint) {
+    if (remoteEndpoint == null) throw new NullPointerException("remoteEndpoint == null");
+    this.remoteEndpoint = remoteEndpoint;
+    return this;
+  }
+
+  /** @see Span#tag(String, String) */
+  public SpanFields tag(String key, String value) {
+    if (key == null) throw new NullPointerException("key == null");
+    if (key.isEmpty()) throw new IllegalArgumentException("key is empty");
+    if (value == null) throw new NullPointerException("value == null");
+    if (tagCount == tagKeys.length) {
+      tagKeys = Arrays.copyOf(tagKeys, tagCount * 2);
+      tagValues = Arrays.copyOf(tagValues, tagCount * 2);
+    }
+    tagKeys[tagCount] = key;
+    tagValues[tagCount++] = value;
+    return this;
+  }
+
+  @Nullable public String name() {
+    return name;
+  }
+
+  @Nullable public Span.Kind kind() {
+    return kind;
+  }
+
+  @Nullable public Endpoint remoteEndpoint() {
+    return remoteEndpoint;
+  }
+
+  public int tagCount() {
+    return tagCount;
+  }
+
+  public String tagKey(int index) {
+    if (index >= tagCount) throw new IndexOutOfBoundsException(index + " >= " + tagCount);
+    return tagKeys[index];
+  }
+
+  public String tagValue(int index) {
+    if (index >= tagCount) throw new IndexOutOfBoundsException(index + " >= " + tagCount);
+    return tagValues[index];
+  }
+
+  /** Removes all fields, retaining the tag arrays. */
+  public SpanFields clear() {
+    name = null;
+    kind = null;
+    remoteEndpoint = null;
+    for (int i = 0; i < tagCount; i++) tagKeys[i] = tagValues[i] = null;
+    tagCount = 0;
+    return this;
+  }
+
+  @Override public String toString() {
+    StringBuilder result = new StringBuilder("SpanFields{");
+    String separator = "";
+    if (name != null) {
+      result.append("name=").append(name);
+      separator = ", ";
+    }
+    if (kind != null) {
+      result.append(separator).append("kind=").append(kind);
+      separator = ", ";
+    }
+    if (remoteEndpoint != null) {
+      result.append(separator).append("remoteEndpoint=").append(remoteEndpoint);
+      separator = ", ";
+    }
+    if (tagCount > 0) {
+      result.append(separator).append("tags={");
+      for (int i = 0; i < tagCount; i++) {
+        if (i > 0) result.append(", ");
+        result.append(tagKeys[i]).append('=').append(tagValues[i]);
+      }
+      result.append('}');
+    }
+    return result.append('}').toString();
+  }
+}
@@ -3,14 +3,20 @@ package brave;
 import brave.internal.Internal;
 import brave.internal.Nullable;
 import brave.internal.Platform;
+import brave.internal.TickClock;
 import brave.internal.recorder.Recorder;
+import brave.internal.recorder.TailCapture;
+import brave.propagation.CurrentTraceContext;
+import brave.propagation.MDCCurrentTraceContext;
 import brave.propagation.Propagation;
 import brave.propagation.SamplingFlags;
 import brave.propagation.TraceContext;
 import brave.propagation.TraceContextOrSamplingFlags;
 import brave.sampler.Sampler;
+import java.util.concurrent.TimeUnit;
 import zipkin.Endpoint;
 import zipkin.reporter.AsyncReporter;
+import zipkin.reporter.Encoding;
 import zipkin.reporter.Reporter;
 import zipkin.reporter.Sender;
 
@@ -51,9 +57,23 @@ public final class Tracer {
     String localServiceName;
     Endpoint localEndpoint;
     Reporter<zipkin.Span> reporter;
+    Encoding encoding;
+    Reporter<byte[]> bytesReporter;
     Clock clock;
     Sampler sampler = Sampler.ALWAYS_SAMPLE;
     boolean traceId128Bit = false;
+    boolean timePrefixedTraceIds = false;
+    boolean recycleSpans = false;
+    boolean lockFreeRecording = false;
+    boolean mapFreeSpans = false;
+    boolean traceAnchoredClock = false;
+    TracerMetrics metrics = TracerMetrics.NOOP_METRICS;
+    long maxInFlightAgeNanos = 0L;
+    int drainInterval = 0; // zero means the recorder's default
+    CurrentTraceContext currentTraceContext;
+    int tailCaptureSpans = 0;
+    long tailCaptureThresholdMicros = 0L;
+    Clock anchorClock; // set on build when traceAnchoredClock
 
     /**
      * Controls the name of the service being traced, while still using a default site-local IP.
@@ -97,6 +117,39 @@ public final class Tracer {
     public Builder reporter(Reporter<zipkin.Span> reporter) {
       if (reporter == null) throw new NullPointerException("reporter == null");
       this.reporter = reporter;
+      this.encoding = null;
+      this.bytesReporter = null;
+      return this;
+    }
+
+    /**
+     * Like {@link #reporter(Reporter)}, except spans are encoded directly from recorded state. This
+     * avoids creating intermediate {@link zipkin.Span} objects, which are otherwise only used to
+     * encode the span.
+     *
+     * <p>For example, here's how to batch send pre-encoded spans via http:
+     *
+     * <pre>{@code
+     * reporter = AsyncReporter.builder(URLConnectionSender.create("http://localhost:9411/api/v1/spans"))
+     *                         .build(BytesEncoder.JSON);
+     *
+     * tracerBuilder.reporter(Encoding.JSON, reporter);
+     * }</pre>
+     *
+     * @param encoding the encoding of the bytes passed to the reporter, JSON or THRIFT
+     * @throws IllegalArgumentException if the encoding isn't supported
+     * @see BytesEncoder
+     */
+    public Builder reporter(Encoding encoding, Reporter<byte[]> reporter) {
+      if (encoding == null) throw new NullPointerException("encoding == null");
+      if (reporter == null) throw new NullPointerException("reporter == null");
+      if (encoding != Encoding.JSON && encoding != Encoding.THRIFT) {
+        throw new IllegalArgumentException(
+            "Unsupported encoding: " + encoding + ". Supported encodings are JSON and THRIFT");
+      }
+      this.encoding = encoding;
+      this.bytesReporter = reporter;
+      this.reporter = null;
       return this;
     }
 
@@ -116,13 +169,171 @@ public final class Tracer {
       return this;
     }
 
+    /**
+     * Responsible for implementing {@link Tracer#currentSpan()} and {@link
+     * Tracer#withSpanInScope(Span)}. By default a simple thread-local is used. Override to support
+     * other mechanisms, such as {@link MDCCurrentTraceContext} to add IDs to logs.
+     */
+    public Builder currentTraceContext(CurrentTraceContext currentTraceContext) {
+      if (currentTraceContext == null) {
+        throw new NullPointerException("currentTraceContext == null");
+      }
+      this.currentTraceContext = currentTraceContext;
+      return this;
+    }
+
     /** When true, new root spans will have 128-bit trace IDs. Defaults to false (64-bit) */
     public Builder traceId128Bit(boolean traceId128Bit) {
       this.traceId128Bit = traceId128Bit;
       return this;
     }
 
+    /**
+     * When true, new root spans will have 128-bit trace IDs whose upper 32 bits are epoch seconds.
+     * This lets storage partition or expire traces by time, and is compatible with systems that
+     * need time-ordered IDs. Defaults to false.
+     *
+     * <p>This implies {@link #traceId128Bit(boolean) 128-bit trace IDs}.
+     */
+    public Builder timePrefixedTraceIds(boolean timePrefixedTraceIds) {
+      this.timePrefixedTraceIds = timePrefixedTraceIds;
+      return this;
+    }
+
+    /**
+     * When true, recorded spans are returned to a bounded per-thread pool once reported, reducing
+     * garbage collection. Defaults to false.
+     *
+     * <p>Mutations after {@link Span#finish()} or {@link Span#flush()} are dropped, as they
+     * would be without recycling, so they can't affect an unrelated span which re-used the state.
+     */
+    public Builder recycleSpans(boolean recycleSpans) {
+      this.recycleSpans = recycleSpans;
+      return this;
+    }
+
+    /**
+     * When true, the wall clock is read once per local root span. Timestamps of its children and
+     * annotations are derived from {@link System#nanoTime()} relative to that. Defaults to false,
+     * which reads the {@link #clock(Clock) clock} for every timestamp.
+     *
+     * <p>This keeps timestamps in a local trace consistent with each other, while each new root
+     * re-syncs with wall time. The default {@link Platform} clock only reads the wall clock once,
+     * so over long uptimes it can drift from NTP-adjusted time.
+     *
+     * <p>A child re-uses its parent's anchor only while the parent is recording in this process.
+     * If a {@link #clock(Clock) clock} was set, it is used to read the anchor. Otherwise, the system
+     * wall clock is.
+     */
+    public Builder traceAnchoredClock(boolean traceAnchoredClock) {
+      this.traceAnchoredClock = traceAnchoredClock;
+      return this;
+    }
+
+    /**
+     * When true, span mutations are appended to a per-span log with compare-and-set, instead of
+     * locking the span. The log is folded into the span when it is finished. Defaults to false.
+     *
+     * <p>Consider this when spans are commonly mutated from multiple threads at the same time, such
+     * as by asynchronous clients. Otherwise, uncontended locking is cheaper than allocating an
+     * event per mutation.
+     */
+    public Builder lockFreeRecording(boolean lockFreeRecording) {
+      this.lockFreeRecording = lockFreeRecording;
+      return this;
+    }
+
+    /**
+     * When true, spans created by {@link Tracer#newTrace()}, {@link Tracer#newChild(TraceContext)}
+     * and similar hold their recorded state directly, instead of registering it by context in a
+     * shared map. This saves a map insertion and removal per span. Defaults to false.
+     *
+     * <p>Use this when spans are finished by the same {@link Span} object that created them, as
+     * is usual for synchronous instrumentation. {@link Tracer#toSpan(TraceContext)}, {@link
+     * Tracer#currentSpan()} and the Brave 3 adapter look spans up by context, so they don't
+     * see this state: data they record is reported as a separate fragment with the same IDs, which
+     * Zipkin merges. A child doesn't find the anchor of such a parent for {@link
+     * #traceAnchoredClock(boolean)}, and a span that is never finished isn't reported as an orphan.
+     */
+    public Builder mapFreeSpans(boolean mapFreeSpans) {
+      this.mapFreeSpans = mapFreeSpans;
+      return this;
+    }
+
+    /**
+     * Receives counts of spans recorded and reported by this tracer, and the time spent reporting
+     * them. Defaults to no-op.
+     *
+     * @see InMemoryTracerMetrics
+     * @see JmxTracerMetrics
+     */
+    public Builder metrics(TracerMetrics metrics) {
+      if (metrics == null) throw new NullPointerException("metrics == null");
+      this.metrics = metrics;
+      return this;
+    }
+
+    /**
+     * When positive, spans in-flight longer than this are reported with a "brave.flush" annotation,
+     * as if their context were garbage collected. This bounds memory when instrumentation leaks
+     * spans, but still holds references to their contexts. Defaults to zero, which disables this.
+     *
+     * <p>Expiration is checked periodically as spans are recorded, so it isn't precise. Choose a
+     * value well above the longest operation you expect to trace.
+     *
+     * <p>An expired span is no longer in flight, even though instrumentation may still hold it.
+     * Data recorded afterwards via the same {@link Span} is dropped, and finishing it reports
+     * nothing. Each is counted by
+     * {@link TracerMetrics#incrementExpiredSpans()}, and a late finish is logged at FINE level by
+     * {@code brave.internal.recorder.Recorder}.
+     */
+    public Builder maxInFlightAge(long maxInFlightAge, TimeUnit unit) {
+      if (unit == null) throw new NullPointerException("unit == null");
+      if (maxInFlightAge < 0) throw new IllegalArgumentException("maxInFlightAge < 0");
+      this.maxInFlightAgeNanos = unit.toNanos(maxInFlightAge);
+      return this;
+    }
+
+    /**
+     * Count of span operations between checks for spans orphaned by garbage collection, or expired
+     * by {@link #maxInFlightAge(long, TimeUnit)}. Defaults to 64.
+     *
+     * <p>A check polls a reference queue, and when expiration is enabled, may iterate all in-flight
+     * spans. Lower values report orphans sooner, at the cost of doing this more often on request
+     * threads.
+     */
+    public Builder drainInterval(int drainInterval) {
+      if (drainInterval < 1) throw new IllegalArgumentException("drainInterval < 1");
+      this.drainInterval = drainInterval;
+      return this;
+    }
+
+    /**
+     * When positive, unsampled spans are recorded into a ring of this many spans. If a local root
+     * span ends with an "error" tag, or takes at least the latency threshold, the spans recorded
+     * for its trace are reported. Otherwise, they are overwritten. Defaults to zero, which disables
+     * this, so unsampled spans are no-op.
+     *
+     * <p>This helps find slow or failed requests when sampling at a low rate. Size the ring to
+     * cover the spans started during your slowest traced operation, or they will be overwritten
+     * before their root finishes. Only spans finished before the local root are reported. {@link
+     * Tracer#toSpan(TraceContext)} and {@link Tracer#currentSpan()} return a handle to the same
+     * captured span, so that instrumentation can tag it with "error".
+     *
+     * @param maxSpans count of spans recorded at once. Memory is allocated up-front.
+     * @param latencyThreshold zero means only traces with errors are reported
+     */
+    public Builder tailCapture(int maxSpans, long latencyThreshold, TimeUnit unit) {
+      if (unit == null) throw new NullPointerException("unit == null");
+      if (maxSpans < 0) throw new IllegalArgumentException("maxSpans < 0");
+      if (latencyThreshold < 0) throw new IllegalArgumentException("latencyThreshold < 0");
+      this.tailCaptureSpans = maxSpans;
+      this.tailCaptureThresholdMicros = unit.toMicros(latencyThreshold);
+      return this;
+    }
+
     public Tracer build() {
+      if (traceAnchoredClock) anchorClock = clock != null ? clock : TickClock.WALL_CLOCK;
       if (clock == null) clock = Platform.get();
       if (localEndpoint == null) {
         localEndpoint = Platform.get().localEndpoint();
@@ -130,7 +341,8 @@ public final class Tracer {
           localEndpoint = localEndpoint.toBuilder().serviceName(localServiceName).build();
         }
       }
-      if (reporter == null) reporter = Platform.get();
+      if (reporter == null && bytesReporter == null) reporter = Platform.get();
+      if (currentTraceContext == null) currentTraceContext = CurrentTraceContext.Default.create();
       return new Tracer(this);
     }
   }
@@ -140,21 +352,45 @@ public final class Tracer {
       @Override public Long timestamp(Tracer tracer, TraceContext context) {
         return tracer.recorder.timestamp(context);
       }
+
+      @Override public boolean annotateIfInFlight(Tracer tracer, TraceContext context,
+          long timestamp, String value) {
+        return tracer.recorder.annotateIfInFlight(context, timestamp, value);
+      }
     };
   }
 
   final Clock clock;
+  @Nullable final Clock anchorClock;
   final Endpoint localEndpoint;
   final Recorder recorder;
+  @Nullable final TailCapture tailCapture;
+  final CurrentTraceContext currentTraceContext;
   final Sampler sampler;
   final boolean traceId128Bit;
+  final boolean timePrefixedTraceIds;
+  final boolean mapFreeSpans;
 
   Tracer(Builder builder) {
     this.clock = builder.clock;
+    this.anchorClock = builder.anchorClock;
     this.localEndpoint = builder.localEndpoint;
-    this.recorder = new Recorder(localEndpoint, clock, builder.reporter);
+    Recorder.Builder recorder = Recorder.newBuilder(localEndpoint, clock)
+        .recycleSpans(builder.recycleSpans)
+        .lockFreeRecording(builder.lockFreeRecording)
+        .metrics(builder.metrics)
+        .maxInFlightAgeNanos(builder.maxInFlightAgeNanos)
+        .tailCapture(builder.tailCaptureSpans, builder.tailCaptureThresholdMicros);
+    if (builder.drainInterval != 0) recorder.drainInterval(builder.drainInterval);
+    this.recorder = builder.bytesReporter != null
+        ? recorder.reporter(builder.encoding, builder.bytesReporter).build()
+        : recorder.reporter(builder.reporter).build();
+    this.tailCapture = this.recorder.tailCapture();
+    this.currentTraceContext = builder.currentTraceContext;
     this.sampler = builder.sampler;
     this.traceId128Bit = builder.traceId128Bit;
+    this.timePrefixedTraceIds = builder.timePrefixedTraceIds;
+    this.mapFreeSpans = builder.mapFreeSpans;
   }
 
   /** Used internally by operations such as {@link Span#finish()}, exposed for convenience. */
@@ -219,26 +455,109 @@ public final class Tracer {
 
   /** Converts the context as-is to a Span object */
   public Span toSpan(TraceContext context) {
+    return toSpan(null, context);
+  }
+
+  Span toSpan(@Nullable TraceContext parent, TraceContext context) {
     if (context == null) throw new NullPointerException("context == null");
-    if (context.sampled()) {
-      return new RealSpan(context, clock, recorder);
-    }
+    if (context.sampled()) return new RealSpan(context, spanClock(parent, context), recorder);
+    if (tailCapture != null) return capturedSpan(context, false);
     return new NoopSpan(context);
   }
 
+  /** Re-attaches to the unfinished span of this context, or claims a new slot if there isn't one. */
+  CapturedSpan capturedSpan(TraceContext context, boolean localRoot) {
+    long claim = tailCapture.claimOf(context);
+    if (claim == TailCapture.RELEASED) claim = tailCapture.claim(context, localRoot);
+    return new CapturedSpan(context, clock, tailCapture, claim);
+  }
+
+  Clock spanClock(@Nullable TraceContext parent, TraceContext context) {
+    return anchorClock != null ? tickClock(parent, context) : clock;
+  }
+
+  /** Re-uses the clock of the same or parent span, if in-flight, or anchors a new one. */
+  Clock tickClock(@Nullable TraceContext parent, TraceContext context) {
+    Clock result = recorder.clock(context);
+    if (result == null && parent != null) result = recorder.clock(parent);
+    return result != null ? result : TickClock.create(anchorClock);
+  }
+
   /**
    * Creates a new span within an existing trace. If there is no existing trace, use {@link
    * #newTrace()} instead.
+   *
+   * @see #nextSpan()
    */
   public Span newChild(TraceContext parent) {
     if (parent == null) throw new NullPointerException("parent == null");
-    if (Boolean.FALSE.equals(parent.sampled())) {
+    if (Boolean.FALSE.equals(parent.sampled()) && tailCapture == null) {
       return new NoopSpan(parent);
     }
-    return ensureSampled(nextContext(parent, parent));
+    return ensureSampled(parent, nextContext(parent, parent));
+  }
+
+  /**
+   * Returns a new child span if there's a {@link #currentSpan()}, or a new trace if there isn't.
+   * This is {@link #newChild(TraceContext)} defaulting its parent to the span in scope.
+   */
+  public Span nextSpan() {
+    TraceContext parent = currentTraceContext.get();
+    return parent == null ? newTrace() : newChild(parent);
+  }
+
+  /**
+   * Makes the given span the "current span" and returns an object that exits that scope on close.
+   * Calls to {@link #currentSpan()} and {@link #nextSpan()} will affect this span until the return
+   * value is closed.
+   *
+   * <p>The most convenient way to use this method is via the try-with-resources idiom.
+   *
+   * Ex.
+   * <pre>{@code
+   * // Assume a framework interceptor uses this method to set the inbound span as current
+   * try (CurrentTraceContext.Scope ws = tracer.withSpanInScope(span)) {
+   *   return inboundRequest.invoke();
+   * } finally {
+   *   span.finish();
+   * }
+   *
+   * // An unrelated framework interceptor can now lookup the correct parent for outbound requests
+   * Span span = tracer.nextSpan().name("outbound").start(); // parent is implicitly looked up
+   * try (CurrentTraceContext.Scope ws = tracer.withSpanInScope(span)) {
+   *   return outboundRequest.invoke();
+   * } finally {
+   *   span.finish();
+   * }
+   * }</pre>
+   *
+   * <p>Note: While downstream code might affect the span, calling this method, and calling close
+   * on the result have no effect on the input. For example, calling close on the result does not
+   * finish the span. Not only is it safe to call close, you must call close to end the scope, or
+   * risk leaking resources associated with the scope.
+   *
+   * @param span span to place into scope or null to clear the scope
+   */
+  public CurrentTraceContext.Scope withSpanInScope(@Nullable Span span) {
+    return currentTraceContext.newScope(span != null ? span.context() : null);
+  }
+
+  /** Returns the current span in scope or null if there isn't one. */
+  @Nullable public Span currentSpan() {
+    TraceContext currentContext = currentTraceContext.get();
+    return currentContext != null ? toSpan(currentContext) : null;
+  }
+
+  /** Exposed so that instrumentation, such as executor wrappers, can propagate the current span. */
+  public CurrentTraceContext currentTraceContext() {
+    return currentTraceContext;
   }
 
   Span ensureSampled(TraceContext context) {
+    return ensureSampled(null, context);
+  }
+
+  Span ensureSampled(@Nullable TraceContext parent, TraceContext context) {
     // If the sampled flag was left unset, we need to make the decision here
     if (context.sampled() == null) {
       context = context.toBuilder()
@@ -246,7 +565,21 @@ public final class Tracer {
           .shared(false)
           .build();
     }
-    return toSpan(context);
+    if (tailCapture != null && !context.sampled()) {
+      // spans without a parent in this process are local roots, which decide what's reported
+      long claim = tailCapture.claim(context, parent == null);
+      return new CapturedSpan(context, clock, tailCapture, claim);
+    }
+    if (mapFreeSpans && context.sampled()) {
+      return new RealSpan(context, spanClock(parent, context), recorder,
+          recorder.newSpan(context));
+    }
+    return toSpan(parent, context);
+  }
+
+  long nextTraceIdHigh() {
+    if (timePrefixedTraceIds) return Platform.get().nextTraceIdHigh();
+    return traceId128Bit ? Platform.get().randomLong() : 0L;
   }
 
   TraceContext nextContext(@Nullable TraceContext parent, SamplingFlags samplingFlags) {
@@ -257,7 +590,7 @@ public final class Tracer {
     return TraceContext.newBuilder()
         .sampled(samplingFlags.sampled())
         .debug(samplingFlags.debug())
-        .traceIdHigh(traceId128Bit ? Platform.get().randomLong() : 0L)
+        .traceIdHigh(nextTraceIdHigh())
         .traceId(nextId)
         .spanId(nextId).build();
   }
@@ -0,0 +1,69 @@
+package brave;
+
+/**
+ * Instrumented applications report the health of the tracer itself via this interface.
+ *
+ * <p>Implementations must be thread-safe and fast, as they are called on request threads.
+ *
+ * @see InMemoryTracerMetrics
+ */
+public interface TracerMetrics {
+
+  /**
+   * Increments count of spans started, via {@link Span#start()} or {@link Span#start(SpanFields)}.
+   * Creating a span that's never started, or re-attaching to one with {@link Tracer#toSpan}, isn't
+   * counted.
+   */
+  void incrementSpansStarted();
+
+  /** Increments count of spans reported via {@link Span#finish()}. */
+  void incrementSpansFinished();
+
+  /** Increments count of spans reported via {@link Span#flush()}. */
+  void incrementSpansFlushed();
+
+  /**
+   * Increments count of spans that were reported with a "brave.flush" annotation because their
+   * {@link Span#context() context} was garbage collected before they were finished.
+   */
+  void incrementOrphanedSpans();
+
+  /**
+   * Increments count of spans that were reported with a "brave.flush" annotation because they were
+   * in-flight longer than {@link Tracer.Builder#maxInFlightAge the maximum age}.
+   */
+  void incrementExpiredSpans();
+
+  /**
+   * Updates with the time spent reporting a span, which includes encoding it when the tracer
+   * {@linkplain Tracer.Builder#reporter(zipkin.reporter.Encoding, zipkin.reporter.Reporter)
+   * encodes directly}.
+   *
+   * @param nanos elapsed time, as measured by {@link System#nanoTime()}
+   */
+  void recordReportNanos(long nanos);
+
+  TracerMetrics NOOP_METRICS = new TracerMetrics() {
+    @Override public void incrementSpansStarted() {
+    }
+
+    @Override public void incrementSpansFinished() {
+    }
+
+    @Override public void incrementSpansFlushed() {
+    }
+
+    @Override public void incrementOrphanedSpans() {
+    }
+
+    @Override public void incrementExpiredSpans() {
+    }
+
+    @Override public void recordReportNanos(long nanos) {
+    }
+
+    @Override public String toString() {
+      return "NoOpTracerMetrics";
+    }
+  };
+}
@@ -0,0 +1,32 @@
+package brave;
+
+/** Attributes exported by {@link JmxTracerMetrics}. */
+public interface TracerMetricsMBean {
+
+  /** @see InMemoryTracerMetrics#spansStarted() */
+  long getSpansStarted();
+
+  /** @see InMemoryTracerMetrics#spansFinished() */
+  long getSpansFinished();
+
+  /** @see InMemoryTracerMetrics#spansFlushed() */
+  long getSpansFlushed();
+
+  /** @see InMemoryTracerMetrics#orphanedSpans() */
+  long getOrphanedSpans();
+
+  /** @see InMemoryTracerMetrics#expiredSpans() */
+  long getExpiredSpans();
+
+  /** @see InMemoryTracerMetrics#inFlightSpans() */
+  long getInFlightSpans();
+
+  /** @see InMemoryTracerMetrics#reports() */
+  long getReports();
+
+  /** @see InMemoryTracerMetrics#reportNanos() */
+  long getReportNanos();
+
+  /** @see InMemoryTracerMetrics#maxReportNanos() */
+  long getMaxReportNanos();
+}
@@ -1,13 +1,18 @@
 package brave.internal;
 
+import java.util.Arrays;
+
 // code originally imported from zipkin.Util
 public final class HexCodec {
 
   /**
    * Parses a 1 to 32 character lower-hex string with no prefix into an unsigned long, tossing any
    * bits higher than 64.
+   *
+   * <p>This accepts any {@link CharSequence}, so that carriers which hold ASCII bytes, such as
+   * Netty's {@code AsciiString}, needn't allocate a String to be parsed.
    */
-  public static long lowerHexToUnsignedLong(String lowerHex) {
+  public static long lowerHexToUnsignedLong(CharSequence lowerHex) {
     int length = lowerHex.length();
     if (length < 1 || length > 32) throw isntLowerHexLong(lowerHex);
 
@@ -21,23 +26,29 @@ public final class HexCodec {
    * Parses a 16 character lower-hex string with no prefix into an unsigned long, starting at the
    * spe index.
    */
-  public static long lowerHexToUnsignedLong(String lowerHex, int index) {
+  public static long lowerHexToUnsignedLong(CharSequence lowerHex, int index) {
     long result = 0;
+    int invalid = 0; // accumulates the sign bit of any unmapped character, checked once at the end
     for (int endIndex = Math.min(index + 16, lowerHex.length()); index < endIndex; index++) {
       char c = lowerHex.charAt(index);
-      result <<= 4;
-      if (c >= '0' && c <= '9') {
-        result |= c - '0';
-      } else if (c >= 'a' && c <= 'f') {
-        result |= c - 'a' + 10;
-      } else {
-        throw isntLowerHexLong(lowerHex);
-      }
+      int value = c < 128 ? HEX_VALUES[c] : -1;
+      invalid |= value;
+      result = (result << 4) | (value & 0xf);
     }
+    if (invalid < 0) throw isntLowerHexLong(lowerHex);
     return result;
   }
 
-  static NumberFormatException isntLowerHexLong(String lowerHex) {
+  /** Maps an ASCII character to its lower-hex value, or -1 if it isn't a lower-hex digit. */
+  static final byte[] HEX_VALUES = new byte[128];
+
+  static {
+    Arrays.fill(HEX_VALUES, (byte) -1);
+    for (char c = '0'; c <= '9'; c++) HEX_VALUES[c] = (byte) (c - '0');
+    for (char c = 'a'; c <= 'f'; c++) HEX_VALUES[c] = (byte) (c - 'a' + 10);
+  }
+
+  static NumberFormatException isntLowerHexLong(CharSequence lowerHex) {
     throw new NumberFormatException(
         lowerHex + " should be a 1 to 32 character lower-hex string with no prefix");
   }
@@ -15,5 +15,9 @@ public abstract class Internal {
   // Used by Brave 3 apis
   public abstract @Nullable Long timestamp(Tracer tracer, TraceContext context);
 
+  // Used by Brave 3 apis
+  public abstract boolean annotateIfInFlight(Tracer tracer, TraceContext context, long timestamp,
+      String value);
+
   public static Internal instance;
 }
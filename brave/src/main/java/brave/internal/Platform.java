@@ -108,6 +108,16 @@ public abstract class Platform implements Clock, Reporter<zipkin.Span> {
    */
   public abstract long randomLong();
 
+  /**
+   * Returns the high 64 bits of a time-prefixed trace ID: epoch seconds in the upper 32 bits and
+   * random bits in the lower 32. This allows storage to partition or expire traces by time, without
+   * a secondary index.
+   */
+  public long nextTraceIdHigh() {
+    long epochSeconds = System.currentTimeMillis() / 1000;
+    return (epochSeconds & 0xffffffffL) << 32 | (randomLong() & 0xffffffffL);
+  }
+
   /** gets a timestamp based on duration since the create tick. */
   @Override
   public long currentTimeMicroseconds() {
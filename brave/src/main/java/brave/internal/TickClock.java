@@ -0,0 +1,45 @@
+package brave.internal;
+
+import brave.Clock;
+
+/**
+ * Derives timestamps from {@link System#nanoTime()} ticks, relative to a single wall clock reading.
+ *
+ * <p>Spans in the same local trace share an instance. This keeps their timestamps consistent with
+ * each other, and means only the local root span pays for reading the wall clock. As a new instance
+ * is created for each local root, timestamps re-sync with wall time, for example after NTP
+ * adjusts it, instead of drifting for as long as the process is up.
+ */
+public final class TickClock implements Clock {
+  /** Reads the wall clock, as opposed to {@link Platform}, which only reads it once. */
+  public static final Clock WALL_CLOCK = new Clock() {
+    @Override public long currentTimeMicroseconds() {
+      return System.currentTimeMillis() * 1000;
+    }
+
+    @Override public String toString() {
+      return "WallClock";
+    }
+  };
+
+  /** Anchors a new instance to the current time of the given clock. */
+  public static TickClock create(Clock anchor) {
+    return new TickClock(anchor.currentTimeMicroseconds(), System.nanoTime());
+  }
+
+  final long baseEpochMicros;
+  final long baseTickNanos;
+
+  TickClock(long baseEpochMicros, long baseTickNanos) {
+    this.baseEpochMicros = baseEpochMicros;
+    this.baseTickNanos = baseTickNanos;
+  }
+
+  @Override public long currentTimeMicroseconds() {
+    return ((System.nanoTime() - baseTickNanos) / 1000) + baseEpochMicros;
+  }
+
+  @Override public String toString() {
+    return "TickClock{baseEpochMicros=" + baseEpochMicros + ", baseTickNanos=" + baseTickNanos + "}";
+  }
+}
@@ -0,0 +1,172 @@
+package brave.internal.recorder;
+
+import java.util.Arrays;
+
+/**
+ * Growable byte array used to encode spans. Instances are re-used per thread, so the only
+ * allocation per span is the final copy made by {@link #toByteArray()}.
+ *
+ * <p>Originally derived from {@code zipkin.internal.Buffer}
+ */
+final class Buffer {
+  static final byte[] HEX_DIGITS =
+      {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+  byte[] buf;
+  int pos;
+
+  Buffer(int initialCapacity) {
+    buf = new byte[initialCapacity];
+  }
+
+  Buffer reset() {
+    pos = 0;
+    return this;
+  }
+
+  byte[] toByteArray() {
+    return Arrays.copyOf(buf, pos);
+  }
+
+  void ensureCapacity(int count) {
+    if (pos + count <= buf.length) return;
+    buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + count));
+  }
+
+  Buffer writeByte(int v) {
+    ensureCapacity(1);
+    buf[pos++] = (byte) v;
+    return this;
+  }
+
+  Buffer write(byte[] v) {
+    ensureCapacity(v.length);
+    System.arraycopy(v, 0, buf, pos, v.length);
+    pos += v.length;
+    return this;
+  }
+
+  /** Writes the string as-is, which is only valid when it is known to be ASCII */
+  Buffer writeAscii(String v) {
+    int length = v.length();
+    ensureCapacity(length);
+    for (int i = 0; i < length; i++) {
+      buf[pos++] = (byte) v.charAt(i);
+    }
+    return this;
+  }
+
+  /**
+   * Returns the count of bytes needed to write the string as UTF-8. This over-estimates malformed
+   * surrogates, which are written as a single '?'.
+   */
+  static int utf8SizeInBytes(String v, int beginIndex, int endIndex) {
+    int result = 0;
+    for (int i = beginIndex, length = endIndex; i < length; i++) {
+      char c = v.charAt(i);
+      if (c < 0x80) {
+        result++;
+      } else if (c < 0x800) {
+        result += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(v.charAt(i + 1))) {
+        result += 4;
+        i++;
+      } else {
+        result += 3;
+      }
+    }
+    return result;
+  }
+
+  /** Writes the string as UTF-8, replacing malformed surrogates with '?' */
+  Buffer writeUtf8(String v) {
+    return writeUtf8(v, 0, v.length());
+  }
+
+  /** Like {@link #writeUtf8(String)}, except only the characters in the given range */
+  Buffer writeUtf8(String v, int beginIndex, int endIndex) {
+    ensureCapacity(utf8SizeInBytes(v, beginIndex, endIndex));
+    for (int i = beginIndex, length = endIndex; i < length; i++) {
+      char c = v.charAt(i);
+      if (c < 0x80) {
+        buf[pos++] = (byte) c;
+      } else if (c < 0x800) {
+        buf[pos++] = (byte) (0xc0 | (c >> 6));
+        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+      } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+        if (Character.isHighSurrogate(c) && i + 1 < length
+            && Character.isLowSurrogate(v.charAt(i + 1))) {
+          int codePoint = Character.toCodePoint(c, v.charAt(++i));
+          buf[pos++] = (byte) (0xf0 | (codePoint >> 18));
+          buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+          buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+          buf[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+        } else {
+          buf[pos++] = '?';
+        }
+      } else {
+        buf[pos++] = (byte) (0xe0 | (c >> 12));
+        buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buf[pos++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    return this;
+  }
+
+  /** Writes the decimal representation of the value */
+  Buffer writeDecimal(long v) {
+    if (v == Long.MIN_VALUE) return writeAscii(Long.toString(v));
+    ensureCapacity(20);
+    if (v < 0) {
+      buf[pos++] = '-';
+      v = -v;
+    }
+    int digits = 1;
+    for (long i = v; i >= 10; i /= 10) digits++;
+    for (int i = pos + digits - 1; i >= pos; i--) {
+      buf[i] = (byte) ('0' + (v % 10));
+      v /= 10;
+    }
+    pos += digits;
+    return this;
+  }
+
+  /** Writes 16 lower-hex characters */
+  Buffer writeLowerHex(long v) {
+    ensureCapacity(16);
+    for (int shift = 60; shift >= 0; shift -= 4) {
+      buf[pos++] = HEX_DIGITS[(int) ((v >>> shift) & 0xf)];
+    }
+    return this;
+  }
+
+  Buffer writeShort(int v) {
+    ensureCapacity(2);
+    buf[pos++] = (byte) ((v >>> 8L) & 0xff);
+    buf[pos++] = (byte) (v & 0xff);
+    return this;
+  }
+
+  Buffer writeInt(int v) {
+    ensureCapacity(4);
+    buf[pos++] = (byte) ((v >>> 24L) & 0xff);
+    buf[pos++] = (byte) ((v >>> 16L) & 0xff);
+    buf[pos++] = (byte) ((v >>> 8L) & 0xff);
+    buf[pos++] = (byte) (v & 0xff);
+    return this;
+  }
+
+  Buffer writeLong(long v) {
+    ensureCapacity(8);
+    buf[pos++] = (byte) ((v >>> 56L) & 0xff);
+    buf[pos++] = (byte) ((v >>> 48L) & 0xff);
+    buf[pos++] = (byte) ((v >>> 40L) & 0xff);
+    buf[pos++] = (byte) ((v >>> 32L) & 0xff);
+    buf[pos++] = (byte) ((v >>> 24L) & 0xff);
+    buf[pos++] = (byte) ((v >>> 16L) & 0xff);
+    buf[pos++] = (byte) ((v >>> 8L) & 0xff);
+    buf[pos++] = (byte) (v & 0xff);
+    return this;
+  }
+}
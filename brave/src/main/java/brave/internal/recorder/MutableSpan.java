@@ -1,8 +1,11 @@
 package brave.internal.recorder;
 
+import brave.Clock;
 import brave.Span;
+import brave.SpanFields;
 import brave.internal.Nullable;
 import brave.propagation.TraceContext;
+import java.util.Arrays;
 import zipkin.Annotation;
 import zipkin.BinaryAnnotation;
 import zipkin.Constants;
@@ -10,10 +13,35 @@ import zipkin.Endpoint;
 
 import static zipkin.Constants.LOCAL_COMPONENT;
 
-final class MutableSpan {
+/**
+ * Holds the state of a span as primitive fields and arrays, so that it can be converted to a
+ * {@link zipkin.Span} or {@linkplain SpanBytesEncoder encoded directly} once finished.
+ *
+ * <p>This type is public only so that span handles can retain it. All access is via {@link
+ * Recorder}.
+ */
+public final class MutableSpan {
   final Endpoint localEndpoint;
-  final zipkin.Span.Builder span;
+  // identifiers, which are constant unless reset
+  long traceIdHigh, traceId, id;
+  Long parentId;
+  boolean debug;
   boolean shared;
+
+  String name;
+  // zero means absent
+  long timestamp, duration;
+
+  // annotations and tags are stored in parallel arrays, retained when reset
+  int annotationCount;
+  long[] annotationTimestamps = new long[4];
+  String[] annotationValues = new String[4];
+  int tagCount;
+  String[] tagKeys = new String[4];
+  String[] tagValues = new String[4];
+  /** Set on finish when there is a remote endpoint and a kind to type it with. */
+  String remoteEndpointType;
+
   // fields which are added late
   long startTimestamp;
   Endpoint remoteEndpoint;
@@ -30,43 +58,214 @@ final class MutableSpan {
 
   boolean finished;
 
-  // Since this is not exposed, this class could be refactored later as needed to act in a pool
-  // to reduce GC churn. This would involve calling span.clear and resetting the fields below.
+  /** When using a trace-anchored clock, the clock shared with child spans. */
+  @Nullable volatile Clock clock;
+
+  /** Present when recording lock-free, in which case mutations are appended here. */
+  @Nullable SpanEventLog events;
+
+  /** System.nanoTime when added to the span map, only set when in-flight age is limited. */
+  long createTick;
+
+  // Since this is not exposed, this class can act in a pool to reduce GC churn. See
+  // MutableSpanPool, which calls reset instead of allocating a new instance.
   MutableSpan(TraceContext context, Endpoint localEndpoint) {
     this.localEndpoint = localEndpoint;
-    this.span = zipkin.Span.builder()
-        .traceIdHigh(context.traceIdHigh())
-        .traceId(context.traceId())
-        .parentId(context.parentId())
-        .id(context.spanId())
-        .debug(context.debug())
-        .name(""); // avoid a NPE
+    reset(context);
+  }
+
+  /**
+   * Clears all state and re-assigns the identifiers of this span. This retains the annotation and
+   * tag arrays, so a recycled span doesn't need to re-allocate them.
+   */
+  synchronized MutableSpan reset(TraceContext context) {
+    traceIdHigh = context.traceIdHigh();
+    traceId = context.traceId();
+    parentId = context.parentId();
+    id = context.spanId();
+    debug = context.debug();
     shared = context.shared();
+    name = ""; // avoid a NPE
+    timestamp = duration = 0;
+    for (int i = 0; i < annotationCount; i++) annotationValues[i] = null;
+    annotationCount = 0;
+    for (int i = 0; i < tagCount; i++) tagKeys[i] = tagValues[i] = null;
+    tagCount = 0;
+    remoteEndpointType = null;
     startTimestamp = 0;
     remoteEndpoint = null;
     kind = null;
+    flags = 0;
     finished = false;
+    createTick = 0L;
+    clock = null;
+    if (events != null) events.reset();
+    return this;
+  }
+
+  /**
+   * True if this records the span of the context, as opposed to another span which re-used this
+   * instance after it was recycled.
+   */
+  boolean isFor(TraceContext context) {
+    return id == context.spanId() && traceId == context.traceId()
+        && traceIdHigh == context.traceIdHigh();
+  }
+
+  /**
+   * True if a mutation from a handle of the context should be dropped: the span was finished, or
+   * this instance now records a different span. Call this while holding the lock.
+   */
+  boolean isStale(@Nullable TraceContext owner) {
+    return owner != null && (finished || !isFor(owner));
+  }
+
+  MutableSpan start(long timestamp) {
+    return start(null, timestamp);
+  }
+
+  /**
+   * Like {@link #start(long)}, except dropped if {@linkplain #isStale(TraceContext) stale}. The
+   * other mutators with an owner parameter behave the same way.
+   *
+   * @param owner the context of the handle making the mutation, or null to skip the check.
+   */
+  MutableSpan start(@Nullable TraceContext owner, long timestamp) {
+    if (events != null) {
+      events.append(owner, SpanEventLog.START, timestamp, null, null);
+      return this;
+    }
+    synchronized (this) {
+      if (!isStale(owner)) startTimestamp = timestamp;
+    }
+    return this;
+  }
+
+  MutableSpan name(String name) {
+    return name(null, name);
+  }
+
+  MutableSpan name(@Nullable TraceContext owner, String name) {
+    if (events != null) {
+      events.append(owner, SpanEventLog.NAME, 0L, null, name);
+      return this;
+    }
+    synchronized (this) {
+      if (!isStale(owner)) this.name = name;
+    }
+    return this;
+  }
+
+  MutableSpan kind(Span.Kind kind) {
+    return kind(null, kind);
+  }
+
+  MutableSpan kind(@Nullable TraceContext owner, Span.Kind kind) {
+    if (events != null) {
+      events.append(owner, SpanEventLog.KIND, 0L, null, kind);
+      return this;
+    }
+    synchronized (this) {
+      if (!isStale(owner)) this.kind = kind;
+    }
+    return this;
+  }
+
+  MutableSpan annotate(long timestamp, String value) {
+    return annotate(null, timestamp, value);
   }
 
-  synchronized MutableSpan start(long timestamp) {
-    startTimestamp = timestamp;
+  MutableSpan annotate(@Nullable TraceContext owner, long timestamp, String value) {
+    if (events != null) {
+      events.append(owner, SpanEventLog.ANNOTATE, timestamp, null, value);
+      return this;
+    }
+    synchronized (this) {
+      if (!isStale(owner)) recordAnnotation(timestamp, value);
+    }
+    return this;
+  }
+
+  /**
+   * Like {@link #annotate(TraceContext, long, String)}, except returns false if the annotation was
+   * dropped because the span already finished.
+   */
+  boolean annotateIfInFlight(TraceContext owner, long timestamp, String value) {
+    if (events != null) return events.append(owner, SpanEventLog.ANNOTATE, timestamp, null, value);
+    synchronized (this) {
+      if (isStale(owner)) return false;
+      recordAnnotation(timestamp, value);
+    }
+    return true;
+  }
+
+  MutableSpan tag(String key, String value) {
+    return tag(null, key, value);
+  }
+
+  MutableSpan tag(@Nullable TraceContext owner, String key, String value) {
+    if (events != null) {
+      events.append(owner, SpanEventLog.TAG, 0L, key, value);
+      return this;
+    }
+    synchronized (this) {
+      if (!isStale(owner)) recordTag(key, value);
+    }
     return this;
   }
 
-  synchronized MutableSpan name(String name) {
-    span.name(name);
+  MutableSpan remoteEndpoint(Endpoint remoteEndpoint) {
+    return remoteEndpoint(null, remoteEndpoint);
+  }
+
+  MutableSpan remoteEndpoint(@Nullable TraceContext owner, Endpoint remoteEndpoint) {
+    if (events != null) {
+      events.append(owner, SpanEventLog.REMOTE_ENDPOINT, 0L, null, remoteEndpoint);
+      return this;
+    }
+    synchronized (this) {
+      if (!isStale(owner)) this.remoteEndpoint = remoteEndpoint;
+    }
     return this;
   }
 
-  synchronized MutableSpan kind(Span.Kind kind) {
-    this.kind = kind;
+  /** Applies the fields and, if the timestamp is non-zero, starts the span. */
+  MutableSpan customize(@Nullable TraceContext owner, SpanFields fields, long startTimestamp) {
+    if (events != null) { // one event for all fields, copied as the caller may re-use them
+      events.append(owner, SpanEventLog.CUSTOMIZE, startTimestamp, null, copyOf(fields));
+      return this;
+    }
+    synchronized (this) {
+      if (!isStale(owner)) applyFields(fields, startTimestamp);
+    }
     return this;
   }
 
-  synchronized MutableSpan annotate(long timestamp, String value) {
-    span.addAnnotation(Annotation.create(timestamp, value, localEndpoint));
+  void applyFields(SpanFields fields, long startTimestamp) {
+    if (fields.name() != null) name = fields.name();
+    if (fields.kind() != null) kind = fields.kind();
+    if (fields.remoteEndpoint() != null) remoteEndpoint = fields.remoteEndpoint();
+    for (int i = 0, length = fields.tagCount(); i < length; i++) {
+      recordTag(fields.tagKey(i), fields.tagValue(i));
+    }
+    if (startTimestamp != 0L) this.startTimestamp = startTimestamp;
+  }
+
+  static SpanFields copyOf(SpanFields fields) {
+    SpanFields result = new SpanFields();
+    if (fields.name() != null) result.name(fields.name());
+    if (fields.kind() != null) result.kind(fields.kind());
+    if (fields.remoteEndpoint() != null) result.remoteEndpoint(fields.remoteEndpoint());
+    for (int i = 0, length = fields.tagCount(); i < length; i++) {
+      result.tag(fields.tagKey(i), fields.tagValue(i));
+    }
+    return result;
+  }
+
+  void recordAnnotation(long timestamp, String value) {
+    addAnnotation(timestamp, value);
     flags |= FLAG_LOCAL_ENDPOINT;
-    if (value.length() != 2) return this;
+    if (value.length() != 2) return;
     if (value.equals(Constants.CLIENT_SEND)) {
       flags |= FLAG_CS;
       kind = Span.Kind.CLIENT;
@@ -80,29 +279,33 @@ final class MutableSpan {
       flags |= FLAG_CR;
       kind = Span.Kind.CLIENT;
     }
-    return this;
   }
 
-  synchronized MutableSpan tag(String key, String value) {
-    span.addBinaryAnnotation(BinaryAnnotation.create(key, value, localEndpoint));
+  void recordTag(String key, String value) {
+    addTag(key, value);
     flags |= FLAG_LOCAL_ENDPOINT;
-    return this;
   }
 
-  synchronized MutableSpan remoteEndpoint(Endpoint remoteEndpoint) {
-    this.remoteEndpoint = remoteEndpoint;
-    return this;
+  /**
+   * Applies any {@link #events} and stops accepting new ones. Until this is called, fields of a
+   * lock-free span are stale. This is a no-op when the span is not lock-free.
+   */
+  void drainEvents() {
+    if (events != null) events.drainTo(this);
   }
 
-  /** Completes and reports the span */
-  synchronized MutableSpan finish(@Nullable Long finishTimestamp) {
+  /**
+   * Completes the span. Callers must either hold the lock on this span or have {@linkplain
+   * #drainEvents() drained} its events.
+   */
+  MutableSpan finish(@Nullable Long finishTimestamp) {
     if (finished) return this;
     finished = true;
 
     if (startTimestamp != 0) {
-      span.timestamp(startTimestamp);
+      timestamp = startTimestamp;
       if (finishTimestamp != null) {
-        span.duration(Math.max(finishTimestamp - startTimestamp, 1));
+        duration = Math.max(finishTimestamp - startTimestamp, 1);
       }
     }
     if (kind != null) {
@@ -124,34 +327,73 @@ final class MutableSpan {
           throw new AssertionError("update kind mapping");
       }
       if (remoteEndpoint != null) {
-        span.addBinaryAnnotation(BinaryAnnotation.address(remoteEndpointType, remoteEndpoint));
+        this.remoteEndpointType = remoteEndpointType;
       }
       if (startAnnotation != null && startTimestamp != 0) {
         if (startAnnotation.equals(Constants.SERVER_RECV)) flags |= FLAG_SR;
         if (startAnnotation.equals(Constants.CLIENT_SEND)) flags |= FLAG_CS;
-        span.addAnnotation(Annotation.create(startTimestamp, startAnnotation, localEndpoint));
+        addAnnotation(startTimestamp, startAnnotation);
       }
       if (finishAnnotation != null && finishTimestamp != null) {
-        span.addAnnotation(Annotation.create(finishTimestamp, finishAnnotation, localEndpoint));
+        addAnnotation(finishTimestamp, finishAnnotation);
       }
       flags |= FLAG_LOCAL_ENDPOINT;
     }
     // don't report server-side timestamp on shared or incomplete spans
     if (shared && (flags & FLAG_SR) != 0) {
-      span.timestamp(null).duration(null);
+      timestamp = duration = 0;
     }
     // don't report client span.timestamp if unfinished.
     // This allows one-way to be modeled as span.kind(serverOrClient).start().flush()
     if ((flags & (FLAG_CS | FLAG_SR)) != 0 && finishTimestamp == null) {
-      span.timestamp(null);
+      timestamp = 0;
     }
     if ((flags & FLAG_LOCAL_ENDPOINT) == 0) { // create a small dummy annotation
-      span.addBinaryAnnotation(BinaryAnnotation.create(LOCAL_COMPONENT, "", localEndpoint));
+      addTag(LOCAL_COMPONENT, "");
     }
     return this;
   }
 
   synchronized zipkin.Span toSpan() {
-    return span.build();
+    zipkin.Span.Builder result = zipkin.Span.builder()
+        .traceIdHigh(traceIdHigh)
+        .traceId(traceId)
+        .parentId(parentId)
+        .id(id)
+        .debug(debug)
+        .name(name)
+        .timestamp(timestamp != 0 ? timestamp : null)
+        .duration(duration != 0 ? duration : null);
+    for (int i = 0; i < annotationCount; i++) {
+      result.addAnnotation(
+          Annotation.create(annotationTimestamps[i], annotationValues[i], localEndpoint));
+    }
+    for (int i = 0; i < tagCount; i++) {
+      result.addBinaryAnnotation(BinaryAnnotation.create(tagKeys[i], tagValues[i], localEndpoint));
+    }
+    if (remoteEndpointType != null) {
+      result.addBinaryAnnotation(BinaryAnnotation.address(remoteEndpointType, remoteEndpoint));
+    }
+    return result.build();
+  }
+
+  void addAnnotation(long timestamp, String value) {
+    if (annotationCount == annotationValues.length) {
+      int newLength = annotationCount * 2;
+      annotationTimestamps = Arrays.copyOf(annotationTimestamps, newLength);
+      annotationValues = Arrays.copyOf(annotationValues, newLength);
+    }
+    annotationTimestamps[annotationCount] = timestamp;
+    annotationValues[annotationCount++] = value;
+  }
+
+  void addTag(String key, String value) {
+    if (tagCount == tagKeys.length) {
+      int newLength = tagCount * 2;
+      tagKeys = Arrays.copyOf(tagKeys, newLength);
+      tagValues = Arrays.copyOf(tagValues, newLength);
+    }
+    tagKeys[tagCount] = key;
+    tagValues[tagCount++] = value;
   }
 }
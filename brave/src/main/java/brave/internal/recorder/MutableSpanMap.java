@@ -1,11 +1,13 @@
 package brave.internal.recorder;
 
 import brave.Clock;
+import brave.TracerMetrics;
 import brave.internal.Nullable;
 import brave.propagation.TraceContext;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
@@ -18,8 +20,13 @@ import zipkin.reporter.Reporter;
  * This means there's no bookkeeping thread required in order to flush orphaned spans.
  *
  * <p>Spans are weakly referenced by their owning context. When the keys are collected, they are
- * transferred to a queue, waiting to be reported. A call to modify any span will implicitly flush
- * orphans to Zipkin. Spans in this state will have a "brave.flush" annotation added to them.
+ * transferred to a queue, waiting to be reported. Every {@link #drainInterval} operations on this
+ * map implicitly flush orphans to Zipkin. Spans in this state will have a "brave.flush" annotation
+ * added to them. Amortizing this keeps request threads from paying for a queue poll, or reporting
+ * unrelated spans, on every operation.
+ *
+ * <p>Optionally, spans in-flight longer than a maximum age are flushed the same way. This defends
+ * against libraries that leak spans while still holding a reference to their context.
  *
  * <p>The internal implementation is derived from WeakConcurrentMap by Rafael Winterhalter. See
  * https://github.com/raphw/weak-lock-free/blob/master/src/main/java/com/blogspot/mydailyjava/weaklockfree/WeakConcurrentMap.java
@@ -31,17 +38,50 @@ final class MutableSpanMap extends ReferenceQueue<TraceContext> {
   final ConcurrentMap<Object, MutableSpan> delegate = new ConcurrentHashMap<>(64);
   final Endpoint localEndpoint;
   final Clock clock;
-  final Reporter<zipkin.Span> reporter;
+  final SpanReporter reporter;
+  @Nullable final MutableSpanPool pool;
+  final TracerMetrics metrics;
+  final int drainInterval;
+  final long maxInFlightAgeNanos;
+  /** When true, new spans record mutations to a {@link SpanEventLog} instead of locking. */
+  final boolean lockFree;
+
+  // racy by design: these only amortize work, so lost updates are harmless
+  int operationCount;
+  long lastExpirationTick;
 
   MutableSpanMap(Endpoint localEndpoint, Clock clock, Reporter<zipkin.Span> reporter) {
+    this(localEndpoint, clock, SpanReporter.create(reporter), null, TracerMetrics.NOOP_METRICS,
+        DEFAULT_DRAIN_INTERVAL, 0L, false);
+  }
+
+  /**
+   * @param pool when present, spans are acquired from this instead of allocated.
+   * @param drainInterval count of operations between checks for orphaned or expired spans.
+   * @param maxInFlightAgeNanos when positive, spans older than this are flushed.
+   * @param lockFree when true, new spans record mutations to a {@link SpanEventLog}.
+   */
+  MutableSpanMap(Endpoint localEndpoint, Clock clock, SpanReporter reporter,
+      @Nullable MutableSpanPool pool, TracerMetrics metrics, int drainInterval,
+      long maxInFlightAgeNanos, boolean lockFree) {
+    if (drainInterval < 1) throw new IllegalArgumentException("drainInterval < 1");
+    if (maxInFlightAgeNanos < 0) throw new IllegalArgumentException("maxInFlightAgeNanos < 0");
     this.localEndpoint = localEndpoint;
     this.clock = clock;
     this.reporter = reporter;
+    this.pool = pool;
+    this.metrics = metrics;
+    this.drainInterval = drainInterval;
+    this.maxInFlightAgeNanos = maxInFlightAgeNanos;
+    this.lockFree = lockFree;
+    this.lastExpirationTick = System.nanoTime();
   }
 
+  static final int DEFAULT_DRAIN_INTERVAL = 64;
+
   @Nullable MutableSpan get(TraceContext context) {
     if (context == null) throw new NullPointerException("context == null");
-    reportOrphanedSpans();
+    maybeDrain();
     return delegate.get(new LookupKey(context));
   }
 
@@ -49,34 +89,96 @@ final class MutableSpanMap extends ReferenceQueue<TraceContext> {
     MutableSpan result = get(context);
     if (result != null) return result;
 
-    MutableSpan newSpan = new MutableSpan(context, localEndpoint);
+    MutableSpan newSpan = newSpan(context);
+    if (maxInFlightAgeNanos != 0L) newSpan.createTick = System.nanoTime();
     MutableSpan previousSpan = delegate.putIfAbsent(new RealKey(context, this), newSpan);
-    if (previousSpan != null) return previousSpan; // lost race
+    if (previousSpan != null) { // lost race
+      recycle(newSpan);
+      return previousSpan;
+    }
     return newSpan;
   }
 
+  /** Returns new state for the context, without adding it to this map. */
+  MutableSpan newSpan(TraceContext context) {
+    MutableSpan result = pool != null
+        ? pool.acquire(context)
+        : new MutableSpan(context, localEndpoint);
+    if (lockFree && result.events == null) result.events = new SpanEventLog();
+    return result;
+  }
+
+  /** Returns a span to the pool, if recycling is enabled. Call this only after it was reported. */
+  void recycle(MutableSpan span) {
+    if (pool != null) pool.release(span);
+  }
+
   @Nullable MutableSpan remove(TraceContext context) {
     if (context == null) throw new NullPointerException("context == null");
     MutableSpan result = delegate.remove(new LookupKey(context));
-    reportOrphanedSpans(); // also clears the reference relating to the recent remove
+    maybeDrain();
     return result;
   }
 
+  /** Every {@link #drainInterval} operations, reports orphaned spans and expires old ones. */
+  void maybeDrain() {
+    if (++operationCount % drainInterval != 0) return;
+    reportOrphanedSpans();
+    if (maxInFlightAgeNanos == 0L) return;
+    // check at most twice per max age, as this iterates all in-flight spans
+    long tick = System.nanoTime();
+    if (tick - lastExpirationTick < maxInFlightAgeNanos / 2) return;
+    lastExpirationTick = tick;
+    expireSpans(tick);
+  }
+
   /** Reports spans orphaned by garbage collection. */
   void reportOrphanedSpans() {
     Reference<? extends TraceContext> reference;
     while ((reference = poll()) != null) {
-      TraceContext context = reference.get();
       MutableSpan value = delegate.remove(reference);
       if (value == null) continue;
-      try {
-        value.annotate(clock.currentTimeMicroseconds(), "brave.flush");
-        reporter.report(value.toSpan());
-      } catch (RuntimeException e) {
-        // don't crash the caller if there was a problem reporting an unrelated span.
-        if (context != null && logger.isLoggable(Level.FINE)) {
-          logger.log(Level.FINE, "error flushing " + context, e);
-        }
+      metrics.incrementOrphanedSpans();
+      flush(value, reference.get());
+    }
+  }
+
+  /** Reports spans which were in-flight longer than {@link #maxInFlightAgeNanos}. */
+  void expireSpans(long tick) {
+    for (Map.Entry<Object, MutableSpan> entry : delegate.entrySet()) {
+      MutableSpan value = entry.getValue();
+      if (tick - value.createTick < maxInFlightAgeNanos) continue;
+      if (!delegate.remove(entry.getKey(), value)) continue; // finished concurrently
+      metrics.incrementExpiredSpans();
+      flush(value, ((RealKey) entry.getKey()).get());
+    }
+  }
+
+  /**
+   * Reports the span with a "brave.flush" annotation and marks it finished. Span handles can still
+   * hold this state, so marking it finished ensures their mutations are dropped, instead of being
+   * applied to an object that will never be reported. Finishing such a handle logs that the span
+   * isn't in flight.
+   */
+  void flush(MutableSpan value, @Nullable TraceContext context) {
+    try {
+      long timestamp = clock.currentTimeMicroseconds();
+      if (value.events != null) { // draining drops later events, so there's no need to lock
+        value.drainEvents();
+        value.finished = true;
+        value.recordAnnotation(timestamp, "brave.flush");
+        reporter.report(value);
+        return;
+      }
+      synchronized (value) {
+        value.finished = true; // handles retaining this state drop later mutations
+        value.recordAnnotation(timestamp, "brave.flush");
+        reporter.report(value);
+      }
+    } catch (RuntimeException e) {
+      // don't crash the caller if there was a problem reporting an unrelated span.
+      if (context != null && logger.isLoggable(Level.FINE)) {
+        logger.log(Level.FINE, "error flushing " + context, e);
       }
     }
   }
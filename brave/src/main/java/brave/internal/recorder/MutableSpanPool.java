@@ -0,0 +1,71 @@
+package brave.internal.recorder;
+
+import brave.propagation.TraceContext;
+import zipkin.Endpoint;
+
+/**
+ * Bounded, per-thread pool of spans which were already reported. Recycling a span retains its
+ * annotation and tag arrays, which otherwise die young.
+ *
+ * <p>Pools are per-thread, so no synchronization is needed to acquire or release a span. A span
+ * finished on a different thread than it was created on is released to the finishing thread's
+ * pool. When a pool is full, released spans are left to the garbage collector.
+ *
+ * <p>Handles may retain a span after it was released. Their mutations carry the handle's context,
+ * so that {@link MutableSpan} drops them instead of affecting an unrelated span which re-used the
+ * same instance.
+ */
+final class MutableSpanPool {
+  static final int DEFAULT_MAX_SIZE = 16;
+
+  final Endpoint localEndpoint;
+  final int maxSize;
+  final ThreadLocal<Stack> stacks = new ThreadLocal<Stack>() {
+    @Override protected Stack initialValue() {
+      return new Stack(maxSize);
+    }
+  };
+
+  MutableSpanPool(Endpoint localEndpoint, int maxSize) {
+    if (maxSize < 1) throw new IllegalArgumentException("maxSize < 1");
+    this.localEndpoint = localEndpoint;
+    this.maxSize = maxSize;
+  }
+
+  /** Returns a recycled span, reset to the given context, or a new one if the pool is empty. */
+  MutableSpan acquire(TraceContext context) {
+    MutableSpan result = stacks.get().pop();
+    if (result == null) return new MutableSpan(context, localEndpoint);
+    return result.reset(context);
+  }
+
+  /** Returns a span to the pool. Call this only after the span was reported. */
+  void release(MutableSpan span) {
+    stacks.get().push(span);
+  }
+
+  static final class Stack {
+    final MutableSpan[] elements;
+    int size;
+
+    Stack(int maxSize) {
+      elements = new MutableSpan[maxSize];
+    }
+
+    MutableSpan pop() {
+      if (size == 0) return null;
+      MutableSpan result = elements[--size];
+      elements[size] = null;
+      return result;
+    }
+
+    void push(MutableSpan span) {
+      if (size == elements.length) return; // drop on overflow
+      elements[size++] = span;
+    }
+  }
+
+  @Override public String toString() {
+    return "MutableSpanPool(" + maxSize + ")";
+  }
+}
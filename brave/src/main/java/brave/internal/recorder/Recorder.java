@@ -2,20 +2,173 @@ package brave.internal.recorder;
 
 import brave.Clock;
 import brave.Span;
+import brave.SpanFields;
+import brave.TracerMetrics;
 import brave.internal.Nullable;
 import brave.propagation.TraceContext;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import zipkin.Endpoint;
+import zipkin.reporter.Encoding;
 import zipkin.reporter.Reporter;
 
 /** Dispatches mutations on a span to a shared object per trace/span id. */
 public final class Recorder {
+  static final Logger logger = Logger.getLogger(Recorder.class.getName());
 
   final MutableSpanMap spanMap;
-  final Reporter<zipkin.Span> reporter;
+  final SpanReporter reporter;
+  final TracerMetrics metrics;
+  @Nullable final TailCapture tailCapture;
 
   public Recorder(Endpoint localEndpoint, Clock clock, Reporter<zipkin.Span> reporter) {
-    this.spanMap = new MutableSpanMap(localEndpoint, clock, reporter);
-    this.reporter = reporter;
+    this(localEndpoint, clock, reporter, false);
+  }
+
+  /**
+   * @param recycleSpans when true, spans are returned to a bounded per-thread pool after they are
+   * reported. Late mutations from handles of a finished span are dropped.
+   */
+  public Recorder(Endpoint localEndpoint, Clock clock, Reporter<zipkin.Span> reporter,
+      boolean recycleSpans) {
+    this(newBuilder(localEndpoint, clock).reporter(reporter).recycleSpans(recycleSpans));
+  }
+
+  /**
+   * Like {@link #Recorder(Endpoint, Clock, Reporter, boolean)}, except spans are encoded directly
+   * from recorded state, without creating intermediate {@link zipkin.Span} objects.
+   *
+   * @param encoding the encoding of the bytes passed to the reporter
+   */
+  public Recorder(Endpoint localEndpoint, Clock clock, Encoding encoding,
+      Reporter<byte[]> reporter, boolean recycleSpans) {
+    this(newBuilder(localEndpoint, clock).reporter(encoding, reporter).recycleSpans(recycleSpans));
+  }
+
+  Recorder(Builder builder) {
+    MutableSpanPool pool = builder.recycleSpans
+        ? new MutableSpanPool(builder.localEndpoint, MutableSpanPool.DEFAULT_MAX_SIZE)
+        : null;
+    // avoid reading the clock twice per span unless someone is listening
+    this.reporter = builder.metrics != TracerMetrics.NOOP_METRICS
+        ? SpanReporter.timed(builder.reporter, builder.metrics)
+        : builder.reporter;
+    this.metrics = builder.metrics;
+    this.spanMap = new MutableSpanMap(builder.localEndpoint, builder.clock, reporter, pool,
+        builder.metrics, builder.drainInterval, builder.maxInFlightAgeNanos,
+        builder.lockFree);
+    this.tailCapture = builder.tailCaptureSpans > 0
+        ? new TailCapture(builder.localEndpoint, builder.tailCaptureSpans,
+        builder.tailCaptureThresholdMicros, reporter)
+        : null;
+  }
+
+  public static Builder newBuilder(Endpoint localEndpoint, Clock clock) {
+    return new Builder(localEndpoint, clock);
+  }
+
+  /** Collects settings which would otherwise be a growing list of constructor parameters. */
+  public static final class Builder {
+    final Endpoint localEndpoint;
+    final Clock clock;
+    SpanReporter reporter;
+    boolean recycleSpans;
+    boolean lockFree;
+    TracerMetrics metrics = TracerMetrics.NOOP_METRICS;
+    long maxInFlightAgeNanos;
+    int drainInterval = MutableSpanMap.DEFAULT_DRAIN_INTERVAL;
+    int tailCaptureSpans;
+    long tailCaptureThresholdMicros;
+
+    Builder(Endpoint localEndpoint, Clock clock) {
+      if (localEndpoint == null) throw new NullPointerException("localEndpoint == null");
+      if (clock == null) throw new NullPointerException("clock == null");
+      this.localEndpoint = localEndpoint;
+      this.clock = clock;
+    }
+
+    /** Reports finished spans as {@link zipkin.Span} objects. */
+    public Builder reporter(Reporter<zipkin.Span> reporter) {
+      if (reporter == null) throw new NullPointerException("reporter == null");
+      this.reporter = SpanReporter.create(reporter);
+      return this;
+    }
+
+    /**
+     * Reports finished spans encoded directly from recorded state.
+     *
+     * @throws IllegalArgumentException if the encoding isn't JSON or THRIFT
+     */
+    public Builder reporter(Encoding encoding, Reporter<byte[]> reporter) {
+      if (encoding == null) throw new NullPointerException("encoding == null");
+      if (reporter == null) throw new NullPointerException("reporter == null");
+      this.reporter =
+          SpanReporter.create(SpanBytesEncoder.create(encoding, localEndpoint), reporter);
+      return this;
+    }
+
+    Builder reporter(SpanReporter reporter) {
+      this.reporter = reporter;
+      return this;
+    }
+
+    /** @see brave.Tracer.Builder#recycleSpans(boolean) */
+    public Builder recycleSpans(boolean recycleSpans) {
+      this.recycleSpans = recycleSpans;
+      return this;
+    }
+
+    /** @see brave.Tracer.Builder#lockFreeRecording(boolean) */
+    public Builder lockFreeRecording(boolean lockFree) {
+      this.lockFree = lockFree;
+      return this;
+    }
+
+    /** @see brave.Tracer.Builder#metrics(TracerMetrics) */
+    public Builder metrics(TracerMetrics metrics) {
+      if (metrics == null) throw new NullPointerException("metrics == null");
+      this.metrics = metrics;
+      return this;
+    }
+
+    /** Zero disables expiration. @see brave.Tracer.Builder#maxInFlightAge(long, TimeUnit) */
+    public Builder maxInFlightAgeNanos(long maxInFlightAgeNanos) {
+      if (maxInFlightAgeNanos < 0) throw new IllegalArgumentException("maxInFlightAgeNanos < 0");
+      this.maxInFlightAgeNanos = maxInFlightAgeNanos;
+      return this;
+    }
+
+    /** @see brave.Tracer.Builder#drainInterval(int) */
+    public Builder drainInterval(int drainInterval) {
+      if (drainInterval < 1) throw new IllegalArgumentException("drainInterval < 1");
+      this.drainInterval = drainInterval;
+      return this;
+    }
+
+    /**
+     * Zero disables tail capture. @see brave.Tracer.Builder#tailCapture(int, long, TimeUnit)
+     *
+     * @param latencyThresholdMicros zero means only traces with errors are reported
+     */
+    public Builder tailCapture(int maxSpans, long latencyThresholdMicros) {
+      if (maxSpans < 0) throw new IllegalArgumentException("maxSpans < 0");
+      if (latencyThresholdMicros < 0) {
+        throw new IllegalArgumentException("latencyThresholdMicros < 0");
+      }
+      this.tailCaptureSpans = maxSpans;
+      this.tailCaptureThresholdMicros = latencyThresholdMicros;
+      return this;
+    }
+
+    public Recorder build() {
+      if (reporter == null) throw new NullPointerException("reporter == null");
+      return new Recorder(this);
+    }
+  }
+
+  /** Returns the buffer recording unsampled spans, or null if tail capture is disabled. */
+  @Nullable public TailCapture tailCapture() {
+    return tailCapture;
   }
 
   /**
@@ -26,63 +179,237 @@ public final class Recorder {
   @Nullable public Long timestamp(TraceContext context) {
     MutableSpan span = spanMap.get(context);
     if (span == null) return null;
-    return span.startTimestamp == 0 ? null : span.startTimestamp;
+    long startTimestamp = span.events != null ? span.events.startTimestamp(span) : span.startTimestamp;
+    return startTimestamp == 0 ? null : startTimestamp;
+  }
+
+  /**
+   * Returns the clock of the span recording this context, if it uses a trace-anchored clock.
+   *
+   * @see brave.Tracer.Builder#traceAnchoredClock(boolean)
+   */
+  @Nullable public Clock clock(TraceContext context) {
+    MutableSpan span = spanMap.get(context);
+    return span != null ? span.clock : null;
+  }
+
+  /** Associates a trace-anchored clock with the span, unless it already has one. */
+  public void clock(MutableSpan span, Clock clock) {
+    if (clock == null) throw new NullPointerException("clock == null");
+    if (span.clock == null) span.clock = clock;
+  }
+
+  /**
+   * Returns the state recorded for this context, creating it if needed. Span handles can retain the
+   * result, so that their mutations don't need to look it up again. It remains associated with the
+   * context until the span is finished or flushed, so {@link brave.Tracer#toSpan(TraceContext)}
+   * re-attaches to the same state.
+   *
+   * <p>Handles pass their context along with the retained state. Mutations are dropped once the
+   * span is finished, or when recycling re-used the state for another span, so that a late
+   * mutation can't affect an unrelated trace.
+   */
+  public MutableSpan span(TraceContext context) {
+    return spanMap.getOrCreate(context);
+  }
+
+  /**
+   * Returns new state for the context, which isn't registered in the span map. The caller keeps it
+   * and must finish or flush it with {@link #finish(MutableSpan, TraceContext, long)} or {@link
+   * #flush(MutableSpan, TraceContext)}. Lookups by context, such as {@link #span(TraceContext)},
+   * don't find it.
+   *
+   * @see brave.Tracer.Builder#mapFreeSpans(boolean)
+   */
+  public MutableSpan newSpan(TraceContext context) {
+    return spanMap.newSpan(context);
   }
 
   /** @see brave.Span#start(long) */
   public void start(TraceContext context, long timestamp) {
-    spanMap.getOrCreate(context).start(timestamp);
+    start(spanMap.getOrCreate(context), context, timestamp);
+  }
+
+  /** Like {@link #start(TraceContext, long)}, except without a lookup. */
+  public void start(MutableSpan span, TraceContext context, long timestamp) {
+    span.start(context, timestamp);
+    metrics.incrementSpansStarted();
   }
 
   /** @see brave.Span#name(String) */
   public void name(TraceContext context, String name) {
     if (name == null) throw new NullPointerException("name == null");
-    spanMap.getOrCreate(context).name(name);
+    spanMap.getOrCreate(context).name(context, name);
+  }
+
+  /** Like {@link #name(TraceContext, String)}, except without a lookup. */
+  public void name(MutableSpan span, TraceContext context, String name) {
+    if (name == null) throw new NullPointerException("name == null");
+    span.name(context, name);
   }
 
   /** @see brave.Span#kind(Span.Kind) */
   public void kind(TraceContext context, Span.Kind kind) {
     if (kind == null) throw new NullPointerException("kind == null");
-    spanMap.getOrCreate(context).kind(kind);
+    spanMap.getOrCreate(context).kind(context, kind);
+  }
+
+  /** Like {@link #kind(TraceContext, Span.Kind)}, except without a lookup. */
+  public void kind(MutableSpan span, TraceContext context, Span.Kind kind) {
+    if (kind == null) throw new NullPointerException("kind == null");
+    span.kind(context, kind);
   }
 
   /** @see brave.Span#annotate(long, String) */
   public void annotate(TraceContext context, long timestamp, String value) {
     if (value == null) throw new NullPointerException("value == null");
-    spanMap.getOrCreate(context).annotate(timestamp, value);
+    spanMap.getOrCreate(context).annotate(context, timestamp, value);
+  }
+
+  /** Like {@link #annotate(TraceContext, long, String)}, except without a lookup. */
+  public void annotate(MutableSpan span, TraceContext context, long timestamp, String value) {
+    if (value == null) throw new NullPointerException("value == null");
+    span.annotate(context, timestamp, value);
+  }
+
+  /**
+   * Annotates the span only if it is in flight, returning false otherwise. Unlike {@link
+   * #annotate(TraceContext, long, String)}, this never creates state for the context, which would
+   * be reported as a separate fragment if the span already finished.
+   */
+  public boolean annotateIfInFlight(TraceContext context, long timestamp, String value) {
+    if (value == null) throw new NullPointerException("value == null");
+    MutableSpan span = spanMap.get(context);
+    return span != null && span.annotateIfInFlight(context, timestamp, value);
   }
 
   /** @see brave.Span#tag(String, String) */
   public void tag(TraceContext context, String key, String value) {
+    checkTag(key, value);
+    spanMap.getOrCreate(context).tag(context, key, value);
+  }
+
+  /** Like {@link #tag(TraceContext, String, String)}, except without a lookup. */
+  public void tag(MutableSpan span, TraceContext context, String key, String value) {
+    checkTag(key, value);
+    span.tag(context, key, value);
+  }
+
+  /**
+   * Applies all fields at once, starting the span if the timestamp is non-zero.
+   *
+   * @see brave.Span#customize(SpanFields)
+   * @see brave.Span#start(SpanFields)
+   */
+  public void customize(MutableSpan span, TraceContext context, SpanFields fields,
+      long startTimestamp) {
+    if (fields == null) throw new NullPointerException("fields == null");
+    span.customize(context, fields, startTimestamp);
+    if (startTimestamp != 0L) metrics.incrementSpansStarted();
+  }
+
+  static void checkTag(String key, String value) {
     if (key == null) throw new NullPointerException("key == null");
     if (key.isEmpty()) throw new IllegalArgumentException("key is empty");
     if (value == null) throw new NullPointerException("value == null");
-    spanMap.getOrCreate(context).tag(key, value);
   }
 
   /** @see brave.Span#remoteEndpoint(Endpoint) */
   public void remoteEndpoint(TraceContext context, Endpoint remoteEndpoint) {
     if (remoteEndpoint == null) throw new NullPointerException("remoteEndpoint == null");
-    spanMap.getOrCreate(context).remoteEndpoint(remoteEndpoint);
+    spanMap.getOrCreate(context).remoteEndpoint(context, remoteEndpoint);
+  }
+
+  /** Like {@link #remoteEndpoint(TraceContext, Endpoint)}, except without a lookup. */
+  public void remoteEndpoint(MutableSpan span, TraceContext context, Endpoint remoteEndpoint) {
+    if (remoteEndpoint == null) throw new NullPointerException("remoteEndpoint == null");
+    span.remoteEndpoint(context, remoteEndpoint);
   }
 
   /** @see Span#finish() */
   public void finish(TraceContext context, long finishTimestamp) {
     MutableSpan span = spanMap.remove(context);
-    if (span == null) return;
-    synchronized (span) {
-      span.finish(finishTimestamp);
-      reporter.report(span.toSpan());
+    if (span == null) {
+      logNotInFlight("finish", context);
+      return;
     }
+    metrics.incrementSpansFinished();
+    finishAndReport(span, finishTimestamp);
+    spanMap.recycle(span);
   }
 
   /** @see Span#flush() */
   public void flush(TraceContext context) {
     MutableSpan span = spanMap.remove(context);
-    if (span == null) return;
+    if (span == null) {
+      logNotInFlight("flush", context);
+      return;
+    }
+    metrics.incrementSpansFlushed();
+    finishAndReport(span, null);
+    spanMap.recycle(span);
+  }
+
+  /** Like {@link #finish(TraceContext, long)}, for state from {@link #newSpan(TraceContext)}. */
+  public void finish(MutableSpan span, TraceContext context, long finishTimestamp) {
+    if (!finishAndReport(span, context, finishTimestamp)) {
+      logNotInFlight("finish", context);
+      return;
+    }
+    metrics.incrementSpansFinished();
+    spanMap.recycle(span);
+  }
+
+  /** Like {@link #flush(TraceContext)}, for state from {@link #newSpan(TraceContext)}. */
+  public void flush(MutableSpan span, TraceContext context) {
+    if (!finishAndReport(span, context, null)) {
+      logNotInFlight("flush", context);
+      return;
+    }
+    metrics.incrementSpansFlushed();
+    spanMap.recycle(span);
+  }
+
+  /**
+   * Reports the span unless it was already finished, or was recycled for another context. As it
+   * isn't removed from a map, this decides which caller reports it.
+   */
+  boolean finishAndReport(MutableSpan span, TraceContext context,
+      @Nullable Long finishTimestamp) {
+    if (span.events != null) {
+      if (!span.isFor(context) || !span.events.drainTo(span)) return false;
+      span.finish(finishTimestamp);
+      reporter.report(span);
+      return true;
+    }
+    synchronized (span) {
+      if (span.isStale(context)) return false;
+      span.finish(finishTimestamp);
+      reporter.report(span);
+    }
+    return true;
+  }
+
+  /**
+   * Data recorded since the span was last in flight is lost, for example when it was flushed after
+   * exceeding {@link brave.Tracer.Builder#maxInFlightAge the maximum age}. Log so this isn't silent.
+   */
+  static void logNotInFlight(String operation, TraceContext context) {
+    if (!logger.isLoggable(Level.FINE)) return;
+    logger.fine("Ignoring " + operation + " of " + context + " as it isn't in flight. It was "
+        + "already finished or flushed, possibly after exceeding the maximum in-flight age.");
+  }
+
+  void finishAndReport(MutableSpan span, @Nullable Long finishTimestamp) {
+    if (span.events != null) { // draining excludes further mutations, so there's no need to lock
+      span.drainEvents();
+      span.finish(finishTimestamp);
+      reporter.report(span);
+      return;
+    }
     synchronized (span) {
-      span.finish(null);
-      reporter.report(span.toSpan());
+      span.finish(finishTimestamp);
+      reporter.report(span);
     }
   }
 }
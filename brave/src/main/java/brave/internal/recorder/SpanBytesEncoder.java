@@ -0,0 +1,355 @@
+package brave.internal.recorder;
+
+import zipkin.Endpoint;
+import zipkin.reporter.Encoding;
+
+/**
+ * Encodes a finished {@link MutableSpan} directly into bytes, without creating intermediate
+ * {@link zipkin.Span}, {@link zipkin.Annotation} or {@link zipkin.BinaryAnnotation} objects.
+ *
+ * <p>The local endpoint is encoded once, when this is created. Encoding happens in a re-usable
+ * per-thread buffer, so the only allocation per span is the resulting byte array.
+ */
+abstract class SpanBytesEncoder {
+
+  /** @throws IllegalArgumentException if the encoding isn't JSON or THRIFT */
+  static SpanBytesEncoder create(Encoding encoding, Endpoint localEndpoint) {
+    if (encoding == null) throw new NullPointerException("encoding == null");
+    if (localEndpoint == null) throw new NullPointerException("localEndpoint == null");
+    switch (encoding) {
+      case JSON:
+        return new JsonEncoder(localEndpoint);
+      case THRIFT:
+        return new ThriftEncoder(localEndpoint);
+      default:
+        throw new IllegalArgumentException(
+            "Unsupported encoding: " + encoding + ". Supported encodings are JSON and THRIFT");
+    }
+  }
+
+  static final ThreadLocal<Buffer> BUFFER = new ThreadLocal<Buffer>() {
+    @Override protected Buffer initialValue() {
+      return new Buffer(512);
+    }
+  };
+
+  abstract Encoding encoding();
+
+  /** Call this while holding the lock on the span. */
+  byte[] encode(MutableSpan span) {
+    Buffer buffer = BUFFER.get().reset();
+    write(span, buffer);
+    return buffer.toByteArray();
+  }
+
+  abstract void write(MutableSpan span, Buffer b);
+
+  static final class JsonEncoder extends SpanBytesEncoder {
+    static final byte[] TRACE_ID = ascii("{\"traceId\":\"");
+    static final byte[] ID = ascii("\",\"id\":\"");
+    static final byte[] NAME = ascii("\",\"name\":\"");
+    static final byte[] PARENT_ID = ascii(",\"parentId\":\"");
+    static final byte[] TIMESTAMP = ascii(",\"timestamp\":");
+    static final byte[] DURATION = ascii(",\"duration\":");
+    static final byte[] ANNOTATIONS = ascii(",\"annotations\":[");
+    static final byte[] ANNOTATION_TIMESTAMP = ascii("{\"timestamp\":");
+    static final byte[] VALUE = ascii(",\"value\":\"");
+    static final byte[] BINARY_ANNOTATIONS = ascii(",\"binaryAnnotations\":[");
+    static final byte[] KEY = ascii("{\"key\":\"");
+    static final byte[] STRING_VALUE = ascii("\",\"value\":\"");
+    static final byte[] TRUE_VALUE = ascii("\",\"value\":true,\"endpoint\":");
+    static final byte[] DEBUG = ascii(",\"debug\":true");
+
+    /** Includes the closing quote of the value, the endpoint and the closing brace */
+    final byte[] localEndpointSuffix;
+
+    JsonEncoder(Endpoint localEndpoint) {
+      Buffer b = new Buffer(128).write(ascii("\",\"endpoint\":"));
+      writeEndpoint(localEndpoint, b);
+      localEndpointSuffix = b.writeByte('}').toByteArray();
+    }
+
+    @Override Encoding encoding() {
+      return Encoding.JSON;
+    }
+
+    @Override void write(MutableSpan span, Buffer b) {
+      b.write(TRACE_ID);
+      if (span.traceIdHigh != 0) b.writeLowerHex(span.traceIdHigh);
+      b.writeLowerHex(span.traceId);
+      b.write(ID).writeLowerHex(span.id);
+      b.write(NAME);
+      writeJsonEscaped(span.name, b);
+      b.writeByte('"');
+      if (span.parentId != null) {
+        b.write(PARENT_ID).writeLowerHex(span.parentId).writeByte('"');
+      }
+      if (span.timestamp != 0) b.write(TIMESTAMP).writeDecimal(span.timestamp);
+      if (span.duration != 0) b.write(DURATION).writeDecimal(span.duration);
+      if (span.annotationCount > 0) {
+        b.write(ANNOTATIONS);
+        for (int i = 0; i < span.annotationCount; i++) {
+          if (i > 0) b.writeByte(',');
+          b.write(ANNOTATION_TIMESTAMP).writeDecimal(span.annotationTimestamps[i]);
+          b.write(VALUE);
+          writeJsonEscaped(span.annotationValues[i], b);
+          b.write(localEndpointSuffix);
+        }
+        b.writeByte(']');
+      }
+      if (span.tagCount > 0 || span.remoteEndpointType != null) {
+        b.write(BINARY_ANNOTATIONS);
+        for (int i = 0; i < span.tagCount; i++) {
+          if (i > 0) b.writeByte(',');
+          b.write(KEY);
+          writeJsonEscaped(span.tagKeys[i], b);
+          b.write(STRING_VALUE);
+          writeJsonEscaped(span.tagValues[i], b);
+          b.write(localEndpointSuffix);
+        }
+        if (span.remoteEndpointType != null) {
+          if (span.tagCount > 0) b.writeByte(',');
+          b.write(KEY).writeAscii(span.remoteEndpointType).write(TRUE_VALUE);
+          writeEndpoint(span.remoteEndpoint, b);
+          b.writeByte('}');
+        }
+        b.writeByte(']');
+      }
+      if (span.debug) b.write(DEBUG);
+      b.writeByte('}');
+    }
+
+    static void writeEndpoint(Endpoint endpoint, Buffer b) {
+      b.writeAscii("{\"serviceName\":\"");
+      writeJsonEscaped(endpoint.serviceName, b);
+      b.writeByte('"');
+      if (endpoint.ipv4 != 0) {
+        b.writeAscii(",\"ipv4\":\"");
+        b.writeDecimal(endpoint.ipv4 >> 24 & 0xff).writeByte('.');
+        b.writeDecimal(endpoint.ipv4 >> 16 & 0xff).writeByte('.');
+        b.writeDecimal(endpoint.ipv4 >> 8 & 0xff).writeByte('.');
+        b.writeDecimal(endpoint.ipv4 & 0xff).writeByte('"');
+      }
+      if (endpoint.port != null && endpoint.port != 0) {
+        b.writeAscii(",\"port\":").writeDecimal(endpoint.port & 0xffff);
+      }
+      if (endpoint.ipv6 != null) {
+        b.writeAscii(",\"ipv6\":\"");
+        writeIpV6(endpoint.ipv6, b);
+        b.writeByte('"');
+      }
+      b.writeByte('}');
+    }
+
+    /** Writes the address in RFC 5952 form, compressing the longest run of zero groups */
+    static void writeIpV6(byte[] ipv6, Buffer b) {
+      int zeroStart = -1, zeroLength = 0;
+      for (int i = 0; i < 8; ) {
+        if (group(ipv6, i) != 0) {
+          i++;
+          continue;
+        }
+        int start = i;
+        while (i < 8 && group(ipv6, i) == 0) i++;
+        if (i - start > zeroLength && i - start > 1) {
+          zeroStart = start;
+          zeroLength = i - start;
+        }
+      }
+      for (int i = 0; i < 8; i++) {
+        if (i == zeroStart) {
+          b.writeAscii("::");
+          i += zeroLength - 1;
+          continue;
+        }
+        if (i > 0 && i != zeroStart + zeroLength) b.writeByte(':');
+        int group = group(ipv6, i);
+        boolean leading = true;
+        for (int shift = 12; shift >= 0; shift -= 4) {
+          int digit = (group >> shift) & 0xf;
+          if (leading && digit == 0 && shift != 0) continue;
+          leading = false;
+          b.writeByte(Buffer.HEX_DIGITS[digit]);
+        }
+      }
+    }
+
+    static int group(byte[] ipv6, int i) {
+      return (ipv6[i * 2] & 0xff) << 8 | (ipv6[i * 2 + 1] & 0xff);
+    }
+
+    static void writeJsonEscaped(String v, Buffer b) {
+      int afterReplacement = 0;
+      for (int i = 0, length = v.length(); i < length; i++) {
+        char c = v.charAt(i);
+        String replacement;
+        if (c < 0x20) {
+          replacement = CONTROL_CHARS[c];
+        } else if (c == '"') {
+          replacement = "\\\"";
+        } else if (c == '\\') {
+          replacement = "\\\\";
+        } else if (c == '\u2028') {
+          replacement = "\\u2028";
+        } else if (c == '\u2029') {
+          replacement = "\\u2029";
+        } else {
+          continue;
+        }
+        if (afterReplacement < i) b.writeUtf8(v, afterReplacement, i);
+        b.writeAscii(replacement);
+        afterReplacement = i + 1;
+      }
+      if (afterReplacement < v.length()) b.writeUtf8(v, afterReplacement, v.length());
+    }
+
+    static final String[] CONTROL_CHARS = new String[0x20];
+
+    static {
+      for (int i = 0; i < 0x20; i++) {
+        CONTROL_CHARS[i] = String.format("\\u%04x", i);
+      }
+      CONTROL_CHARS['\t'] = "\\t";
+      CONTROL_CHARS['\b'] = "\\b";
+      CONTROL_CHARS['\n'] = "\\n";
+      CONTROL_CHARS['\r'] = "\\r";
+      CONTROL_CHARS['\f'] = "\\f";
+    }
+  }
+
+  /** Encodes spans with TBinaryProtocol, as defined by zipkinCore.thrift */
+  static final class ThriftEncoder extends SpanBytesEncoder {
+    static final byte TYPE_STOP = 0;
+    static final byte TYPE_BOOL = 2;
+    static final byte TYPE_I16 = 6;
+    static final byte TYPE_I32 = 8;
+    static final byte TYPE_I64 = 10;
+    static final byte TYPE_STRING = 11;
+    static final byte TYPE_STRUCT = 12;
+    static final byte TYPE_LIST = 15;
+
+    static final int ANNOTATION_TYPE_BOOL = 0;
+    static final int ANNOTATION_TYPE_STRING = 6;
+
+    /** Includes the field header, the endpoint struct and the enclosing struct's stop byte. */
+    final byte[] localAnnotationHost;
+    final byte[] localBinaryAnnotationHost;
+
+    ThriftEncoder(Endpoint localEndpoint) {
+      Buffer b = new Buffer(64);
+      writeFieldBegin(b, TYPE_STRUCT, 3);
+      writeEndpoint(localEndpoint, b);
+      localAnnotationHost = b.writeByte(TYPE_STOP).toByteArray();
+      b.reset();
+      writeFieldBegin(b, TYPE_STRUCT, 4);
+      writeEndpoint(localEndpoint, b);
+      localBinaryAnnotationHost = b.writeByte(TYPE_STOP).toByteArray();
+    }
+
+    @Override Encoding encoding() {
+      return Encoding.THRIFT;
+    }
+
+    @Override void write(MutableSpan span, Buffer b) {
+      writeFieldBegin(b, TYPE_I64, 1);
+      b.writeLong(span.traceId);
+      writeFieldBegin(b, TYPE_STRING, 3);
+      writeUtf8(span.name, b);
+      writeFieldBegin(b, TYPE_I64, 4);
+      b.writeLong(span.id);
+      if (span.parentId != null) {
+        writeFieldBegin(b, TYPE_I64, 5);
+        b.writeLong(span.parentId);
+      }
+
+      writeFieldBegin(b, TYPE_LIST, 6);
+      writeListBegin(b, span.annotationCount);
+      for (int i = 0; i < span.annotationCount; i++) {
+        writeFieldBegin(b, TYPE_I64, 1);
+        b.writeLong(span.annotationTimestamps[i]);
+        writeFieldBegin(b, TYPE_STRING, 2);
+        writeUtf8(span.annotationValues[i], b);
+        b.write(localAnnotationHost);
+      }
+
+      writeFieldBegin(b, TYPE_LIST, 8);
+      writeListBegin(b, span.tagCount + (span.remoteEndpointType != null ? 1 : 0));
+      for (int i = 0; i < span.tagCount; i++) {
+        writeFieldBegin(b, TYPE_STRING, 1);
+        writeUtf8(span.tagKeys[i], b);
+        writeFieldBegin(b, TYPE_STRING, 2);
+        writeUtf8(span.tagValues[i], b);
+        writeFieldBegin(b, TYPE_I32, 3);
+        b.writeInt(ANNOTATION_TYPE_STRING);
+        b.write(localBinaryAnnotationHost);
+      }
+      if (span.remoteEndpointType != null) {
+        writeFieldBegin(b, TYPE_STRING, 1);
+        writeUtf8(span.remoteEndpointType, b);
+        writeFieldBegin(b, TYPE_STRING, 2);
+        b.writeInt(1).writeByte(1);
+        writeFieldBegin(b, TYPE_I32, 3);
+        b.writeInt(ANNOTATION_TYPE_BOOL);
+        writeFieldBegin(b, TYPE_STRUCT, 4);
+        writeEndpoint(span.remoteEndpoint, b);
+        b.writeByte(TYPE_STOP);
+      }
+
+      if (span.debug) {
+        writeFieldBegin(b, TYPE_BOOL, 9);
+        b.writeByte(1);
+      }
+      if (span.timestamp != 0) {
+        writeFieldBegin(b, TYPE_I64, 10);
+        b.writeLong(span.timestamp);
+      }
+      if (span.duration != 0) {
+        writeFieldBegin(b, TYPE_I64, 11);
+        b.writeLong(span.duration);
+      }
+      if (span.traceIdHigh != 0) {
+        writeFieldBegin(b, TYPE_I64, 12);
+        b.writeLong(span.traceIdHigh);
+      }
+      b.writeByte(TYPE_STOP);
+    }
+
+    static void writeEndpoint(Endpoint endpoint, Buffer b) {
+      writeFieldBegin(b, TYPE_I32, 1);
+      b.writeInt(endpoint.ipv4);
+      writeFieldBegin(b, TYPE_I16, 2);
+      b.writeShort(endpoint.port == null ? 0 : endpoint.port);
+      writeFieldBegin(b, TYPE_STRING, 3);
+      writeUtf8(endpoint.serviceName, b);
+      if (endpoint.ipv6 != null) {
+        writeFieldBegin(b, TYPE_STRING, 4);
+        b.writeInt(endpoint.ipv6.length).write(endpoint.ipv6);
+      }
+      b.writeByte(TYPE_STOP);
+    }
+
+    static void writeFieldBegin(Buffer b, byte type, int id) {
+      b.writeByte(type).writeShort(id);
+    }
+
+    static void writeListBegin(Buffer b, int size) {
+      b.writeByte(TYPE_STRUCT).writeInt(size);
+    }
+
+    /** Writes a length-prefixed string, back-filling the length once it is known. */
+    static void writeUtf8(String v, Buffer b) {
+      b.writeInt(0);
+      int start = b.pos;
+      b.writeUtf8(v);
+      int length = b.pos - start;
+      b.buf[start - 4] = (byte) ((length >>> 24L) & 0xff);
+      b.buf[start - 3] = (byte) ((length >>> 16L) & 0xff);
+      b.buf[start - 2] = (byte) ((length >>> 8L) & 0xff);
+      b.buf[start - 1] = (byte) (length & 0xff);
+    }
+  }
+
+  static byte[] ascii(String v) {
+    return new Buffer(v.length()).writeAscii(v).toByteArray();
+  }
+}
@@ -0,0 +1,136 @@
+package brave.internal.recorder;
+
+import brave.Span;
+import brave.SpanFields;
+import brave.internal.Nullable;
+import brave.propagation.TraceContext;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import zipkin.Endpoint;
+
+/**
+ * Append-only log of mutations to a span, used instead of locking when spans are recorded in
+ * lock-free mode.
+ *
+ * <p>Appends push onto a linked stack with compare-and-set, so concurrent callers never block each
+ * other. When the span is finished or flushed, the finishing thread swaps in a terminal marker and
+ * folds the events into the {@link MutableSpan} in the order they were appended. Appends after
+ * that are dropped, as they would be if the span were already reported.
+ *
+ * <p>Once a recycled span is reset, its log is re-opened. Events carry the context of the handle
+ * that appended them, so that a late append from a handle of the previous span is skipped when
+ * drained, instead of being applied to an unrelated span.
+ */
+final class SpanEventLog {
+  static final int START = 0, NAME = 1, KIND = 2, ANNOTATE = 3, TAG = 4, REMOTE_ENDPOINT = 5,
+      CUSTOMIZE = 6; // value is SpanFields, timestamp is the start timestamp or zero
+
+  static final class Event {
+    @Nullable final TraceContext owner;
+    final int type;
+    final long timestamp;
+    final Object key, value;
+    Event next;
+
+    Event(@Nullable TraceContext owner, int type, long timestamp, Object key, Object value) {
+      this.owner = owner;
+      this.type = type;
+      this.timestamp = timestamp;
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /** Marks a log which was drained, so that late appends are dropped. */
+  static final Event DRAINED = new Event(null, -1, 0L, null, null);
+
+  static final AtomicReferenceFieldUpdater<SpanEventLog, Event> HEAD =
+      AtomicReferenceFieldUpdater.newUpdater(SpanEventLog.class, Event.class, "head");
+
+  /** Most recently appended event, or {@link #DRAINED}. */
+  volatile Event head;
+
+  /**
+   * Returns false if the log was already drained.
+   *
+   * @param owner the context of the handle making the mutation, or null if it can't be stale.
+   */
+  boolean append(@Nullable TraceContext owner, int type, long timestamp, @Nullable Object key,
+      @Nullable Object value) {
+    Event event = new Event(owner, type, timestamp, key, value);
+    for (Event current; (current = head) != DRAINED; ) {
+      event.next = current;
+      if (HEAD.compareAndSet(this, current, event)) return true;
+    }
+    return false;
+  }
+
+  /** Returns the timestamp of the last start event of the span, or zero if there is none. */
+  long startTimestamp(MutableSpan span) {
+    for (Event event = head; event != null && event != DRAINED; event = event.next) {
+      if (event.type != START && event.type != CUSTOMIZE) continue;
+      if (event.timestamp != 0L && isFor(span, event)) return event.timestamp;
+    }
+    return 0L;
+  }
+
+  /**
+   * Closes the log and applies its events to the span. Only one caller wins this, so the span can
+   * be completed and reported without a lock.
+   *
+   * @return false if the log was already drained
+   */
+  boolean drainTo(MutableSpan span) {
+    Event event = HEAD.getAndSet(this, DRAINED);
+    if (event == DRAINED) return false;
+    // events are linked newest first, so reverse them to apply in order
+    Event reversed = null;
+    while (event != null) {
+      Event next = event.next;
+      event.next = reversed;
+      reversed = event;
+      event = next;
+    }
+    for (event = reversed; event != null; event = event.next) {
+      if (isFor(span, event)) apply(span, event);
+    }
+    return true;
+  }
+
+  /** False when the event was appended by a handle of a span that previously used the instance. */
+  static boolean isFor(MutableSpan span, Event event) {
+    return event.owner == null || span.isFor(event.owner);
+  }
+
+  static void apply(MutableSpan span, Event event) {
+    switch (event.type) {
+      case START:
+        span.startTimestamp = event.timestamp;
+        break;
+      case NAME:
+        span.name = (String) event.value;
+        break;
+      case KIND:
+        span.kind = (Span.Kind) event.value;
+        break;
+      case ANNOTATE:
+        span.recordAnnotation(event.timestamp, (String) event.value);
+        break;
+      case TAG:
+        span.recordTag((String) event.key, (String) event.value);
+        break;
+      case REMOTE_ENDPOINT:
+        span.remoteEndpoint = (Endpoint) event.value;
+        break;
+      case CUSTOMIZE:
+        span.applyFields((SpanFields) event.value, event.timestamp);
+        break;
+      default:
+        throw new AssertionError("update event mapping");
+    }
+  }
+
+  /** Re-opens a drained log, for use when its span is recycled. */
+  void reset() {
+    head = null;
+  }
+}
@@ -0,0 +1,57 @@
+package brave.internal.recorder;
+
+import brave.TracerMetrics;
+import zipkin.reporter.Reporter;
+
+/** Reports a finished span in the form accepted by the configured reporter. */
+abstract class SpanReporter {
+
+  /** Converts the span to a {@link zipkin.Span} before reporting it. */
+  static SpanReporter create(final Reporter<zipkin.Span> delegate) {
+    if (delegate == null) throw new NullPointerException("reporter == null");
+    return new SpanReporter() {
+      @Override void report(MutableSpan span) {
+        delegate.report(span.toSpan());
+      }
+
+      @Override public String toString() {
+        return delegate.toString();
+      }
+    };
+  }
+
+  /** Encodes the span directly into bytes, without creating a {@link zipkin.Span}. */
+  static SpanReporter create(final SpanBytesEncoder encoder, final Reporter<byte[]> delegate) {
+    if (delegate == null) throw new NullPointerException("reporter == null");
+    return new SpanReporter() {
+      @Override void report(MutableSpan span) {
+        delegate.report(encoder.encode(span));
+      }
+
+      @Override public String toString() {
+        return delegate.toString();
+      }
+    };
+  }
+
+  /** Records the time spent in the delegate, including when it fails. */
+  static SpanReporter timed(final SpanReporter delegate, final TracerMetrics metrics) {
+    return new SpanReporter() {
+      @Override void report(MutableSpan span) {
+        long start = System.nanoTime();
+        try {
+          delegate.report(span);
+        } finally {
+          metrics.recordReportNanos(System.nanoTime() - start);
+        }
+      }
+
+      @Override public String toString() {
+        return delegate.toString();
+      }
+    };
+  }
+
+  /** Call this while holding the lock on the span, or after draining its events. */
+  abstract void report(MutableSpan span);
+}
@@ -0,0 +1,277 @@
+package brave.internal.recorder;
+
+import brave.Span;
+import brave.SpanFields;
+import brave.internal.Nullable;
+import brave.propagation.TraceContext;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import zipkin.Constants;
+import zipkin.Endpoint;
+
+/**
+ * Records unsampled spans into a bounded ring, and reports those of a trace if its local root
+ * ends in error or is slow. Otherwise, they are overwritten by later spans.
+ *
+ * <p>Each span claims the next slot in the ring, and holds that claim until it finishes. Once the
+ * ring wraps, a slot is re-used even if its span didn't finish, and further mutations under the
+ * old claim are ignored. Slots are allocated up-front and reset on claim, so recording doesn't
+ * allocate beyond what a {@link MutableSpan} needs for its annotations and tags.
+ *
+ * <p>The claim of an unfinished span can be looked up by its context, so that handles created
+ * later, such as by {@code Tracer.currentSpan()}, record into the same slot. Lookups use an
+ * open-addressed table keyed by span ID, also allocated up-front. It has twice as many entries as
+ * the ring, as there is at most one unfinished claim per slot.
+ *
+ * <p>Promoting a trace scans the whole ring for its finished spans. This is proportional to the
+ * ring's capacity, but only happens for traces that are reported.
+ *
+ * <p>This type is public only so that span handles can retain it. Create one via {@link
+ * Recorder.Builder#tailCapture(int, long)}.
+ */
+public final class TailCapture {
+  /** A claim that never matches a slot, returned when there's no claim to look up. */
+  public static final long RELEASED = -1L;
+
+  final MutableSpan[] slots;
+  /** Claims by slot, guarded by the slot. {@link #RELEASED} once the span was reported. */
+  final long[] claims;
+  /** Contexts and whether they are local roots by slot, guarded by the slot. */
+  final TraceContext[] contexts;
+  final boolean[] localRoots;
+  /**
+   * Claims of spans that haven't yet finished, or been overwritten, by the IDs of their context.
+   * Entries are {@link #RELEASED} when empty. Guarded by {@link #lookupClaims}.
+   */
+  final long[] lookupClaims, lookupTraceIdHighs, lookupTraceIds, lookupSpanIds;
+  final int lookupMask;
+  final AtomicLong nextClaim = new AtomicLong();
+  final long latencyThresholdMicros;
+  final SpanReporter reporter;
+
+  TailCapture(Endpoint localEndpoint, int capacity, long latencyThresholdMicros,
+      SpanReporter reporter) {
+    if (capacity < 1) throw new IllegalArgumentException("capacity < 1");
+    this.slots = new MutableSpan[capacity];
+    this.claims = new long[capacity];
+    this.contexts = new TraceContext[capacity];
+    this.localRoots = new boolean[capacity];
+    int lookupSize = Integer.highestOneBit(capacity) << 2; // power of two, at least twice capacity
+    this.lookupClaims = new long[lookupSize];
+    this.lookupTraceIdHighs = new long[lookupSize];
+    this.lookupTraceIds = new long[lookupSize];
+    this.lookupSpanIds = new long[lookupSize];
+    this.lookupMask = lookupSize - 1;
+    Arrays.fill(lookupClaims, RELEASED);
+    TraceContext unused = TraceContext.newBuilder().traceId(1L).spanId(1L).build();
+    for (int i = 0; i < capacity; i++) {
+      slots[i] = new MutableSpan(unused, localEndpoint);
+      claims[i] = RELEASED;
+    }
+    this.latencyThresholdMicros = latencyThresholdMicros;
+    this.reporter = reporter;
+  }
+
+  /**
+   * Returns a claim on the next slot, which will record the span of this context.
+   *
+   * @param localRoot true if the span has no parent in this process, so decides what's reported
+   */
+  public long claim(TraceContext context, boolean localRoot) {
+    long claim = nextClaim.getAndIncrement();
+    int index = index(claim);
+    MutableSpan slot = slots[index];
+    synchronized (slot) {
+      if (claims[index] != RELEASED && !slot.finished) { // overwriting an unfinished span
+        removeLookup(contexts[index], claims[index]);
+      }
+      slot.reset(context);
+      claims[index] = claim;
+      contexts[index] = context;
+      localRoots[index] = localRoot;
+      putLookup(context, claim);
+    }
+    return claim;
+  }
+
+  /** Returns the claim of the unfinished span of this context, or {@link #RELEASED} if none. */
+  public long claimOf(TraceContext context) {
+    synchronized (lookupClaims) {
+      for (int i = lookupIndex(context.spanId()); ; i = (i + 1) & lookupMask) {
+        long claim = lookupClaims[i];
+        if (claim == RELEASED) return RELEASED;
+        if (lookupSpanIds[i] == context.spanId()
+            && lookupTraceIds[i] == context.traceId()
+            && lookupTraceIdHighs[i] == context.traceIdHigh()) {
+          return claim;
+        }
+      }
+    }
+  }
+
+  int lookupIndex(long spanId) {
+    return (int) (spanId ^ (spanId >>> 32)) & lookupMask;
+  }
+
+  void putLookup(TraceContext context, long claim) {
+    synchronized (lookupClaims) {
+      int i = lookupIndex(context.spanId());
+      while (lookupClaims[i] != RELEASED) i = (i + 1) & lookupMask;
+      lookupClaims[i] = claim;
+      lookupTraceIdHighs[i] = context.traceIdHigh();
+      lookupTraceIds[i] = context.traceId();
+      lookupSpanIds[i] = context.spanId();
+    }
+  }
+
+  /** Removes the entry, shifting back later ones in its probe sequence so lookups still work. */
+  void removeLookup(TraceContext context, long claim) {
+    synchronized (lookupClaims) {
+      int i = lookupIndex(context.spanId());
+      while (lookupClaims[i] != claim) {
+        if (lookupClaims[i] == RELEASED) return; // not present
+        i = (i + 1) & lookupMask;
+      }
+      for (int j = (i + 1) & lookupMask; lookupClaims[j] != RELEASED; j = (j + 1) & lookupMask) {
+        int home = lookupIndex(lookupSpanIds[j]);
+        // the entry at j can stay unless the gap at i lies cyclically between its home and j
+        boolean canStay = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+        if (canStay) continue;
+        lookupClaims[i] = lookupClaims[j];
+        lookupTraceIdHighs[i] = lookupTraceIdHighs[j];
+        lookupTraceIds[i] = lookupTraceIds[j];
+        lookupSpanIds[i] = lookupSpanIds[j];
+        i = j;
+      }
+      lookupClaims[i] = RELEASED;
+    }
+  }
+
+  /** Returns true if the claim is current and its span was claimed as a local root. */
+  public boolean isLocalRoot(long claim) {
+    int index = index(claim);
+    synchronized (slots[index]) {
+      return claims[index] == claim && localRoots[index];
+    }
+  }
+
+  int index(long claim) {
+    return (int) (claim % slots.length);
+  }
+
+  /** @see Span#start(long) */
+  public void start(long claim, long timestamp) {
+    int index = index(claim);
+    MutableSpan slot = slots[index];
+    synchronized (slot) {
+      if (claims[index] == claim) slot.startTimestamp = timestamp;
+    }
+  }
+
+  /** @see Span#name(String) */
+  public void name(long claim, String name) {
+    if (name == null) throw new NullPointerException("name == null");
+    int index = index(claim);
+    MutableSpan slot = slots[index];
+    synchronized (slot) {
+      if (claims[index] == claim) slot.name = name;
+    }
+  }
+
+  /** @see Span#kind(Span.Kind) */
+  public void kind(long claim, Span.Kind kind) {
+    if (kind == null) throw new NullPointerException("kind == null");
+    int index = index(claim);
+    MutableSpan slot = slots[index];
+    synchronized (slot) {
+      if (claims[index] == claim) slot.kind = kind;
+    }
+  }
+
+  /** @see Span#annotate(long, String) */
+  public void annotate(long claim, long timestamp, String value) {
+    if (value == null) throw new NullPointerException("value == null");
+    int index = index(claim);
+    MutableSpan slot = slots[index];
+    synchronized (slot) {
+      if (claims[index] == claim) slot.recordAnnotation(timestamp, value);
+    }
+  }
+
+  /** @see Span#tag(String, String) */
+  public void tag(long claim, String key, String value) {
+    Recorder.checkTag(key, value);
+    int index = index(claim);
+    MutableSpan slot = slots[index];
+    synchronized (slot) {
+      if (claims[index] == claim) slot.recordTag(key, value);
+    }
+  }
+
+  /** @see Span#remoteEndpoint(Endpoint) */
+  public void remoteEndpoint(long claim, Endpoint remoteEndpoint) {
+    if (remoteEndpoint == null) throw new NullPointerException("remoteEndpoint == null");
+    int index = index(claim);
+    MutableSpan slot = slots[index];
+    synchronized (slot) {
+      if (claims[index] == claim) slot.remoteEndpoint = remoteEndpoint;
+    }
+  }
+
+  /** @see Recorder#customize(MutableSpan, TraceContext, SpanFields, long) */
+  public void customize(long claim, SpanFields fields, long startTimestamp) {
+    if (fields == null) throw new NullPointerException("fields == null");
+    int index = index(claim);
+    MutableSpan slot = slots[index];
+    synchronized (slot) {
+      if (claims[index] == claim) slot.customize(null, fields, startTimestamp);
+    }
+  }
+
+  /**
+   * Completes the span. When it is the local root, this reports all finished spans of its trace if
+   * it has an "error" tag or took at least the latency threshold.
+   *
+   * @param finishTimestamp null when the span was flushed
+   */
+  public void finish(long claim, @Nullable Long finishTimestamp) {
+    int index = index(claim);
+    MutableSpan slot = slots[index];
+    long traceIdHigh, traceId;
+    synchronized (slot) {
+      if (claims[index] != claim || slot.finished) return;
+      // read before finishing, which zeros the duration of shared server spans
+      long elapsedMicros = finishTimestamp != null && slot.startTimestamp != 0L
+          ? finishTimestamp - slot.startTimestamp
+          : 0L;
+      slot.finish(finishTimestamp);
+      removeLookup(contexts[index], claim);
+      if (!localRoots[index] || !shouldReport(slot, elapsedMicros)) return;
+      traceIdHigh = slot.traceIdHigh;
+      traceId = slot.traceId;
+    }
+    // The root's lock is released first, so that only one slot is locked at a time
+    for (int i = 0; i < slots.length; i++) {
+      MutableSpan span = slots[i];
+      synchronized (span) {
+        if (claims[i] == RELEASED || !span.finished) continue;
+        if (span.traceId != traceId || span.traceIdHigh != traceIdHigh) continue;
+        reporter.report(span);
+        claims[i] = RELEASED;
+      }
+    }
+  }
+
+  /** Call this while holding the lock on the span. */
+  boolean shouldReport(MutableSpan span, long elapsedMicros) {
+    if (latencyThresholdMicros > 0 && elapsedMicros >= latencyThresholdMicros) return true;
+    for (int i = 0; i < span.tagCount; i++) {
+      if (span.tagKeys[i].equals(Constants.ERROR)) return true;
+    }
+    return false;
+  }
+
+  @Override public String toString() {
+    return "TailCapture(" + slots.length + ")";
+  }
+}
@@ -1,6 +1,6 @@
 package brave.propagation;
 
-import brave.internal.HexCodec;
+import brave.internal.Nullable;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -75,10 +75,10 @@ public final class B3Propagation<K> implements Propagation<K> {
 
     @Override public void inject(TraceContext traceContext, C carrier) {
       setter.put(carrier, propagation.traceIdKey, traceContext.traceIdString());
-      setter.put(carrier, propagation.spanIdKey, HexCodec.toLowerHex(traceContext.spanId()));
-      if (traceContext.parentId() != null) {
-        setter.put(carrier, propagation.parentSpanIdKey,
-            HexCodec.toLowerHex(traceContext.parentId()));
+      setter.put(carrier, propagation.spanIdKey, traceContext.spanIdString());
+      String parentIdString = traceContext.parentIdString();
+      if (parentIdString != null) {
+        setter.put(carrier, propagation.parentSpanIdKey, parentIdString);
       }
       if (traceContext.sampled() != null) {
         setter.put(carrier, propagation.sampledKey, traceContext.sampled() ? "1" : "0");
@@ -94,6 +94,12 @@ public final class B3Propagation<K> implements Propagation<K> {
     return new B3Extractor(this, getter);
   }
 
+  /** Like {@link #extractor(Getter)}, except values are parsed without converting to String. */
+  public <C> TraceContext.Extractor<C> charSequenceExtractor(CharSequenceGetter<C, K> getter) {
+    if (getter == null) throw new NullPointerException("getter == null");
+    return new B3CharSequenceExtractor<>(this, getter);
+  }
+
   static final class B3Extractor<C, K> implements TraceContext.Extractor<C> {
     final B3Propagation<K> propagation;
     final Getter<C, K> getter;
@@ -105,29 +111,71 @@ public final class B3Propagation<K> implements Propagation<K> {
 
     @Override public TraceContextOrSamplingFlags extract(C carrier) {
       if (carrier == null) throw new NullPointerException("carrier == null");
+      return B3Propagation.extract(
+          getter.get(carrier, propagation.traceIdKey),
+          getter.get(carrier, propagation.spanIdKey),
+          getter.get(carrier, propagation.parentSpanIdKey),
+          getter.get(carrier, propagation.sampledKey),
+          getter.get(carrier, propagation.debugKey)
+      );
+    }
+  }
 
-      String sampledString = getter.get(carrier, propagation.sampledKey);
-      // Official sampled value is 1, though some old instrumentation send true
-      Boolean sampled = sampledString != null
-          ? sampledString.equals("1") || sampledString.equalsIgnoreCase("true")
-          : null;
-      boolean debug = "1".equals(getter.get(carrier, propagation.debugKey));
-      String traceIdString = getter.get(carrier, propagation.traceIdKey);
-      TraceContext.Builder result = TraceContext.newBuilder().sampled(sampled).debug(debug);
-      if (traceIdString != null) {
-        result.traceIdHigh(
-            traceIdString.length() == 32 ? lowerHexToUnsignedLong(traceIdString, 0) : 0);
-        result.traceId(lowerHexToUnsignedLong(traceIdString));
-      }
-      String spanIdString = getter.get(carrier, propagation.spanIdKey);
-      if (spanIdString != null) {
-        result.spanId(lowerHexToUnsignedLong(spanIdString));
-      }
-      String parentSpanIdString = getter.get(carrier, propagation.parentSpanIdKey);
-      if (parentSpanIdString != null) {
-        result.parentId(lowerHexToUnsignedLong(parentSpanIdString));
-      }
-      return TraceContextOrSamplingFlags.create(result);
+  static final class B3CharSequenceExtractor<C, K> implements TraceContext.Extractor<C> {
+    final B3Propagation<K> propagation;
+    final CharSequenceGetter<C, K> getter;
+
+    B3CharSequenceExtractor(B3Propagation<K> propagation, CharSequenceGetter<C, K> getter) {
+      this.propagation = propagation;
+      this.getter = getter;
+    }
+
+    @Override public TraceContextOrSamplingFlags extract(C carrier) {
+      if (carrier == null) throw new NullPointerException("carrier == null");
+      return B3Propagation.extract(
+          getter.get(carrier, propagation.traceIdKey),
+          getter.get(carrier, propagation.spanIdKey),
+          getter.get(carrier, propagation.parentSpanIdKey),
+          getter.get(carrier, propagation.sampledKey),
+          getter.get(carrier, propagation.debugKey)
+      );
+    }
+  }
+
+  static TraceContextOrSamplingFlags extract(@Nullable CharSequence traceId,
+      @Nullable CharSequence spanId, @Nullable CharSequence parentSpanId,
+      @Nullable CharSequence sampled, @Nullable CharSequence debug) {
+    TraceContext.Builder result = TraceContext.newBuilder()
+        .sampled(parseSampled(sampled))
+        .debug(debug != null && contentEquals("1", debug, false));
+    if (traceId != null) {
+      result.traceIdHigh(traceId.length() == 32 ? lowerHexToUnsignedLong(traceId, 0) : 0);
+      result.traceId(lowerHexToUnsignedLong(traceId));
+    }
+    if (spanId != null) {
+      result.spanId(lowerHexToUnsignedLong(spanId));
+    }
+    if (parentSpanId != null) {
+      result.parentId(lowerHexToUnsignedLong(parentSpanId));
+    }
+    return TraceContextOrSamplingFlags.create(result);
+  }
+
+  /** Official sampled value is 1, though some old instrumentation send true */
+  @Nullable static Boolean parseSampled(@Nullable CharSequence sampled) {
+    if (sampled == null) return null;
+    return contentEquals("1", sampled, false) || contentEquals("true", sampled, true);
+  }
+
+  /** Compares without converting the value to a String. {@code expected} must be lowercase. */
+  static boolean contentEquals(String expected, CharSequence value, boolean ignoreCase) {
+    int length = expected.length();
+    if (value.length() != length) return false;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (ignoreCase) c = Character.toLowerCase(c);
+      if (expected.charAt(i) != c) return false;
     }
+    return true;
   }
 }
@@ -0,0 +1,210 @@
+package brave.propagation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static brave.internal.HexCodec.lowerHexToUnsignedLong;
+
+/**
+ * Implements the single header form of <a href="https://github.com/openzipkin/b3-propagation">B3
+ * Propagation</a>: {@code b3: {traceId}-{spanId}-{sampled}-{parentSpanId}}, where the last two
+ * fields are optional. For example:
+ * <pre>{@code
+ * b3: 80f198ee56343ba864fe8b2a57d3eff7-e457b5a2e4d86bd1-1-05e3ac9a4f6e3b90
+ * }</pre>
+ *
+ * <p>Sampled is "1" or "0", or "d" for debug. When there are no identifiers, the header can be
+ * only the sampled field, for example {@code b3: 0}.
+ *
+ * <p>Compared to {@link B3Propagation}, this writes one header instead of up to five, and reads
+ * one header in a single pass. As not all peers understand this form, the extractor falls back to
+ * the multiple header form when the {@code b3} header is absent.
+ */
+public final class B3SinglePropagation<K> implements Propagation<K> {
+
+  public static <K> B3SinglePropagation<K> create(KeyFactory<K> keyFactory) {
+    return new B3SinglePropagation<>(keyFactory);
+  }
+
+  static final String B3_NAME = "b3";
+
+  final K b3Key;
+  final B3Propagation<K> multi;
+  final List<K> fields;
+
+  B3SinglePropagation(KeyFactory<K> keyFactory) {
+    this.b3Key = keyFactory.create(B3_NAME);
+    this.multi = B3Propagation.create(keyFactory);
+    List<K> fields = new ArrayList<>();
+    fields.add(b3Key);
+    fields.addAll(multi.keys());
+    this.fields = Collections.unmodifiableList(fields);
+  }
+
+  /** Includes the multiple header form, as the extractor reads it when {@code b3} is absent. */
+  @Override public List<K> keys() {
+    return fields;
+  }
+
+  @Override public <C> TraceContext.Injector<C> injector(Setter<C, K> setter) {
+    if (setter == null) throw new NullPointerException("setter == null");
+    return new B3SingleInjector<>(this, setter);
+  }
+
+  static final class B3SingleInjector<C, K> implements TraceContext.Injector<C> {
+    final B3SinglePropagation<K> propagation;
+    final Setter<C, K> setter;
+
+    B3SingleInjector(B3SinglePropagation<K> propagation, Setter<C, K> setter) {
+      this.propagation = propagation;
+      this.setter = setter;
+    }
+
+    @Override public void inject(TraceContext traceContext, C carrier) {
+      setter.put(carrier, propagation.b3Key, writeB3SingleFormat(traceContext));
+    }
+  }
+
+  static String writeB3SingleFormat(TraceContext context) {
+    String traceId = context.traceIdString(), spanId = context.spanIdString();
+    Boolean sampled = context.sampled();
+    char sampledChar = context.debug() ? 'd' : sampled == null ? 0 : sampled ? '1' : '0';
+    // the parent can only be written after the sampled field
+    String parentId = sampledChar != 0 ? context.parentIdString() : null;
+
+    int length = traceId.length() + 1 + spanId.length();
+    if (sampledChar != 0) length += 2;
+    if (parentId != null) length += 1 + parentId.length();
+
+    char[] result = new char[length];
+    int pos = write(traceId, result, 0);
+    result[pos++] = '-';
+    pos = write(spanId, result, pos);
+    if (sampledChar != 0) {
+      result[pos++] = '-';
+      result[pos++] = sampledChar;
+    }
+    if (parentId != null) {
+      result[pos++] = '-';
+      write(parentId, result, pos);
+    }
+    return new String(result);
+  }
+
+  static int write(String value, char[] dest, int pos) {
+    int length = value.length();
+    value.getChars(0, length, dest, pos);
+    return pos + length;
+  }
+
+  @Override public <C> TraceContext.Extractor<C> extractor(Getter<C, K> getter) {
+    if (getter == null) throw new NullPointerException("getter == null");
+    return new B3SingleExtractor<>(this, getter);
+  }
+
+  static final class B3SingleExtractor<C, K> implements TraceContext.Extractor<C> {
+    final K b3Key;
+    final Getter<C, K> getter;
+    final TraceContext.Extractor<C> multi;
+
+    B3SingleExtractor(B3SinglePropagation<K> propagation, Getter<C, K> getter) {
+      this.b3Key = propagation.b3Key;
+      this.getter = getter;
+      this.multi = propagation.multi.extractor(getter);
+    }
+
+    @Override public TraceContextOrSamplingFlags extract(C carrier) {
+      if (carrier == null) throw new NullPointerException("carrier == null");
+      String b3 = getter.get(carrier, b3Key);
+      if (b3 == null) return multi.extract(carrier);
+      return parseB3SingleFormat(b3);
+    }
+  }
+
+  /** Like {@link #extractor(Getter)}, except values are parsed without converting to String. */
+  public <C> TraceContext.Extractor<C> charSequenceExtractor(CharSequenceGetter<C, K> getter) {
+    if (getter == null) throw new NullPointerException("getter == null");
+    return new B3SingleCharSequenceExtractor<>(this, getter);
+  }
+
+  static final class B3SingleCharSequenceExtractor<C, K> implements TraceContext.Extractor<C> {
+    final K b3Key;
+    final CharSequenceGetter<C, K> getter;
+    final TraceContext.Extractor<C> multi;
+
+    B3SingleCharSequenceExtractor(B3SinglePropagation<K> propagation,
+        CharSequenceGetter<C, K> getter) {
+      this.b3Key = propagation.b3Key;
+      this.getter = getter;
+      this.multi = propagation.multi.charSequenceExtractor(getter);
+    }
+
+    @Override public TraceContextOrSamplingFlags extract(C carrier) {
+      if (carrier == null) throw new NullPointerException("carrier == null");
+      CharSequence b3 = getter.get(carrier, b3Key);
+      if (b3 == null) return multi.extract(carrier);
+      return parseB3SingleFormat(b3);
+    }
+  }
+
+  /**
+   * Parses the header in one pass over its characters.
+   *
+   * @throws NumberFormatException if the value is malformed
+   */
+  static TraceContextOrSamplingFlags parseB3SingleFormat(CharSequence b3) {
+    int length = b3.length();
+    if (length == 1) { // only sampling flags
+      return TraceContextOrSamplingFlags.create(parseSampled(b3, 0));
+    }
+
+    TraceContext.Builder result = TraceContext.newBuilder();
+    int pos;
+    if (length >= 33 && b3.charAt(32) == '-') {
+      result.traceIdHigh(lowerHexToUnsignedLong(b3, 0));
+      result.traceId(lowerHexToUnsignedLong(b3, 16));
+      pos = 33;
+    } else if (length >= 17 && b3.charAt(16) == '-') {
+      result.traceId(lowerHexToUnsignedLong(b3, 0));
+      pos = 17;
+    } else {
+      throw malformed(b3);
+    }
+
+    if (length < pos + 16) throw malformed(b3);
+    result.spanId(lowerHexToUnsignedLong(b3, pos));
+    pos += 16;
+
+    if (pos < length) {
+      if (length < pos + 2 || b3.charAt(pos) != '-') throw malformed(b3);
+      SamplingFlags flags = parseSampled(b3, pos + 1);
+      result.sampled(flags.sampled()).debug(flags.debug());
+      pos += 2;
+    }
+
+    if (pos < length) {
+      if (length != pos + 17 || b3.charAt(pos) != '-') throw malformed(b3);
+      result.parentId(lowerHexToUnsignedLong(b3, pos + 1));
+    }
+    return TraceContextOrSamplingFlags.create(result);
+  }
+
+  static SamplingFlags parseSampled(CharSequence b3, int pos) {
+    switch (b3.charAt(pos)) {
+      case '1':
+        return SamplingFlags.SAMPLED;
+      case '0':
+        return SamplingFlags.NOT_SAMPLED;
+      case 'd':
+        return SamplingFlags.DEBUG;
+      default:
+        throw malformed(b3);
+    }
+  }
+
+  static NumberFormatException malformed(CharSequence b3) {
+    return new NumberFormatException(
+        b3 + " should be in the format {traceId}-{spanId}-{sampled}-{parentSpanId}");
+  }
+}
@@ -0,0 +1,283 @@
+package brave.propagation;
+
+import brave.internal.Nullable;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Injects and extracts {@link TraceContext trace identifiers} as a single binary value, for
+ * carriers that hold bytes. For example, gRPC binary metadata or message headers.
+ *
+ * <p>The layout is fixed-width and big-endian, the same as {@code
+ * com.github.kristofa.brave.SpanId.bytes()}, so Brave 3 and 4 can read each other's values:
+ * <pre>
+ * 64-bit trace ID: span ID, parent ID, trace ID, flags (32 bytes)
+ * 128-bit trace ID: span ID, parent ID, trace ID high, trace ID, flags (40 bytes)
+ * </pre>
+ *
+ * <p>Flags are {@code 1} for debug, {@code 2} when sampled is set, {@code 4} for sampled and
+ * {@code 8} for a root span. A root span writes its own ID in the parent ID position.
+ *
+ * <p>The codec methods, such as {@link #write(TraceContext, ByteBuffer)}, read and write caller
+ * supplied arrays or buffers directly, without encoding identifiers as text.
+ *
+ * <h3>Example: gRPC</h3>
+ * <pre>{@code
+ * BinaryPropagation<Metadata.Key<byte[]>> propagation = BinaryPropagation.create(
+ *     name -> Metadata.Key.of(name, Metadata.BINARY_BYTE_MARSHALLER));
+ * TraceContext.Injector<Metadata> injector = propagation.injector(Metadata::put);
+ * TraceContext.Extractor<Metadata> extractor = propagation.extractor(Metadata::get);
+ * }</pre>
+ *
+ * @param <K> Usually, but not always a String
+ */
+public final class BinaryPropagation<K> {
+
+  public static <K> BinaryPropagation<K> create(Propagation.KeyFactory<K> keyFactory) {
+    return new BinaryPropagation<>(keyFactory);
+  }
+
+  /** Ends in "-bin" as required for binary values in gRPC metadata. */
+  static final String KEY_NAME = "b3-bin";
+
+  static final int FLAG_DEBUG = 1 << 0;
+  static final int FLAG_SAMPLING_SET = 1 << 1;
+  static final int FLAG_SAMPLED = 1 << 2;
+  static final int FLAG_IS_ROOT = 1 << 3;
+
+  /** Size of a context with a 64-bit trace ID. */
+  public static final int SIZE_64 = 32;
+  /** Size of a context with a 128-bit trace ID. */
+  public static final int SIZE_128 = 40;
+
+  final K key;
+  final List<K> fields;
+
+  BinaryPropagation(Propagation.KeyFactory<K> keyFactory) {
+    this.key = keyFactory.create(KEY_NAME);
+    this.fields = Collections.singletonList(key);
+  }
+
+  /** The propagation fields defined */
+  public List<K> keys() {
+    return fields;
+  }
+
+  /** Replaces a propagated key with the given value */
+  public interface Setter<C, K> {
+    /** @param value owned by the carrier after this call, so it is never re-used. */
+    void put(C carrier, K key, byte[] value);
+  }
+
+  /** Gets the first value of the given propagation key or returns null */
+  public interface Getter<C, K> {
+    @Nullable byte[] get(C carrier, K key);
+  }
+
+  public <C> TraceContext.Injector<C> injector(Setter<C, K> setter) {
+    if (setter == null) throw new NullPointerException("setter == null");
+    return new BinaryInjector<>(this, setter);
+  }
+
+  public <C> TraceContext.Extractor<C> extractor(Getter<C, K> getter) {
+    if (getter == null) throw new NullPointerException("getter == null");
+    return new BinaryExtractor<>(this, getter);
+  }
+
+  static final class BinaryInjector<C, K> implements TraceContext.Injector<C> {
+    final K key;
+    final Setter<C, K> setter;
+
+    BinaryInjector(BinaryPropagation<K> propagation, Setter<C, K> setter) {
+      this.key = propagation.key;
+      this.setter = setter;
+    }
+
+    @Override public void inject(TraceContext traceContext, C carrier) {
+      setter.put(carrier, key, toBytes(traceContext));
+    }
+  }
+
+  static final class BinaryExtractor<C, K> implements TraceContext.Extractor<C> {
+    final K key;
+    final Getter<C, K> getter;
+
+    BinaryExtractor(BinaryPropagation<K> propagation, Getter<C, K> getter) {
+      this.key = propagation.key;
+      this.getter = getter;
+    }
+
+    @Override public TraceContextOrSamplingFlags extract(C carrier) {
+      if (carrier == null) throw new NullPointerException("carrier == null");
+      byte[] bytes = getter.get(carrier, key);
+      if (bytes == null) return TraceContextOrSamplingFlags.create(SamplingFlags.EMPTY);
+      return TraceContextOrSamplingFlags.create(read(bytes, 0, bytes.length));
+    }
+  }
+
+  /** Returns {@link #SIZE_128} if the context has a 128-bit trace ID, or {@link #SIZE_64}. */
+  public static int sizeInBytes(TraceContext context) {
+    return context.traceIdHigh() != 0 ? SIZE_128 : SIZE_64;
+  }
+
+  public static byte[] toBytes(TraceContext context) {
+    byte[] result = new byte[sizeInBytes(context)];
+    write(context, result, 0);
+    return result;
+  }
+
+  /**
+   * Writes the context into the array, starting at the offset.
+   *
+   * @return the count of bytes written, which is {@link #sizeInBytes(TraceContext)}
+   * @throws IndexOutOfBoundsException if there isn't room for the context
+   */
+  public static int write(TraceContext context, byte[] dest, int offset) {
+    if (context == null) throw new NullPointerException("context == null");
+    if (dest == null) throw new NullPointerException("dest == null");
+    int size = sizeInBytes(context);
+    if (offset < 0 || offset > dest.length - size) {
+      throw new IndexOutOfBoundsException(
+          "need " + size + " bytes at offset " + offset + ", but length is " + dest.length);
+    }
+    int pos = writeLong(dest, offset, context.spanId);
+    pos = writeLong(dest, pos, parentId(context));
+    if (context.traceIdHigh != 0) pos = writeLong(dest, pos, context.traceIdHigh);
+    pos = writeLong(dest, pos, context.traceId);
+    writeLong(dest, pos, flags(context));
+    return size;
+  }
+
+  /**
+   * Writes the context at the buffer's position, advancing it by {@link
+   * #sizeInBytes(TraceContext)}. Values are big-endian regardless of the buffer's byte order.
+   *
+   * @throws BufferOverflowException if there isn't room for the context
+   */
+  public static void write(TraceContext context, ByteBuffer dest) {
+    if (context == null) throw new NullPointerException("context == null");
+    if (dest == null) throw new NullPointerException("dest == null");
+    boolean bigEndian = dest.order() == ByteOrder.BIG_ENDIAN;
+    if (dest.remaining() < sizeInBytes(context)) throw new BufferOverflowException();
+    putLong(dest, context.spanId, bigEndian);
+    putLong(dest, parentId(context), bigEndian);
+    if (context.traceIdHigh != 0) putLong(dest, context.traceIdHigh, bigEndian);
+    putLong(dest, context.traceId, bigEndian);
+    putLong(dest, flags(context), bigEndian);
+  }
+
+  /**
+   * Reads a context of {@code length} bytes from the array, starting at the offset.
+   *
+   * @throws IllegalArgumentException if length isn't {@link #SIZE_64} or {@link #SIZE_128}
+   */
+  public static TraceContext read(byte[] src, int offset, int length) {
+    if (src == null) throw new NullPointerException("src == null");
+    checkLength(length);
+    if (offset < 0 || offset > src.length - length) {
+      throw new IndexOutOfBoundsException(
+          "need " + length + " bytes at offset " + offset + ", but length is " + src.length);
+    }
+    long spanId = readLong(src, offset);
+    long parentId = readLong(src, offset + 8);
+    long traceIdHigh = 0L;
+    int pos = offset + 16;
+    if (length == SIZE_128) {
+      traceIdHigh = readLong(src, pos);
+      pos += 8;
+    }
+    long traceId = readLong(src, pos);
+    long flags = readLong(src, pos + 8);
+    return newContext(traceIdHigh, traceId, spanId, parentId, flags);
+  }
+
+  /**
+   * Reads a context from all remaining bytes in the buffer, advancing its position to the limit.
+   * Values are read big-endian regardless of the buffer's byte order.
+   *
+   * @throws IllegalArgumentException if the remaining bytes aren't {@link #SIZE_64} or {@link
+   * #SIZE_128}
+   */
+  public static TraceContext read(ByteBuffer src) {
+    if (src == null) throw new NullPointerException("src == null");
+    int length = src.remaining();
+    checkLength(length);
+    boolean bigEndian = src.order() == ByteOrder.BIG_ENDIAN;
+    long spanId = getLong(src, bigEndian);
+    long parentId = getLong(src, bigEndian);
+    long traceIdHigh = length == SIZE_128 ? getLong(src, bigEndian) : 0L;
+    long traceId = getLong(src, bigEndian);
+    long flags = getLong(src, bigEndian);
+    return newContext(traceIdHigh, traceId, spanId, parentId, flags);
+  }
+
+  static void checkLength(int length) {
+    if (length != SIZE_64 && length != SIZE_128) {
+      throw new IllegalArgumentException(
+          "length " + length + " != " + SIZE_64 + " or " + SIZE_128);
+    }
+  }
+
+  /** Like Brave 3, a root span carries its own ID where the parent would be. */
+  static long parentId(TraceContext context) {
+    return (context.flags & TraceContext.FLAG_HAS_PARENT) != 0 ? context.parentId : context.spanId;
+  }
+
+  static long flags(TraceContext context) {
+    long result = 0L;
+    if ((context.flags & TraceContext.FLAG_DEBUG) != 0) result |= FLAG_DEBUG;
+    if ((context.flags & TraceContext.FLAG_SAMPLING_SET) != 0) result |= FLAG_SAMPLING_SET;
+    if ((context.flags & TraceContext.FLAG_SAMPLED) != 0) result |= FLAG_SAMPLED;
+    if ((context.flags & TraceContext.FLAG_HAS_PARENT) == 0) result |= FLAG_IS_ROOT;
+    return result;
+  }
+
+  static TraceContext newContext(long traceIdHigh, long traceId, long spanId, long parentId,
+      long flags) {
+    TraceContext.Builder result = TraceContext.newBuilder()
+        .traceIdHigh(traceIdHigh)
+        .traceId(traceId)
+        .spanId(spanId)
+        .debug((flags & FLAG_DEBUG) != 0);
+    if ((flags & FLAG_SAMPLING_SET) != 0) result.sampled((flags & FLAG_SAMPLED) != 0);
+    // Old Brave 3 versions marked a root span by setting all IDs the same instead of a flag
+    boolean root = (flags & FLAG_IS_ROOT) != 0 || (parentId == traceId && parentId == spanId);
+    if (!root) result.parentId(parentId);
+    return result.build();
+  }
+
+  static int writeLong(byte[] data, int pos, long v) {
+    data[pos + 0] = (byte) ((v >>> 56L) & 0xff);
+    data[pos + 1] = (byte) ((v >>> 48L) & 0xff);
+    data[pos + 2] = (byte) ((v >>> 40L) & 0xff);
+    data[pos + 3] = (byte) ((v >>> 32L) & 0xff);
+    data[pos + 4] = (byte) ((v >>> 24L) & 0xff);
+    data[pos + 5] = (byte) ((v >>> 16L) & 0xff);
+    data[pos + 6] = (byte) ((v >>> 8L) & 0xff);
+    data[pos + 7] = (byte) (v & 0xff);
+    return pos + 8;
+  }
+
+  static long readLong(byte[] data, int pos) {
+    return (data[pos] & 0xffL) << 56
+        | (data[pos + 1] & 0xffL) << 48
+        | (data[pos + 2] & 0xffL) << 40
+        | (data[pos + 3] & 0xffL) << 32
+        | (data[pos + 4] & 0xffL) << 24
+        | (data[pos + 5] & 0xffL) << 16
+        | (data[pos + 6] & 0xffL) << 8
+        | (data[pos + 7] & 0xffL);
+  }
+
+  static void putLong(ByteBuffer buffer, long v, boolean bigEndian) {
+    buffer.putLong(bigEndian ? v : Long.reverseBytes(v));
+  }
+
+  static long getLong(ByteBuffer buffer, boolean bigEndian) {
+    long v = buffer.getLong();
+    return bigEndian ? v : Long.reverseBytes(v);
+  }
+}
@@ -0,0 +1,256 @@
+package brave.propagation;
+
+import brave.internal.Nullable;
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * This makes a given span the current span by placing it in scope (usually but not always a
+ * thread local scope).
+ *
+ * <p>This type is an SPI, and intended to be used by implementors looking to change thread-local
+ * storage, or integrate with other contexts such as logging (MDC).
+ *
+ * @see MDCCurrentTraceContext
+ */
+public abstract class CurrentTraceContext {
+  /** Returns the current span in scope or null if there isn't one. */
+  public abstract @Nullable TraceContext get();
+
+  /**
+   * Sets the current span in scope until the returned object is closed. It is a programming error
+   * to drop or never close the result. Using try-with-resources is preferred for this reason.
+   *
+   * @param currentSpan span to place into scope or null to clear the scope
+   */
+  public abstract Scope newScope(@Nullable TraceContext currentSpan);
+
+  /**
+   * Wraps the input so that it executes with the same context as now. Only the current context
+   * reference is captured.
+   */
+  public <C> Callable<C> wrap(final Callable<C> task) {
+    if (task == null) throw new NullPointerException("task == null");
+    final TraceContext invocationContext = get();
+    return new Callable<C>() {
+      @Override public C call() throws Exception {
+        Scope scope = newScope(invocationContext);
+        try {
+          return task.call();
+        } finally {
+          scope.close();
+        }
+      }
+
+      @Override public String toString() {
+        return task.toString();
+      }
+    };
+  }
+
+  /**
+   * Wraps the input so that it executes with the same context as now. Only the current context
+   * reference is captured.
+   */
+  public Runnable wrap(final Runnable task) {
+    if (task == null) throw new NullPointerException("task == null");
+    final TraceContext invocationContext = get();
+    return new Runnable() {
+      @Override public void run() {
+        Scope scope = newScope(invocationContext);
+        try {
+          task.run();
+        } finally {
+          scope.close();
+        }
+      }
+
+      @Override public String toString() {
+        return task.toString();
+      }
+    };
+  }
+
+  /**
+   * Decorates the input such that the {@link #get() current trace context} at the time a task is
+   * scheduled is made current when the task is executed.
+   *
+   * <p>Asynchronous stages, such as those of {@code CompletableFuture}, run on the executor passed
+   * to their {@code *Async} methods. Pass the result of this method to propagate the context:
+   * <pre>{@code
+   * Executor executor = currentTraceContext.executor(ForkJoinPool.commonPool());
+   * CompletableFuture.supplyAsync(() -> lookup(id), executor)
+   *     .thenApplyAsync(user -> render(user), executor);
+   * }</pre>
+   */
+  public Executor executor(final Executor delegate) {
+    if (delegate == null) throw new NullPointerException("delegate == null");
+    return new Executor() {
+      @Override public void execute(Runnable task) {
+        delegate.execute(CurrentTraceContext.this.wrap(task));
+      }
+
+      @Override public String toString() {
+        return delegate.toString();
+      }
+    };
+  }
+
+  /**
+   * Decorates the input such that the {@link #get() current trace context} at the time a task is
+   * scheduled is made current when the task is executed. This includes {@code ForkJoinPool}, for
+   * tasks submitted as runnables or callables.
+   */
+  public ExecutorService executorService(ExecutorService delegate) {
+    if (delegate == null) throw new NullPointerException("delegate == null");
+    return new CurrentTraceContextExecutorService<ExecutorService>(this, delegate);
+  }
+
+  /**
+   * Like {@link #executorService(ExecutorService)}, except also for scheduled tasks. Periodic tasks
+   * run in the context current when they were scheduled.
+   */
+  public ScheduledExecutorService scheduledExecutorService(ScheduledExecutorService delegate) {
+    if (delegate == null) throw new NullPointerException("delegate == null");
+    return new CurrentTraceContextScheduledExecutorService(this, delegate);
+  }
+
+  /** A span remains in the scope it was bound to until close is called. */
+  public interface Scope extends Closeable {
+    /** No exceptions are thrown when unbinding a span scope. */
+    @Override void close();
+  }
+
+  /**
+   * Stores the current context in a thread-local stack, which is the default.
+   *
+   * <p>Opening and closing a scope doesn't allocate: scope objects are kept per thread and depth,
+   * and re-used. Closing a scope restores the context that was current when it was opened,
+   * unwinding any inner scopes that were leaked or not yet closed. A second close of the same
+   * scope, or a close from another thread, is ignored.
+   */
+  public static class Default extends CurrentTraceContext {
+    /** Scopes are visible only to the thread that opened them. */
+    public static Default create() {
+      return new Default(false);
+    }
+
+    /**
+     * Threads started while a scope is open begin with its context in scope. Use this when code
+     * spawns threads without an executor that propagates context.
+     */
+    public static Default inheritable() {
+      return new Default(true);
+    }
+
+    final ThreadLocal<ScopeStack> local;
+
+    Default(boolean inheritable) {
+      local = inheritable ? new InheritableThreadLocal<ScopeStack>() {
+        @Override protected ScopeStack initialValue() {
+          return new ScopeStack(Default.this);
+        }
+
+        /** Copies the parent's current context, as the child must not share its stack. */
+        @Override protected ScopeStack childValue(ScopeStack parentValue) {
+          ScopeStack result = new ScopeStack(Default.this);
+          result.current = parentValue.current;
+          return result;
+        }
+      } : new ThreadLocal<ScopeStack>() {
+        @Override protected ScopeStack initialValue() {
+          return new ScopeStack(Default.this);
+        }
+      };
+    }
+
+    @Override public TraceContext get() {
+      return local.get().current;
+    }
+
+    @Override public Scope newScope(@Nullable TraceContext currentSpan) {
+      Scope result = local.get().push(currentSpan);
+      scopeChanged(currentSpan);
+      return result;
+    }
+
+    /** Called after the current context changes. For example, to update a logging context. */
+    void scopeChanged(@Nullable TraceContext current) {
+    }
+
+    @Override public String toString() {
+      return local instanceof InheritableThreadLocal
+          ? "InheritableCurrentTraceContext"
+          : "ThreadLocalCurrentTraceContext";
+    }
+  }
+
+  /** The contexts in scope on a thread. Only that thread reads or writes it. */
+  static final class ScopeStack {
+    final Default owner;
+    @Nullable TraceContext current;
+    TraceContext[] previous = new TraceContext[4];
+    /** Open scopes by depth. */
+    StackScope[] open = new StackScope[4];
+    /**
+     * Two re-usable scopes per depth, alternated so that a stale close of the scope previously
+     * opened at a depth doesn't close the one opened after it.
+     */
+    StackScope[] pool = new StackScope[8];
+    int size;
+
+    ScopeStack(Default owner) {
+      this.owner = owner;
+    }
+
+    StackScope push(@Nullable TraceContext context) {
+      if (size == previous.length) {
+        previous = Arrays.copyOf(previous, size * 2);
+        open = Arrays.copyOf(open, size * 2);
+        pool = Arrays.copyOf(pool, size * 4);
+      }
+      int index = size * 2;
+      if (pool[index] == open[size]) index++; // the last scope opened at this depth
+      StackScope scope = pool[index];
+      if (scope == null) scope = pool[index] = new StackScope(this, size + 1);
+      scope.closed = false;
+      open[size] = scope;
+      previous[size++] = current;
+      current = context;
+      return scope;
+    }
+
+    /** Restores the context that was current when the scope at this depth was opened. */
+    void unwindTo(int depth) {
+      while (size >= depth) {
+        open[--size].closed = true; // leave the reference, to alternate on the next push
+        current = previous[size];
+        previous[size] = null;
+      }
+      owner.scopeChanged(current);
+    }
+  }
+
+  /** A re-usable scope at a given depth of a thread's {@link ScopeStack}. */
+  static final class StackScope implements Scope {
+    final ScopeStack stack;
+    final int depth;
+    boolean closed = true;
+
+    StackScope(ScopeStack stack, int depth) {
+      this.stack = stack;
+      this.depth = depth;
+    }
+
+    /** Closes this scope and any inside it, unless already closed or called on another thread. */
+    @Override public void close() {
+      if (closed) return;
+      if (stack.owner.local.get() != stack) return; // closed from another thread
+      stack.unwindTo(depth);
+    }
+  }
+}
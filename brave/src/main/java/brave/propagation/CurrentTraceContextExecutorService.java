@@ -0,0 +1,92 @@
+package brave.propagation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/** @see CurrentTraceContext#executorService(ExecutorService) */
+class CurrentTraceContextExecutorService<E extends ExecutorService> implements ExecutorService {
+  final CurrentTraceContext currentTraceContext;
+  final E delegate;
+
+  CurrentTraceContextExecutorService(CurrentTraceContext currentTraceContext, E delegate) {
+    this.currentTraceContext = currentTraceContext;
+    this.delegate = delegate;
+  }
+
+  @Override public void execute(Runnable task) {
+    delegate.execute(currentTraceContext.wrap(task));
+  }
+
+  @Override public Future<?> submit(Runnable task) {
+    return delegate.submit(currentTraceContext.wrap(task));
+  }
+
+  @Override public <T> Future<T> submit(Runnable task, T result) {
+    return delegate.submit(currentTraceContext.wrap(task), result);
+  }
+
+  @Override public <T> Future<T> submit(Callable<T> task) {
+    return delegate.submit(currentTraceContext.wrap(task));
+  }
+
+  @Override public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks)
+      throws InterruptedException {
+    return delegate.invokeAll(wrap(tasks));
+  }
+
+  @Override public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks,
+      long timeout, TimeUnit unit) throws InterruptedException {
+    return delegate.invokeAll(wrap(tasks), timeout, unit);
+  }
+
+  @Override public <T> T invokeAny(Collection<? extends Callable<T>> tasks)
+      throws InterruptedException, ExecutionException {
+    return delegate.invokeAny(wrap(tasks));
+  }
+
+  @Override public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout,
+      TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+    return delegate.invokeAny(wrap(tasks), timeout, unit);
+  }
+
+  /** Wraps each task, as they are all submitted in the current context. */
+  <T> Collection<? extends Callable<T>> wrap(Collection<? extends Callable<T>> tasks) {
+    List<Callable<T>> result = new ArrayList<Callable<T>>(tasks.size());
+    for (Callable<T> task : tasks) {
+      result.add(currentTraceContext.wrap(task));
+    }
+    return result;
+  }
+
+  @Override public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override public List<Runnable> shutdownNow() {
+    return delegate.shutdownNow();
+  }
+
+  @Override public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  @Override public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  @Override public boolean awaitTermination(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+
+  @Override public String toString() {
+    return delegate.toString();
+  }
+}
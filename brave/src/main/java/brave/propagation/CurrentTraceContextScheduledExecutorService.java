@@ -0,0 +1,38 @@
+package brave.propagation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/** @see CurrentTraceContext#scheduledExecutorService(ScheduledExecutorService) */
+final class CurrentTraceContextScheduledExecutorService
+    extends CurrentTraceContextExecutorService<ScheduledExecutorService>
+    implements ScheduledExecutorService {
+
+  CurrentTraceContextScheduledExecutorService(CurrentTraceContext currentTraceContext,
+      ScheduledExecutorService delegate) {
+    super(currentTraceContext, delegate);
+  }
+
+  @Override public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return delegate.schedule(currentTraceContext.wrap(command), delay, unit);
+  }
+
+  @Override public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay,
+      TimeUnit unit) {
+    return delegate.schedule(currentTraceContext.wrap(callable), delay, unit);
+  }
+
+  @Override public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay,
+      long period, TimeUnit unit) {
+    return delegate.scheduleAtFixedRate(currentTraceContext.wrap(command), initialDelay, period,
+        unit);
+  }
+
+  @Override public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay,
+      long delay, TimeUnit unit) {
+    return delegate.scheduleWithFixedDelay(currentTraceContext.wrap(command), initialDelay, delay,
+        unit);
+  }
+}
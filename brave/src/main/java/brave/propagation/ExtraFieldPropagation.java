@@ -0,0 +1,261 @@
+package brave.propagation;
+
+import brave.internal.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Propagates extra fields, such as a tenant or request priority, alongside the trace identifiers
+ * of another format, usually {@link B3Propagation}.
+ *
+ * <p>Values live on the {@link TraceContext}, in an array with one slot per field name. Child
+ * contexts share their parent's array, and {@link Factory#set(TraceContext, String, String)
+ * setting} a field copies it, so fields that are never changed cost no more than a reference.
+ *
+ * <pre>{@code
+ * factory = ExtraFieldPropagation.newFactory(Propagation.Factory.B3, "x-tenant");
+ * propagation = factory.create(Propagation.KeyFactory.STRING);
+ *
+ * // fields are extracted with the trace identifiers, and carried to children
+ * context = propagation.extractor(Request::getHeader).extract(request).context();
+ * tenant = ExtraFieldPropagation.get(context, "x-tenant");
+ *
+ * // when setting a field, use the result before starting a span, and for any children
+ * context = factory.set(context, "x-tenant", "acme");
+ * }</pre>
+ *
+ * <p>Fields are only propagated with trace identifiers. If an incoming request has only sampling
+ * flags, its extra fields are dropped.
+ *
+ * @param <K> Usually, but not always a String
+ */
+public final class ExtraFieldPropagation<K> implements Propagation<K> {
+
+  /**
+   * Wraps an underlying propagation implementation, pushing one or more fields.
+   *
+   * @param names the names of the fields, which are lowercased
+   */
+  public static Factory newFactory(Propagation.Factory delegate, String... names) {
+    if (names == null) throw new NullPointerException("names == null");
+    return newFactory(delegate, Arrays.asList(names));
+  }
+
+  /** @see #newFactory(Propagation.Factory, String...) */
+  public static Factory newFactory(Propagation.Factory delegate, Collection<String> names) {
+    if (delegate == null) throw new NullPointerException("delegate == null");
+    if (names == null) throw new NullPointerException("names == null");
+    Set<String> validated = new LinkedHashSet<>();
+    for (String name : names) {
+      if (name == null) throw new NullPointerException("name == null");
+      String lowercase = name.trim().toLowerCase(Locale.ROOT);
+      if (lowercase.isEmpty()) throw new IllegalArgumentException("name is empty");
+      validated.add(lowercase);
+    }
+    if (validated.isEmpty()) throw new IllegalArgumentException("no field names");
+    return new Factory(delegate, validated.toArray(new String[validated.size()]));
+  }
+
+  /** Returns the value of the field with the specified name, or null if it isn't set. */
+  @Nullable public static String get(TraceContext context, String name) {
+    if (context == null) throw new NullPointerException("context == null");
+    if (name == null) throw new NullPointerException("name == null");
+    Extra extra = context.extra;
+    if (extra == null) return null;
+    int index = extra.indexOf(name.toLowerCase(Locale.ROOT));
+    return index != -1 ? extra.values[index] : null;
+  }
+
+  public static final class Factory implements Propagation.Factory {
+    final Propagation.Factory delegate;
+    final String[] names;
+
+    Factory(Propagation.Factory delegate, String[] names) {
+      this.delegate = delegate;
+      this.names = names;
+    }
+
+    @Override public <K> ExtraFieldPropagation<K> create(KeyFactory<K> keyFactory) {
+      return new ExtraFieldPropagation<>(this, keyFactory);
+    }
+
+    /**
+     * Returns a copy of the context with the field set to the value. The input context and its
+     * existing children are unaffected, so use the result when creating children.
+     *
+     * <p>Call this before starting a span with the context, so that the result replaces it. A span
+     * already in progress stays recorded under the input context, which the tracer only weakly
+     * references. If only the result is kept, the input can be garbage collected and the span
+     * reported early as an orphan, so keep the span or its context until it finishes.
+     *
+     * @throws IllegalArgumentException if the name isn't one this factory propagates
+     */
+    public TraceContext set(TraceContext context, String name, @Nullable String value) {
+      if (context == null) throw new NullPointerException("context == null");
+      if (name == null) throw new NullPointerException("name == null");
+      Extra extra = context.extra != null && context.extra.names == names
+          ? context.extra
+          : new Extra(names, new String[names.length]).copyFrom(context.extra);
+      int index = extra.indexOf(name.toLowerCase(Locale.ROOT));
+      if (index == -1) {
+        throw new IllegalArgumentException(name + " is not in " + Arrays.toString(names));
+      }
+      Extra updated = extra.with(index, value);
+      if (updated == context.extra) return context;
+      return context.toBuilder().extra(updated).build();
+    }
+  }
+
+  /**
+   * Immutable values, indexed the same as the field names. This is copied when a value changes,
+   * so it is safe to share between a parent and its children.
+   */
+  static final class Extra {
+    final String[] names;
+    final String[] values;
+
+    Extra(String[] names, String[] values) {
+      this.names = names;
+      this.values = values;
+    }
+
+    int indexOf(String name) {
+      for (int i = 0; i < names.length; i++) {
+        if (names[i].equals(name)) return i;
+      }
+      return -1;
+    }
+
+    Extra with(int index, @Nullable String value) {
+      String current = values[index];
+      if (current == null ? value == null : current.equals(value)) return this;
+      String[] copy = values.clone();
+      copy[index] = value;
+      return new Extra(names, copy);
+    }
+
+    /** Retains values of other fields with the same name, when field configuration differs. */
+    Extra copyFrom(@Nullable Extra other) {
+      if (other == null) return this;
+      for (int i = 0; i < names.length; i++) {
+        int index = other.indexOf(names[i]);
+        if (index != -1) values[i] = other.values[index];
+      }
+      return this;
+    }
+
+    @Override public String toString() {
+      StringBuilder result = new StringBuilder("Extra{");
+      String separator = "";
+      for (int i = 0; i < names.length; i++) {
+        if (values[i] == null) continue;
+        result.append(separator).append(names[i]).append('=').append(values[i]);
+        separator = ", ";
+      }
+      return result.append('}').toString();
+    }
+  }
+
+  final Factory factory;
+  final Propagation<K> delegate;
+  final K[] extraKeys;
+  final List<K> keys;
+
+  ExtraFieldPropagation(Factory factory, KeyFactory<K> keyFactory) {
+    this.factory = factory;
+    this.delegate = factory.delegate.create(keyFactory);
+    List<K> extraKeys = new ArrayList<>();
+    for (String name : factory.names) extraKeys.add(keyFactory.create(name));
+    @SuppressWarnings("unchecked")
+    K[] array = (K[]) extraKeys.toArray();
+    this.extraKeys = array;
+    List<K> keys = new ArrayList<>(delegate.keys());
+    keys.addAll(extraKeys);
+    this.keys = Collections.unmodifiableList(keys);
+  }
+
+  /** Includes the keys of the delegate, followed by those of the extra fields. */
+  @Override public List<K> keys() {
+    return keys;
+  }
+
+  @Override public <C> TraceContext.Injector<C> injector(Setter<C, K> setter) {
+    if (setter == null) throw new NullPointerException("setter == null");
+    return new ExtraFieldInjector<>(this, setter);
+  }
+
+  @Override public <C> TraceContext.Extractor<C> extractor(Getter<C, K> getter) {
+    if (getter == null) throw new NullPointerException("getter == null");
+    return new ExtraFieldExtractor<>(this, getter);
+  }
+
+  static final class ExtraFieldInjector<C, K> implements TraceContext.Injector<C> {
+    final TraceContext.Injector<C> delegate;
+    final String[] names;
+    final K[] extraKeys;
+    final Setter<C, K> setter;
+
+    ExtraFieldInjector(ExtraFieldPropagation<K> propagation, Setter<C, K> setter) {
+      this.delegate = propagation.delegate.injector(setter);
+      this.names = propagation.factory.names;
+      this.extraKeys = propagation.extraKeys;
+      this.setter = setter;
+    }
+
+    @Override public void inject(TraceContext traceContext, C carrier) {
+      delegate.inject(traceContext, carrier);
+      Extra extra = traceContext.extra;
+      if (extra == null) return;
+      if (extra.names == names) { // usual case: no need to look up fields by name
+        for (int i = 0; i < extraKeys.length; i++) {
+          String value = extra.values[i];
+          if (value != null) setter.put(carrier, extraKeys[i], value);
+        }
+        return;
+      }
+      for (int i = 0; i < extraKeys.length; i++) {
+        int index = extra.indexOf(names[i]);
+        if (index != -1 && extra.values[index] != null) {
+          setter.put(carrier, extraKeys[i], extra.values[index]);
+        }
+      }
+    }
+  }
+
+  static final class ExtraFieldExtractor<C, K> implements TraceContext.Extractor<C> {
+    final TraceContext.Extractor<C> delegate;
+    final String[] names;
+    final K[] extraKeys;
+    final Getter<C, K> getter;
+
+    ExtraFieldExtractor(ExtraFieldPropagation<K> propagation, Getter<C, K> getter) {
+      this.delegate = propagation.delegate.extractor(getter);
+      this.names = propagation.factory.names;
+      this.extraKeys = propagation.extraKeys;
+      this.getter = getter;
+    }
+
+    @Override public TraceContextOrSamplingFlags extract(C carrier) {
+      TraceContextOrSamplingFlags result = delegate.extract(carrier);
+      if (result.context() == null) return result;
+
+      String[] values = null; // only allocated when there's an extra field present
+      for (int i = 0; i < extraKeys.length; i++) {
+        String value = getter.get(carrier, extraKeys[i]);
+        if (value == null) continue;
+        if (values == null) values = new String[extraKeys.length];
+        values[i] = value;
+      }
+      if (values == null) return result;
+      return TraceContextOrSamplingFlags.create(
+          result.context().toBuilder().extra(new Extra(names, values)).build()
+      );
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package brave.propagation;
+
+import brave.internal.Nullable;
+
+/**
+ * Adds the current trace and span IDs to a logging context (MDC) under the keys "traceId" and
+ * "spanId". They are removed when no span is in scope.
+ *
+ * <p>Brave doesn't depend on a logging library, so you adapt yours. For example, with SLF4J:
+ * <pre>{@code
+ * currentTraceContext = MDCCurrentTraceContext.create(new MDCCurrentTraceContext.MDC() {
+ *   public void put(String key, String value) {
+ *     org.slf4j.MDC.put(key, value);
+ *   }
+ *
+ *   public void remove(String key) {
+ *     org.slf4j.MDC.remove(key);
+ *   }
+ * });
+ * }</pre>
+ *
+ * <p>Scopes are stored as in {@link CurrentTraceContext.Default}. The MDC is updated when a scope
+ * opens and closes, which allocates the hex strings of the IDs.
+ */
+public final class MDCCurrentTraceContext extends CurrentTraceContext.Default {
+
+  /** Adapts the mapped diagnostic context of a logging library. */
+  public interface MDC {
+    void put(String key, String value);
+
+    void remove(String key);
+  }
+
+  /** Like {@link CurrentTraceContext.Default#create()}, except also updating the MDC. */
+  public static MDCCurrentTraceContext create(MDC mdc) {
+    return new MDCCurrentTraceContext(mdc, false);
+  }
+
+  /** Like {@link CurrentTraceContext.Default#inheritable()}, except also updating the MDC. */
+  public static MDCCurrentTraceContext inheritable(MDC mdc) {
+    return new MDCCurrentTraceContext(mdc, true);
+  }
+
+  final MDC mdc;
+
+  MDCCurrentTraceContext(MDC mdc, boolean inheritable) {
+    super(inheritable);
+    if (mdc == null) throw new NullPointerException("mdc == null");
+    this.mdc = mdc;
+  }
+
+  @Override void scopeChanged(@Nullable TraceContext current) {
+    if (current != null) {
+      mdc.put("traceId", current.traceIdString());
+      mdc.put("spanId", current.spanIdString());
+    } else {
+      mdc.remove("traceId");
+      mdc.remove("spanId");
+    }
+  }
+
+  @Override public String toString() {
+    return "MDCCurrentTraceContext(" + mdc + ")";
+  }
+}
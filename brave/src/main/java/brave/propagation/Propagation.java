@@ -23,6 +23,9 @@ public interface Propagation<K> {
   interface Factory {
     Factory B3 = B3Propagation::create;
 
+    /** Writes the single header form of B3, but reads either form. */
+    Factory B3_SINGLE = B3SinglePropagation::create;
+
     <K> Propagation<K> create(KeyFactory<K> keyFactory);
   }
 
@@ -58,4 +61,15 @@ public interface Propagation<K> {
    * @param getter invoked for each propagation key to get.
    */
   <C> TraceContext.Extractor<C> extractor(Getter<C, K> getter);
+
+  /**
+   * Like {@link Getter}, except the value needn't be a String. This allows carriers that hold
+   * header values as ASCII bytes, such as Netty's {@code AsciiString}, to be read without
+   * allocating a String for each value.
+   *
+   * @see B3Propagation#charSequenceExtractor(CharSequenceGetter)
+   */
+  interface CharSequenceGetter<C, K> {
+    @Nullable CharSequence get(C carrier, K key);
+  }
 }
@@ -1,7 +1,7 @@
 package brave.propagation;
 
+import brave.internal.HexCodec;
 import brave.internal.Nullable;
-import com.google.auto.value.AutoValue;
 
 import static brave.internal.HexCodec.writeHexLong;
 
@@ -14,8 +14,9 @@ import static brave.internal.HexCodec.writeHexLong;
  * port of {@code com.twitter.finagle.tracing.TraceId}. Unlike these mentioned, this type does not
  * expose a single binary representation. That's because propagation forms can now vary.
  */
-@AutoValue
-public abstract class TraceContext extends SamplingFlags {
+// Design note: this is hand-written instead of AutoValue, so that fields are primitive, flags are
+// packed into an int (like com.github.kristofa.brave.SpanId) and hex encodings can be cached.
+public final class TraceContext extends SamplingFlags {
 
   /**
    * Used to send the trace context downstream. For example, as http headers.
@@ -47,27 +48,66 @@ public abstract class TraceContext extends SamplingFlags {
   }
 
   public static Builder newBuilder() {
-    return new AutoValue_TraceContext.Builder().traceIdHigh(0L).debug(false).shared(false);
+    return new Builder();
+  }
+
+  static final int FLAG_DEBUG = 1 << 0;
+  /** When set, we can interpret {@link #FLAG_SAMPLED} as a set value. */
+  static final int FLAG_SAMPLING_SET = 1 << 1;
+  static final int FLAG_SAMPLED = 1 << 2;
+  static final int FLAG_SHARED = 1 << 3;
+  static final int FLAG_HAS_PARENT = 1 << 4;
+
+  final long traceIdHigh, traceId, parentId, spanId;
+  final int flags;
+  /** Shared with children until a field changes. Not considered in equals or hash code. */
+  @Nullable final ExtraFieldPropagation.Extra extra;
+  // Lazily encoded, as a context is often propagated multiple times. Racy initialization is fine
+  // as strings are immutable and the result is always the same.
+  String traceIdString, spanIdString, parentIdString;
+
+  TraceContext(Builder builder) { // no external implementations
+    this.traceIdHigh = builder.traceIdHigh;
+    this.traceId = builder.traceId;
+    this.parentId = builder.parentId;
+    this.spanId = builder.spanId;
+    this.flags = builder.flags;
+    this.extra = builder.extra;
+    this.traceIdString = builder.traceIdString;
   }
 
   /** When non-zero, the trace containing this span uses 128-bit trace identifiers. */
-  public abstract long traceIdHigh();
+  public long traceIdHigh() {
+    return traceIdHigh;
+  }
 
   /** Unique 8-byte identifier for a trace, set on all spans within it. */
-  public abstract long traceId();
+  public long traceId() {
+    return traceId;
+  }
 
   /** The parent's {@link #spanId} or null if this the root span in a trace. */
-  @Nullable public abstract Long parentId();
+  @Nullable public Long parentId() {
+    return (flags & FLAG_HAS_PARENT) != 0 ? parentId : null;
+  }
 
-  // override as auto-value can't currently read the super-class's nullable annotation.
-  @Override @Nullable public abstract Boolean sampled();
+  @Override @Nullable public Boolean sampled() {
+    if ((flags & FLAG_SAMPLING_SET) == 0) return null;
+    return (flags & FLAG_SAMPLED) != 0;
+  }
+
+  @Override public boolean debug() {
+    return (flags & FLAG_DEBUG) != 0;
+  }
 
   /**
    * Unique 8-byte identifier of this span within a trace.
    *
    * <p>A span is uniquely identified in storage by ({@linkplain #traceId}, {@linkplain #spanId}).
    */
-  public abstract long spanId();
+  public long spanId() {
+    return spanId;
+  }
 
   /**
    * True if we are contributing to a span started by another tracer (ex on a different host).
@@ -77,73 +117,201 @@ public abstract class TraceContext extends SamplingFlags {
    * the server side. However, the server shouldn't set span.timestamp or duration since it didn't
    * start the span.
    */
-  public abstract boolean shared();
+  public boolean shared() {
+    return (flags & FLAG_SHARED) != 0;
+  }
 
-  public abstract Builder toBuilder();
+  public Builder toBuilder() {
+    return new Builder(this);
+  }
 
   /** Returns the hex representation of the span's trace ID */
   public String traceIdString() {
-    if (traceIdHigh() != 0) {
-      char[] result = new char[32];
-      writeHexLong(result, 0, traceIdHigh());
-      writeHexLong(result, 16, traceId());
-      return new String(result);
-    }
-    char[] result = new char[16];
-    writeHexLong(result, 0, traceId());
-    return new String(result);
+    String result = traceIdString;
+    if (result == null) {
+      traceIdString = result = traceIdHigh != 0
+          ? HexCodec.toLowerHex(traceIdHigh, traceId)
+          : HexCodec.toLowerHex(traceId);
+    }
+    return result;
+  }
+
+  /** Returns the hex representation of the span's ID */
+  public String spanIdString() {
+    String result = spanIdString;
+    if (result == null) spanIdString = result = HexCodec.toLowerHex(spanId);
+    return result;
+  }
+
+  /** Returns the hex representation of the parent's span ID, or null if this is a root span. */
+  @Nullable public String parentIdString() {
+    if ((flags & FLAG_HAS_PARENT) == 0) return null;
+    String result = parentIdString;
+    if (result == null) parentIdString = result = HexCodec.toLowerHex(parentId);
+    return result;
   }
 
   /** Returns {@code $traceId/$spanId} */
   @Override
   public String toString() {
-    boolean traceHi = traceIdHigh() != 0;
+    boolean traceHi = traceIdHigh != 0;
     char[] result = new char[((traceHi ? 3 : 2) * 16) + 1]; // 2 ids and the delimiter
     int pos = 0;
     if (traceHi) {
-      writeHexLong(result, pos, traceIdHigh());
+      writeHexLong(result, pos, traceIdHigh);
       pos += 16;
     }
-    writeHexLong(result, pos, traceId());
+    writeHexLong(result, pos, traceId);
     pos += 16;
     result[pos++] = '/';
-    writeHexLong(result, pos, spanId());
+    writeHexLong(result, pos, spanId);
     return new String(result);
   }
 
-  @AutoValue.Builder
-  public static abstract class Builder {
+  @Override public boolean equals(Object o) {
+    if (o == this) return true;
+    if (!(o instanceof TraceContext)) return false;
+    TraceContext that = (TraceContext) o;
+    return traceIdHigh == that.traceIdHigh
+        && traceId == that.traceId
+        && ((flags & FLAG_HAS_PARENT) == 0 || parentId == that.parentId)
+        && spanId == that.spanId
+        && flags == that.flags;
+  }
+
+  @Override public int hashCode() {
+    int h = 1;
+    h *= 1000003;
+    h ^= (int) ((traceIdHigh >>> 32) ^ traceIdHigh);
+    h *= 1000003;
+    h ^= (int) ((traceId >>> 32) ^ traceId);
+    h *= 1000003;
+    h ^= (flags & FLAG_HAS_PARENT) != 0 ? (int) ((parentId >>> 32) ^ parentId) : 0;
+    h *= 1000003;
+    h ^= (int) ((spanId >>> 32) ^ spanId);
+    h *= 1000003;
+    h ^= flags;
+    return h;
+  }
+
+  public static final class Builder {
+    long traceIdHigh, traceId, parentId, spanId;
+    int flags;
+    ExtraFieldPropagation.Extra extra;
+    boolean hasTraceId, hasSpanId;
+    String traceIdString; // carried over from the source context, until the trace ID changes
+
+    Builder() {
+    }
+
+    Builder(TraceContext source) {
+      traceIdHigh = source.traceIdHigh;
+      traceId = source.traceId;
+      parentId = source.parentId;
+      spanId = source.spanId;
+      flags = source.flags;
+      extra = source.extra;
+      hasTraceId = hasSpanId = true;
+      traceIdString = source.traceIdString;
+    }
+
     /** @see TraceContext#traceIdHigh() */
-    public abstract Builder traceIdHigh(long traceIdHigh);
+    public Builder traceIdHigh(long traceIdHigh) {
+      if (this.traceIdHigh != traceIdHigh) traceIdString = null;
+      this.traceIdHigh = traceIdHigh;
+      return this;
+    }
 
     /** @see TraceContext#traceId() */
-    public abstract Builder traceId(long traceId);
+    public Builder traceId(long traceId) {
+      if (this.traceId != traceId) traceIdString = null;
+      this.traceId = traceId;
+      hasTraceId = true;
+      return this;
+    }
 
     /** @see TraceContext#parentId */
-    public abstract Builder parentId(@Nullable Long parentId);
+    public Builder parentId(@Nullable Long parentId) {
+      if (parentId == null) {
+        this.parentId = 0L;
+        flags &= ~FLAG_HAS_PARENT;
+        return this;
+      }
+      return parentId(parentId.longValue());
+    }
+
+    /** Like {@link #parentId(Long)}, except without boxing. */
+    public Builder parentId(long parentId) {
+      this.parentId = parentId;
+      flags |= FLAG_HAS_PARENT;
+      return this;
+    }
 
     /** @see TraceContext#spanId */
-    public abstract Builder spanId(long spanId);
+    public Builder spanId(long spanId) {
+      this.spanId = spanId;
+      hasSpanId = true;
+      return this;
+    }
 
     /** @see TraceContext#sampled */
-    public abstract Builder sampled(Boolean nullableSampled);
+    public Builder sampled(@Nullable Boolean sampled) {
+      if (sampled != null) {
+        flags |= FLAG_SAMPLING_SET;
+        if (sampled) {
+          flags |= FLAG_SAMPLED;
+        } else {
+          flags &= ~FLAG_SAMPLED;
+        }
+      } else {
+        flags &= ~(FLAG_SAMPLING_SET | FLAG_SAMPLED);
+      }
+      return this;
+    }
 
     /** @see TraceContext#debug() */
-    public abstract Builder debug(boolean debug);
+    public Builder debug(boolean debug) {
+      if (debug) {
+        flags |= FLAG_DEBUG;
+      } else {
+        flags &= ~FLAG_DEBUG;
+      }
+      return this;
+    }
 
     /** @see TraceContext#shared() */
-    public abstract Builder shared(boolean shared);
-
-    public abstract TraceContext build();
+    public Builder shared(boolean shared) {
+      if (shared) {
+        flags |= FLAG_SHARED;
+      } else {
+        flags &= ~FLAG_SHARED;
+      }
+      return this;
+    }
 
-    abstract Boolean sampled();
+    /** Package-private as only {@link ExtraFieldPropagation} writes extra fields. */
+    Builder extra(@Nullable ExtraFieldPropagation.Extra extra) {
+      this.extra = extra;
+      return this;
+    }
 
-    abstract boolean debug();
+    public TraceContext build() {
+      if (!hasTraceId || !hasSpanId) {
+        String missing = "";
+        if (!hasTraceId) missing += " traceId";
+        if (!hasSpanId) missing += " spanId";
+        throw new IllegalStateException("Missing required properties:" + missing);
+      }
+      return new TraceContext(this);
+    }
 
-    Builder() { // no external implementations
+    @Nullable Boolean sampled() {
+      if ((flags & FLAG_SAMPLING_SET) == 0) return null;
+      return (flags & FLAG_SAMPLED) != 0;
     }
-  }
 
-  TraceContext() { // no external implementations
+    boolean debug() {
+      return (flags & FLAG_DEBUG) != 0;
+    }
   }
 }
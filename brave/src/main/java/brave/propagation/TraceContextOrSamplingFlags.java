@@ -31,6 +31,16 @@ public abstract class TraceContextOrSamplingFlags {
     }
   }
 
+  public static TraceContextOrSamplingFlags create(TraceContext context) {
+    if (context == null) throw new NullPointerException("context == null");
+    return new AutoValue_TraceContextOrSamplingFlags(context, null);
+  }
+
+  public static TraceContextOrSamplingFlags create(SamplingFlags flags) {
+    if (flags == null) throw new NullPointerException("flags == null");
+    return new AutoValue_TraceContextOrSamplingFlags(null, flags);
+  }
+
   TraceContextOrSamplingFlags() { // no external implementations
   }
 }
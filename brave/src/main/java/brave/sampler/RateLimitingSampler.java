@@ -0,0 +1,81 @@
+package brave.sampler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The rate-limited sampler allows you to choose an amount of traces to accept on a per-second
+ * interval. The minimum number is 0 and the max is 2,147,483,647 (max int).
+ *
+ * <p>For example, to allow 10 traces per second, you'd initialize the following:
+ * <pre>{@code
+ * tracingBuilder.sampler(RateLimitingSampler.create(10));
+ * }</pre>
+ *
+ * <p>Unlike {@link CountingSampler}, the count of sampled traces doesn't grow with traffic. This
+ * keeps load on the collection tier steady during spikes.
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>This uses an atomic counter of traces sampled in the current second, and an atomic deadline
+ * to reset it. Both are updated atomically, so callers never block each other. A reset subtracts
+ * the usage read before moving the deadline, so samples counted concurrently aren't forgotten.
+ *
+ * <p>The budget is released in tenths of a second: by the end of each decisecond, at most that
+ * fraction of the per-second rate can have been sampled. This prevents a burst at the start of a
+ * second from consuming the whole budget.
+ */
+public final class RateLimitingSampler extends Sampler {
+
+  /** @param tracesPerSecond 0 means never sample. Otherwise, the most traces sampled per second */
+  public static Sampler create(int tracesPerSecond) {
+    if (tracesPerSecond < 0) throw new IllegalArgumentException("tracesPerSecond < 0");
+    if (tracesPerSecond == 0) return NEVER_SAMPLE;
+    return new RateLimitingSampler(tracesPerSecond);
+  }
+
+  static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  static final long NANOS_PER_DECISECOND = NANOS_PER_SECOND / 10;
+
+  final int tracesPerSecond;
+  /** Cumulative budget by the end of each decisecond, the last being {@link #tracesPerSecond} */
+  final int[] maxByDecisecond = new int[10];
+  final AtomicInteger usage = new AtomicInteger();
+  final AtomicLong nextReset;
+
+  RateLimitingSampler(int tracesPerSecond) {
+    this.tracesPerSecond = tracesPerSecond;
+    for (int i = 0; i < 10; i++) {
+      // round up, so that low rates can sample in the first decisecond
+      maxByDecisecond[i] = (int) ((tracesPerSecond * (i + 1L) + 9) / 10);
+    }
+    this.nextReset = new AtomicLong(System.nanoTime() + NANOS_PER_SECOND);
+  }
+
+  @Override public boolean isSampled(long traceIdIgnored) {
+    long now = System.nanoTime(), updateAt = nextReset.get();
+    long nanosUntilReset = updateAt - now; // subtract, as nanoTime can overflow
+    if (nanosUntilReset <= 0) {
+      // Only one caller wins the reset. Callers can count against the new budget before the winner
+      // resets usage, so subtract what was used before the swap, instead of zeroing.
+      int usedBeforeReset = usage.get();
+      if (nextReset.compareAndSet(updateAt, now + NANOS_PER_SECOND)) {
+        usage.addAndGet(-usedBeforeReset);
+      }
+      nanosUntilReset = NANOS_PER_SECOND;
+    }
+
+    int decisecond = (int) ((NANOS_PER_SECOND - nanosUntilReset) / NANOS_PER_DECISECOND);
+    int max = maxByDecisecond[Math.min(Math.max(decisecond, 0), 9)];
+
+    for (int prev; (prev = usage.get()) < max; ) {
+      if (usage.compareAndSet(prev, prev + 1)) return true;
+    }
+    return false;
+  }
+
+  @Override public String toString() {
+    return "RateLimitingSampler(" + tracesPerSecond + ")";
+  }
+}
@@ -0,0 +1,174 @@
+package brave.sampler;
+
+import brave.internal.Nullable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decides whether to sample a request according to rules, which match its method and path. For
+ * example, to always sample checkout and rarely sample health checks:
+ *
+ * <pre>{@code
+ * sampler = RuleSampler.newBuilder(adapter)
+ *     .addRule(null, "/checkout", 1.0f)
+ *     .addRule("GET", "/health", 0.001f)
+ *     .build();
+ * }</pre>
+ *
+ * <p>A rule matches when its path is a prefix of the request's, and its method is either null or
+ * equal to the request's, ignoring case. When multiple rules match, the one with the longest path
+ * wins, and then one with a method over one without.
+ *
+ * <p>Requests that match no rule are left to the tracer's {@link Sampler}, as are requests whose
+ * caller already made a sampling decision. To apply a decision, pass it to {@link
+ * brave.Tracer#newTrace(brave.propagation.SamplingFlags)}.
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p>Rules are compiled into a trie keyed on path characters, with per-method lookups at each
+ * node. Matching walks the request path once, so costs O(path length) regardless of how many rules
+ * there are. Each rule samples with a {@link CountingSampler}. Building copies the trie, so a
+ * builder can keep adding rules without affecting samplers it already built.
+ *
+ * @param <R> the type of request, such as an http request.
+ */
+public final class RuleSampler<R> {
+
+  /** Extracts the attributes rules match against from a request. */
+  public interface Adapter<R> {
+    /** Returns the method, such as "GET", or null if not applicable. */
+    @Nullable String method(R request);
+
+    /** Returns the path, such as "/checkout", or a service and method name, or null if unknown. */
+    @Nullable String path(R request);
+  }
+
+  public static <R> Builder<R> newBuilder(Adapter<R> adapter) {
+    return new Builder<>(adapter);
+  }
+
+  public static final class Builder<R> {
+    final Adapter<R> adapter;
+    final Node root = new Node();
+
+    Builder(Adapter<R> adapter) {
+      if (adapter == null) throw new NullPointerException("adapter == null");
+      this.adapter = adapter;
+    }
+
+    /**
+     * Adds a rule, replacing any with the same method and path.
+     *
+     * @param method when null, the rule matches any method. Compared ignoring case.
+     * @param pathPrefix matches paths which start with this, for example "/static/"
+     * @param rate as in {@link CountingSampler#create(float)}
+     */
+    public Builder<R> addRule(@Nullable String method, String pathPrefix, float rate) {
+      if (pathPrefix == null) throw new NullPointerException("pathPrefix == null");
+      Sampler sampler = CountingSampler.create(rate);
+      Node node = root;
+      for (int i = 0, length = pathPrefix.length(); i < length; i++) {
+        node = node.addChild(pathPrefix.charAt(i));
+      }
+      if (method == null) {
+        node.anyMethod = sampler;
+      } else {
+        if (node.byMethod == null) node.byMethod = new LinkedHashMap<>();
+        node.byMethod.put(method.toUpperCase(Locale.ROOT), sampler);
+      }
+      return this;
+    }
+
+    public RuleSampler<R> build() {
+      return new RuleSampler<>(this);
+    }
+  }
+
+  final Adapter<R> adapter;
+  final Node root;
+
+  RuleSampler(Builder<R> builder) {
+    this.adapter = builder.adapter;
+    this.root = builder.root.copy();
+  }
+
+  /**
+   * Returns the decision of the most specific rule matching the request, or null if there was
+   * none.
+   */
+  @Nullable public Boolean isSampled(R request) {
+    String path = adapter.path(request);
+    if (path == null) return null;
+    String method = adapter.method(request);
+    if (method != null) method = method.toUpperCase(Locale.ROOT); // as rules are upper-cased
+
+    Sampler match = root.match(method);
+    Node node = root;
+    for (int i = 0, length = path.length(); i < length; i++) {
+      node = node.child(path.charAt(i));
+      if (node == null) break;
+      Sampler sampler = node.match(method);
+      if (sampler != null) match = sampler;
+    }
+    // Counting samplers ignore the trace ID, which isn't provisioned until after this decision
+    return match != null ? match.isSampled(0L) : null;
+  }
+
+  @Override public String toString() {
+    return "RuleSampler(" + adapter + ")";
+  }
+
+  /** Only modified by the builder. Samplers get a {@link #copy()}, so read it concurrently. */
+  static final class Node {
+    static final char[] NO_CHARS = new char[0];
+    static final Node[] NO_NODES = new Node[0];
+
+    char[] chars = NO_CHARS;
+    Node[] children = NO_NODES;
+    Sampler anyMethod;
+    Map<String, Sampler> byMethod;
+
+    @Nullable Node child(char c) {
+      char[] chars = this.chars;
+      for (int i = 0; i < chars.length; i++) {
+        if (chars[i] == c) return children[i];
+      }
+      return null;
+    }
+
+    Node addChild(char c) {
+      Node result = child(c);
+      if (result != null) return result;
+      int length = chars.length;
+      chars = Arrays.copyOf(chars, length + 1);
+      children = Arrays.copyOf(children, length + 1);
+      chars[length] = c;
+      return children[length] = new Node();
+    }
+
+    /** Returns a deep copy, so that later rules added to the builder aren't visible. */
+    Node copy() {
+      Node result = new Node();
+      result.chars = chars.length == 0 ? NO_CHARS : chars.clone();
+      if (children.length != 0) {
+        result.children = new Node[children.length];
+        for (int i = 0; i < children.length; i++) {
+          result.children[i] = children[i].copy();
+        }
+      }
+      result.anyMethod = anyMethod;
+      if (byMethod != null) result.byMethod = new LinkedHashMap<>(byMethod);
+      return result;
+    }
+
+    @Nullable Sampler match(@Nullable String method) {
+      if (method != null && byMethod != null) {
+        Sampler result = byMethod.get(method);
+        if (result != null) return result;
+      }
+      return anyMethod;
+    }
+  }
+}
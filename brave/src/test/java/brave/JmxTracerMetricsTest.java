@@ -0,0 +1,32 @@
+package brave;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JmxTracerMetricsTest {
+  InMemoryTracerMetrics metrics = new InMemoryTracerMetrics();
+  MBeanServer server = MBeanServerFactory.newMBeanServer();
+
+  @Test public void exportsAttributes() throws Exception {
+    ObjectName name = JmxTracerMetrics.create(metrics)
+        .register(server, JmxTracerMetrics.objectName("frontend"));
+
+    metrics.incrementSpansStarted();
+    metrics.incrementSpansStarted();
+    metrics.incrementSpansFinished();
+    metrics.recordReportNanos(5L);
+
+    assertThat(server.getAttribute(name, "SpansStarted")).isEqualTo(2L);
+    assertThat(server.getAttribute(name, "InFlightSpans")).isEqualTo(1L);
+    assertThat(server.getAttribute(name, "MaxReportNanos")).isEqualTo(5L);
+  }
+
+  @Test public void objectName_quotesServiceName() throws Exception {
+    assertThat(JmxTracerMetrics.objectName("a,b").toString())
+        .isEqualTo("brave:type=TracerMetrics,service=\"a,b\"");
+  }
+}
@@ -29,6 +29,8 @@ public class NoopSpanTest {
     // Since our clock and reporter throw, we know this is doing nothing
     span.start();
     span.start(1L);
+    span.start(new SpanFields().name("foo"));
+    span.customize(new SpanFields().tag("bar", "baz"));
     span.annotate("foo");
     span.annotate(2L, "foo");
     span.tag("bar", "baz");
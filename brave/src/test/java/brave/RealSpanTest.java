@@ -43,6 +43,44 @@ public class RealSpanTest {
         .containsExactly(2L);
   }
 
+  @Test public void start_fields() {
+    span.start(new SpanFields().name("foo").tag("bar", "baz"));
+    span.flush();
+
+    assertThat(spans).hasSize(1).first().satisfies(s -> {
+      assertThat(s.timestamp).isNotNull();
+      assertThat(s.name).isEqualTo("foo");
+      assertThat(s.binaryAnnotations).extracting(b -> b.key).containsExactly("bar");
+    });
+  }
+
+  @Test public void customize() {
+    Endpoint remoteEndpoint = Endpoint.create("server", 127 << 24 | 2);
+    span.customize(new SpanFields()
+        .name("foo")
+        .kind(Span.Kind.CLIENT)
+        .remoteEndpoint(remoteEndpoint)
+        .tag("1", "a")
+        .tag("2", "b"));
+    span.start(1L).finish(2L);
+
+    assertThat(spans).hasSize(1).first().satisfies(s -> {
+      assertThat(s.name).isEqualTo("foo");
+      assertThat(s.annotations).extracting(a -> a.value).containsExactly("cs", "cr");
+      assertThat(s.binaryAnnotations).extracting(b -> b.key, b -> b.endpoint).containsExactly(
+          tuple("1", localEndpoint), tuple("2", localEndpoint), tuple("sa", remoteEndpoint));
+    });
+  }
+
+  @Test public void customize_doesntStart() {
+    span.customize(new SpanFields().name("foo"));
+    span.flush();
+
+    assertThat(spans).hasSize(1).first()
+        .extracting(s -> s.timestamp)
+        .containsNull();
+  }
+
   @Test public void finish() {
     span.start();
     span.finish();
@@ -94,4 +132,33 @@ public class RealSpanTest {
 
     assertThat(spans).hasSize(1);
   }
+
+  @Test public void toSpan_sharesStateWithOriginalHandle() {
+    span.name("foo").start(1L);
+    tracer.toSpan(span.context()).tag("foo", "bar");
+    span.finish(3L);
+
+    assertThat(spans).hasSize(1).first().satisfies(s -> {
+      assertThat(s.name).isEqualTo("foo");
+      assertThat(s.duration).isEqualTo(2L);
+      assertThat(s.binaryAnnotations).extracting(b -> b.key).containsExactly("foo");
+    });
+  }
+
+  @Test public void toSpan_canFinishOriginalHandle() {
+    span.name("foo").start(1L);
+    tracer.toSpan(span.context()).finish(3L);
+
+    assertThat(spans).hasSize(1).first()
+        .extracting(s -> s.name, s -> s.duration)
+        .containsExactly("foo", 2L);
+  }
+
+  @Test public void mutationAfterFinishDoesntRecordANewSpan() {
+    span.start(1L).finish(2L);
+    span.tag("foo", "bar");
+
+    assertThat(tracer.recorder.timestamp(span.context()))
+        .isNull();
+  }
 }
@@ -0,0 +1,51 @@
+package brave;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpanFieldsTest {
+  SpanFields fields = new SpanFields();
+
+  @Test public void tag_growsArrays() {
+    for (int i = 0; i < 10; i++) fields.tag("key" + i, "value" + i);
+
+    assertThat(fields.tagCount()).isEqualTo(10);
+    assertThat(fields.tagKey(9)).isEqualTo("key9");
+    assertThat(fields.tagValue(9)).isEqualTo("value9");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tag_emptyKey() {
+    fields.tag("", "value");
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void tag_nullValue() {
+    fields.tag("key", null);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void tagKey_outOfBounds() {
+    fields.tag("key", "value").clear();
+
+    fields.tagKey(0);
+  }
+
+  @Test public void clear() {
+    fields.name("foo").kind(Span.Kind.SERVER).tag("key", "value").clear();
+
+    assertThat(fields.name()).isNull();
+    assertThat(fields.kind()).isNull();
+    assertThat(fields.tagCount()).isZero();
+    assertThat(fields.tagKeys).containsOnly((String) null);
+  }
+
+  @Test public void toString_includesFields() {
+    assertThat(fields.toString()).isEqualTo("SpanFields{}");
+
+    fields.name("foo").tag("key", "value");
+
+    assertThat(fields.toString()).isEqualTo("SpanFields{name=foo, tags={key=value}}");
+  }
+}
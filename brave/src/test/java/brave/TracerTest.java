@@ -1,14 +1,23 @@
 package brave;
 
+import brave.internal.Internal;
+import brave.internal.TickClock;
+import brave.propagation.CurrentTraceContext;
 import brave.propagation.SamplingFlags;
 import brave.propagation.TraceContext;
 import brave.sampler.Sampler;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
+import zipkin.Codec;
 import zipkin.Endpoint;
+import zipkin.reporter.Encoding;
+import zipkin.reporter.Reporter;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+import static org.assertj.core.api.Assertions.tuple;
 
 public class TracerTest {
   Tracer tracer = Tracer.newBuilder().build();
@@ -68,6 +77,16 @@ public class TracerTest {
         .isNotZero();
   }
 
+  @Test public void newTrace_timePrefixedTraceIds() {
+    tracer = Tracer.newBuilder().timePrefixedTraceIds(true).build();
+
+    long before = System.currentTimeMillis() / 1000;
+    long traceIdHigh = tracer.newTrace().context().traceIdHigh();
+    long after = System.currentTimeMillis() / 1000;
+
+    assertThat(traceIdHigh >>> 32).isBetween(before, after);
+  }
+
   @Test public void newTrace_unsampled_tracer() {
     tracer = Tracer.newBuilder().sampler(Sampler.NEVER_SAMPLE).build();
 
@@ -147,4 +166,404 @@ public class TracerTest {
     assertThat(tracer.newChild(unsampled))
         .isInstanceOf(NoopSpan.class);
   }
+
+  @Test public void recycleSpans_reportsEachSpanIndependently() {
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracer.newBuilder().reporter(spans::add).recycleSpans(true).build();
+
+    tracer.newTrace().name("foo").start(1L).tag("foo", "bar").finish(2L);
+    tracer.newTrace().name("bar").start(3L).finish(5L);
+
+    assertThat(spans).extracting(s -> s.name, s -> s.duration)
+        .containsExactly(tuple("foo", 1L), tuple("bar", 2L));
+    assertThat(spans.get(1).binaryAnnotations).extracting(b -> b.key)
+        .doesNotContain("foo");
+  }
+
+  @Test public void recycleSpans_lateMutationDoesntAffectOtherTrace() {
+    recycleSpans_lateMutationDoesntAffectOtherTrace(false);
+  }
+
+  @Test public void recycleSpans_lateMutationDoesntAffectOtherTrace_lockFree() {
+    recycleSpans_lateMutationDoesntAffectOtherTrace(true);
+  }
+
+  void recycleSpans_lateMutationDoesntAffectOtherTrace(boolean lockFree) {
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracer.newBuilder().reporter(spans::add).recycleSpans(true)
+        .lockFreeRecording(lockFree).build();
+
+    RealSpan first = (RealSpan) tracer.newTrace().name("foo").start(1L);
+    first.finish(2L);
+    RealSpan second = (RealSpan) tracer.newTrace().name("bar").start(3L);
+    assertThat(second.state()).isSameAs(first.state); // the recycled state was re-used
+
+    first.tag("late", "mutation").annotate(4L, "late");
+    second.finish(5L);
+
+    assertThat(spans.get(1).binaryAnnotations).extracting(b -> b.key)
+        .doesNotContain("late");
+    assertThat(spans.get(1).annotations).isEmpty();
+  }
+
+  @Test public void lockFreeRecording_reportsSameSpan() {
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracer.newBuilder().reporter(spans::add).build();
+    tracer.newTrace().name("foo").kind(Span.Kind.CLIENT).start(1L).tag("foo", "bar").finish(3L);
+
+    List<zipkin.Span> lockFreeSpans = new ArrayList<>();
+    tracer = Tracer.newBuilder().reporter(lockFreeSpans::add).lockFreeRecording(true).build();
+    tracer.newTrace().name("foo").kind(Span.Kind.CLIENT).start(1L).tag("foo", "bar").finish(3L);
+
+    assertThat(lockFreeSpans).usingElementComparatorIgnoringFields("traceId", "id")
+        .isEqualTo(spans);
+  }
+
+  @Test public void annotateIfInFlight_doesntCreateStateForFinishedSpan() {
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracer.newBuilder().reporter(spans::add).build();
+
+    Span span = tracer.newTrace().start(1L);
+    assertThat(Internal.instance.annotateIfInFlight(tracer, span.context(), 2L, "foo"))
+        .isTrue();
+    span.finish(3L);
+    assertThat(Internal.instance.annotateIfInFlight(tracer, span.context(), 4L, "late"))
+        .isFalse();
+
+    assertThat(Internal.instance.timestamp(tracer, span.context()))
+        .isNull(); // not re-added to the span map
+    assertThat(spans).flatExtracting(s -> s.annotations).extracting(a -> a.value)
+        .containsExactly("foo");
+  }
+
+  @Test public void drainInterval_configuresRecorder() {
+    tracer = Tracer.newBuilder().drainInterval(1).build();
+
+    assertThat(tracer.recorder).extracting("spanMap.drainInterval")
+        .containsExactly(1);
+  }
+
+  @Test public void drainInterval_mustBePositive() {
+    try {
+      Tracer.newBuilder().drainInterval(0);
+      failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("drainInterval < 1");
+    }
+  }
+
+  @Test public void mapFreeSpans_skipsSpanMap() {
+    mapFreeSpans_skipsSpanMap(false, false);
+  }
+
+  @Test public void mapFreeSpans_skipsSpanMap_lockFree() {
+    mapFreeSpans_skipsSpanMap(true, false);
+  }
+
+  @Test public void mapFreeSpans_skipsSpanMap_recycleSpans() {
+    mapFreeSpans_skipsSpanMap(false, true);
+  }
+
+  void mapFreeSpans_skipsSpanMap(boolean lockFree, boolean recycle) {
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracer.newBuilder().reporter(spans::add).mapFreeSpans(true)
+        .lockFreeRecording(lockFree).recycleSpans(recycle).build();
+
+    Span span = tracer.newTrace().name("foo").start(1L).tag("foo", "bar");
+    assertThat(Internal.instance.timestamp(tracer, span.context()))
+        .isNull(); // not in the span map
+
+    span.finish(3L);
+    span.tag("late", "mutation");
+    span.finish(4L); // ignored
+
+    assertThat(spans).extracting(s -> s.name, s -> s.timestamp, s -> s.duration)
+        .containsExactly(tuple("foo", 1L, 2L));
+    assertThat(spans.get(0).binaryAnnotations).extracting(b -> b.key)
+        .containsExactly("foo");
+  }
+
+  @Test public void mapFreeSpans_toSpanReportsFragment() {
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracer.newBuilder().reporter(spans::add).mapFreeSpans(true).build();
+
+    Span span = tracer.newTrace().name("foo").start(1L);
+    tracer.toSpan(span.context()).annotate(2L, "foo").flush();
+    span.finish(3L);
+
+    assertThat(spans).extracting(s -> s.id)
+        .containsOnly(span.context().spanId());
+    assertThat(spans).flatExtracting(s -> s.annotations).extracting(a -> a.value)
+        .containsExactly("foo");
+  }
+
+  @Test public void mapFreeSpans_disabledByDefault() {
+    assertThat(tracer.mapFreeSpans).isFalse();
+  }
+
+  @Test public void metrics_countsSpansAndReports() {
+    InMemoryTracerMetrics metrics = new InMemoryTracerMetrics();
+    tracer = Tracer.newBuilder().reporter(Reporter.NOOP).metrics(metrics).build();
+
+    tracer.newTrace().start().finish();
+    tracer.newTrace().start().flush();
+    tracer.newTrace().start();
+
+    assertThat(metrics.spansStarted()).isEqualTo(3);
+    assertThat(metrics.spansFinished()).isEqualTo(1);
+    assertThat(metrics.spansFlushed()).isEqualTo(1);
+    assertThat(metrics.inFlightSpans()).isEqualTo(1);
+    assertThat(metrics.reports()).isEqualTo(2);
+    assertThat(metrics.reportNanos()).isGreaterThanOrEqualTo(metrics.maxReportNanos());
+  }
+
+  @Test public void metrics_countsStartsNotLookups() {
+    InMemoryTracerMetrics metrics = new InMemoryTracerMetrics();
+    tracer = Tracer.newBuilder().reporter(Reporter.NOOP).metrics(metrics).build();
+
+    Span span = tracer.newTrace().start();
+    tracer.toSpan(span.context()).annotate("foo");
+    tracer.newTrace().name("never started");
+
+    assertThat(metrics.spansStarted()).isEqualTo(1);
+  }
+
+  @Test public void metrics_recordsFailedReports() {
+    InMemoryTracerMetrics metrics = new InMemoryTracerMetrics();
+    tracer = Tracer.newBuilder().reporter(s -> {
+      throw new IllegalStateException();
+    }).metrics(metrics).build();
+
+    try {
+      tracer.newTrace().start().finish();
+      failBecauseExceptionWasNotThrown(IllegalStateException.class);
+    } catch (IllegalStateException e) {
+    }
+
+    assertThat(metrics.reports()).isEqualTo(1);
+  }
+
+  @Test public void traceAnchoredClock_childSharesParentClock() {
+    tracer = Tracer.newBuilder().traceAnchoredClock(true).build();
+
+    RealSpan parent = (RealSpan) tracer.newTrace().start();
+    RealSpan child = (RealSpan) tracer.newChild(parent.context());
+
+    assertThat(parent.clock).isInstanceOf(TickClock.class);
+    assertThat(child.clock).isSameAs(parent.clock);
+    assertThat(((RealSpan) tracer.toSpan(parent.context())).clock).isSameAs(parent.clock);
+  }
+
+  @Test public void traceAnchoredClock_newAnchorPerRoot() {
+    tracer = Tracer.newBuilder().traceAnchoredClock(true).build();
+
+    RealSpan root1 = (RealSpan) tracer.newTrace().start();
+    RealSpan root2 = (RealSpan) tracer.newTrace().start();
+
+    assertThat(root1.clock).isNotSameAs(root2.clock);
+  }
+
+  /** A child can't share a clock with a parent that isn't recording in this process. */
+  @Test public void traceAnchoredClock_newAnchorForRemoteParent() {
+    tracer = Tracer.newBuilder().traceAnchoredClock(true).build();
+
+    Span parent = tracer.newTrace(); // never started, so never recorded
+    RealSpan child = (RealSpan) tracer.newChild(parent.context());
+
+    assertThat(child.clock).isNotSameAs(((RealSpan) parent).clock);
+  }
+
+  @Test public void traceAnchoredClock_readsConfiguredClockForAnchor() {
+    tracer = Tracer.newBuilder().clock(() -> 1000L).traceAnchoredClock(true).build();
+
+    RealSpan span = (RealSpan) tracer.newTrace();
+
+    assertThat(span.clock.currentTimeMicroseconds()).isBetween(1000L, 1000L + 60_000_000L);
+  }
+
+  @Test public void traceAnchoredClock_disabledByDefault() {
+    assertThat(((RealSpan) tracer.newTrace()).clock).isSameAs(tracer.clock());
+  }
+
+  @Test public void reporter_encoded() {
+    List<byte[]> spans = new ArrayList<>();
+    tracer = Tracer.newBuilder().reporter(Encoding.JSON, spans::add).build();
+
+    Span span = tracer.newTrace().name("foo").start(1L);
+    span.finish(2L);
+
+    assertThat(spans).extracting(Codec.JSON::readSpan).extracting(s -> s.id, s -> s.name)
+        .containsExactly(tuple(span.context().spanId(), "foo"));
+  }
+
+  @Test public void tailCapture_unsampledSpansAreNotNoop() {
+    tracer = Tracer.newBuilder().sampler(Sampler.NEVER_SAMPLE)
+        .tailCapture(16, 1, TimeUnit.SECONDS).build();
+
+    Span root = tracer.newTrace();
+    assertThat(root).isInstanceOf(CapturedSpan.class);
+    assertThat(root.isNoop()).isFalse();
+    assertThat(root.context().sampled()).isFalse();
+
+    Span child = tracer.newChild(root.context());
+    assertThat(child).isInstanceOf(CapturedSpan.class);
+    assertThat(child.context().parentId()).isEqualTo(root.context().spanId());
+    assertThat(tracer.tailCapture.isLocalRoot(((CapturedSpan) root).claim)).isTrue();
+    assertThat(tracer.tailCapture.isLocalRoot(((CapturedSpan) child).claim)).isFalse();
+  }
+
+  @Test public void tailCapture_toSpanReattachesToCapturedSpan() {
+    tracer = Tracer.newBuilder().sampler(Sampler.NEVER_SAMPLE)
+        .tailCapture(16, 1, TimeUnit.SECONDS).build();
+
+    Span root = tracer.newTrace();
+    Span reattached = tracer.toSpan(root.context());
+
+    assertThat(reattached).isInstanceOf(CapturedSpan.class);
+    assertThat(((CapturedSpan) reattached).claim).isEqualTo(((CapturedSpan) root).claim);
+  }
+
+  @Test public void tailCapture_reportsTraceOnErrorTaggedViaCurrentSpan() {
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracer.newBuilder().sampler(Sampler.NEVER_SAMPLE).reporter(spans::add)
+        .tailCapture(16, 1, TimeUnit.HOURS).build();
+
+    Span root = tracer.newTrace().name("root").start();
+    try (CurrentTraceContext.Scope ws = tracer.withSpanInScope(root)) {
+      tracer.nextSpan().name("child").start().finish();
+      tracer.currentSpan().tag("error", "oops"); // e.g. from an exception handler
+    }
+    root.finish();
+
+    assertThat(spans).extracting(s -> s.name).containsExactly("root", "child");
+  }
+
+  @Test public void tailCapture_reportsTraceOnError() {
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracer.newBuilder().sampler(Sampler.NEVER_SAMPLE).reporter(spans::add)
+        .tailCapture(16, 1, TimeUnit.SECONDS).build();
+
+    Span root = tracer.newTrace().name("root").start();
+    tracer.newChild(root.context()).name("child").start().finish();
+    root.tag("error", "oops").finish();
+
+    assertThat(spans).extracting(s -> s.name).containsExactly("root", "child");
+  }
+
+  @Test public void tailCapture_reportsSlowServerSpanJoinedFromUnsampledUpstream() {
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracer.newBuilder().sampler(Sampler.NEVER_SAMPLE).reporter(spans::add)
+        .tailCapture(16, 1, TimeUnit.SECONDS).build();
+    TraceContext upstream = Tracer.newBuilder().build().newTrace().context().toBuilder()
+        .sampled(false).build();
+
+    Span server = tracer.joinSpan(upstream).kind(Span.Kind.SERVER).name("get");
+    assertThat(server).isInstanceOf(CapturedSpan.class);
+    server.start(1L);
+    server.finish(TimeUnit.SECONDS.toMicros(2));
+
+    assertThat(spans).extracting(s -> s.id).containsExactly(upstream.spanId());
+  }
+
+  @Test public void tailCapture_capturedSpanEqualsByContext() {
+    tracer = Tracer.newBuilder().sampler(Sampler.NEVER_SAMPLE)
+        .tailCapture(16, 1, TimeUnit.SECONDS).build();
+
+    Span root = tracer.newTrace();
+    Span reattached = tracer.toSpan(root.context());
+
+    assertThat(reattached).isNotSameAs(root).isEqualTo(root);
+    assertThat(reattached.hashCode()).isEqualTo(root.hashCode());
+    assertThat(tracer.newTrace()).isNotEqualTo(root);
+  }
+
+  @Test public void tailCapture_reportsNothingWhenFastAndOk() {
+    List<zipkin.Span> spans = new ArrayList<>();
+    tracer = Tracer.newBuilder().sampler(Sampler.NEVER_SAMPLE).reporter(spans::add)
+        .tailCapture(16, 1, TimeUnit.HOURS).build();
+
+    Span root = tracer.newTrace().name("root").start();
+    tracer.newChild(root.context()).name("child").start().finish();
+    root.finish();
+
+    assertThat(spans).isEmpty();
+  }
+
+  @Test public void tailCapture_sampledSpansAreReal() {
+    tracer = Tracer.newBuilder().tailCapture(16, 1, TimeUnit.SECONDS).build();
+
+    assertThat(tracer.newTrace()).isInstanceOf(RealSpan.class);
+  }
+
+  @Test public void tailCapture_disabledByDefault() {
+    assertThat(tracer.tailCapture).isNull();
+  }
+
+  @Test public void currentSpan_defaultsToNull() {
+    assertThat(tracer.currentSpan()).isNull();
+  }
+
+  @Test public void withSpanInScope() {
+    Span current = tracer.newTrace();
+
+    try (CurrentTraceContext.Scope ws = tracer.withSpanInScope(current)) {
+      assertThat(tracer.currentSpan())
+          .isEqualTo(current);
+    }
+
+    // context was cleared
+    assertThat(tracer.currentSpan()).isNull();
+  }
+
+  @Test public void withSpanInScope_nested() {
+    Span parent = tracer.newTrace();
+
+    try (CurrentTraceContext.Scope wsParent = tracer.withSpanInScope(parent)) {
+
+      Span child = tracer.newChild(parent.context());
+      try (CurrentTraceContext.Scope wsChild = tracer.withSpanInScope(child)) {
+        assertThat(tracer.currentSpan())
+            .isEqualTo(child);
+      }
+
+      // old parent reverted
+      assertThat(tracer.currentSpan())
+          .isEqualTo(parent);
+    }
+  }
+
+  @Test public void withSpanInScope_clear() {
+    Span parent = tracer.newTrace();
+
+    try (CurrentTraceContext.Scope wsParent = tracer.withSpanInScope(parent)) {
+      try (CurrentTraceContext.Scope clearScope = tracer.withSpanInScope(null)) {
+        assertThat(tracer.currentSpan())
+            .isNull();
+      }
+
+      // old parent reverted
+      assertThat(tracer.currentSpan())
+          .isEqualTo(parent);
+    }
+  }
+
+  @Test public void nextSpan_defaultsToMakeNewTrace() {
+    assertThat(tracer.nextSpan().context().parentId()).isNull();
+  }
+
+  @Test public void nextSpan_makesChildOfCurrent() {
+    Span parent = tracer.newTrace();
+
+    try (CurrentTraceContext.Scope ws = tracer.withSpanInScope(parent)) {
+      assertThat(tracer.nextSpan().context().parentId())
+          .isEqualTo(parent.context().spanId());
+    }
+  }
+
+  @Test public void currentTraceContext() {
+    CurrentTraceContext currentTraceContext = CurrentTraceContext.Default.inheritable();
+    tracer = Tracer.newBuilder().currentTraceContext(currentTraceContext).build();
+
+    assertThat(tracer.currentTraceContext()).isSameAs(currentTraceContext);
+  }
 }
@@ -44,6 +44,26 @@ public class HexCodecTest {
     }
   }
 
+  @Test
+  public void lowerHexToUnsignedLong_charSequence() {
+    assertThat(lowerHexToUnsignedLong(new StringBuilder("463ac35c9f6413ad48485a3953bb6124")))
+        .isEqualTo(lowerHexToUnsignedLong("48485a3953bb6124"));
+    assertThat(lowerHexToUnsignedLong(new StringBuilder("0123456789abcdef"), 0))
+        .isEqualTo(0x0123456789abcdefL);
+  }
+
+  @Test
+  public void lowerHexToUnsignedLong_rejectsCharactersOutsideTable() {
+    for (String bad : new String[] {"A", "F", "/", ":", "`", "g", "\u00e9", "\uffff"}) {
+      try {
+        lowerHexToUnsignedLong("000000000000000" + bad);
+        failBecauseExceptionWasNotThrown(NumberFormatException.class);
+      } catch (NumberFormatException e) {
+        assertThat(e).hasMessageStartingWith("000000000000000" + bad);
+      }
+    }
+  }
+
   @Test
   public void toLowerHex_minValue() {
     assertThat(toLowerHex(Long.MAX_VALUE)).isEqualTo("7fffffffffffffff");
@@ -49,6 +49,19 @@ public class PlatformTest {
     assertThat(platform.currentTimeMicroseconds()).isEqualTo(1);
   }
 
+  @Test public void nextTraceIdHigh() {
+    mockStatic(System.class);
+    when(System.currentTimeMillis()).thenReturn(1465510280_000L); // 2016-06-09T22:11:20Z
+
+    Platform platform = new Platform() {
+      @Override public long randomLong() {
+        return 0xffffffff_12345678L;
+      }
+    };
+
+    assertThat(platform.nextTraceIdHigh()).isEqualTo(0x5759e988_12345678L);
+  }
+
   @Test public void localEndpoint_lazySet() {
     assertThat(platform.localEndpoint).isNull(); // sanity check setup
 
@@ -0,0 +1,28 @@
+package brave.internal;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TickClockTest {
+
+  @Test public void anchorsToClock() {
+    long before = System.nanoTime();
+    TickClock clock = TickClock.create(() -> 1000L);
+
+    assertThat(clock.baseEpochMicros).isEqualTo(1000L);
+    assertThat(clock.baseTickNanos).isGreaterThanOrEqualTo(before);
+  }
+
+  @Test public void advancesWithTicks() {
+    TickClock clock = new TickClock(1000L, System.nanoTime() - 5000L);
+
+    assertThat(clock.currentTimeMicroseconds()).isGreaterThanOrEqualTo(1005L);
+  }
+
+  @Test public void wallClock_readsSystemTime() {
+    long before = System.currentTimeMillis() * 1000;
+
+    assertThat(TickClock.WALL_CLOCK.currentTimeMicroseconds()).isGreaterThanOrEqualTo(before);
+  }
+}
@@ -1,11 +1,14 @@
 package brave.internal.recorder;
 
 import brave.propagation.TraceContext;
+import brave.InMemoryTracerMetrics;
 import brave.Tracer;
+import brave.TracerMetrics;
 import brave.internal.Platform;
 import java.lang.ref.Reference;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 import zipkin.Endpoint;
 
@@ -15,6 +18,7 @@ public class MutableSpanMapTest {
   Endpoint localEndpoint = Platform.get().localEndpoint();
   List<zipkin.Span> spans = new ArrayList();
   TraceContext context = Tracer.newBuilder().build().newTrace().context();
+  InMemoryTracerMetrics metrics = new InMemoryTracerMetrics();
   MutableSpanMap map = new MutableSpanMap(localEndpoint, () -> 0L, spans::add);
 
   @Test
@@ -25,6 +29,19 @@ public class MutableSpanMapTest {
     assertThat(span.localEndpoint).isEqualTo(localEndpoint);
   }
 
+  @Test
+  public void getOrCreate_locksByDefault() throws Exception {
+    assertThat(map.getOrCreate(context).events).isNull();
+  }
+
+  @Test
+  public void getOrCreate_lockFreeAddsEventLog() throws Exception {
+    map = new MutableSpanMap(localEndpoint, () -> 0L, SpanReporter.create(spans::add), null,
+        TracerMetrics.NOOP_METRICS, MutableSpanMap.DEFAULT_DRAIN_INTERVAL, 0L, true);
+
+    assertThat(map.getOrCreate(context).events).isNotNull();
+  }
+
   @Test
   public void getOrCreate_cachesReference() throws Exception {
     MutableSpan span = map.getOrCreate(context);
@@ -147,10 +164,10 @@ public class MutableSpanMapTest {
   /** We ensure that the implicit caller of reportOrphanedSpans doesn't crash on report failure */
   @Test
   public void reportOrphanedSpans_whenReporterDies() throws Exception {
-    MutableSpanMap map = new MutableSpanMap(localEndpoint, () -> 0, span ->
+    MutableSpanMap map = new MutableSpanMap(localEndpoint, () -> 0, SpanReporter.create(span ->
     {
       throw new RuntimeException("die!");
-    });
+    }), null, TracerMetrics.NOOP_METRICS, 1, 0L, false);
 
     // We drop the reference to the context, which means the next GC should attempt to flush it
     map.getOrCreate(context.toBuilder().build());
@@ -170,6 +187,74 @@ public class MutableSpanMapTest {
         .isEmpty();
   }
 
+  @Test
+  public void reportOrphanedSpans_amortizedAcrossOperations() throws Exception {
+    map = new MutableSpanMap(localEndpoint, () -> 0L, SpanReporter.create(spans::add), null,
+        metrics, 3, 0L, false);
+
+    map.getOrCreate(context.toBuilder().spanId(1).build()); // operation 1
+    pretendGCHappened();
+    ((Reference) map.delegate.keySet().iterator().next()).enqueue();
+
+    map.get(context); // operation 2
+    assertThat(spans).isEmpty();
+
+    map.remove(context); // operation 3
+    assertThat(spans).flatExtracting(s -> s.annotations).extracting(a -> a.value)
+        .containsExactly("brave.flush");
+    assertThat(metrics.orphanedSpans()).isEqualTo(1);
+  }
+
+  @Test
+  public void expireSpans_flushesSpansOlderThanMaxAge() throws Exception {
+    map = new MutableSpanMap(localEndpoint, () -> 0L, SpanReporter.create(spans::add), null,
+        metrics, 1, TimeUnit.MINUTES.toNanos(1), false);
+
+    map.getOrCreate(context);
+    TraceContext context2 = context.toBuilder().spanId(2).build();
+    map.getOrCreate(context2).createTick -= TimeUnit.MINUTES.toNanos(2);
+
+    map.expireSpans(System.nanoTime());
+
+    // the context is still strongly held, but the span was reported anyway
+    assertThat(map.get(context2)).isNull();
+    assertThat(map.get(context)).isNotNull();
+    assertThat(spans).extracting(s -> s.id).containsExactly(2L);
+    assertThat(spans).flatExtracting(s -> s.annotations).extracting(a -> a.value)
+        .containsExactly("brave.flush");
+    assertThat(metrics.expiredSpans()).isEqualTo(1);
+  }
+
+  @Test
+  public void expireSpans_dropsLaterMutations() throws Exception {
+    expireSpans_dropsLaterMutations(false);
+  }
+
+  @Test
+  public void expireSpans_dropsLaterMutations_lockFree() throws Exception {
+    expireSpans_dropsLaterMutations(true);
+  }
+
+  /** Instrumentation can still hold the expired state, so its writes must not be applied. */
+  void expireSpans_dropsLaterMutations(boolean lockFree) throws Exception {
+    map = new MutableSpanMap(localEndpoint, () -> 0L, SpanReporter.create(spans::add), null,
+        metrics, 1, TimeUnit.MINUTES.toNanos(1), lockFree);
+
+    MutableSpan span = map.getOrCreate(context);
+    span.createTick -= TimeUnit.MINUTES.toNanos(2);
+    map.expireSpans(System.nanoTime());
+
+    assertThat(span.finished).isTrue();
+    span.tag(context, "late", "mutation");
+    span.drainEvents();
+    assertThat(span.tagCount).isZero();
+  }
+
+  @Test
+  public void expireSpans_disabledByDefault() throws Exception {
+    assertThat(map.getOrCreate(context).createTick).isZero();
+  }
+
   /** Debugging should show what the spans are, as well any references pending clear. */
   @Test
   public void toString_saysWhatReferentsAre() throws Exception {
@@ -206,6 +291,27 @@ public class MutableSpanMapTest {
     assertThat(key).isEqualTo(key2);
   }
 
+  @Test
+  public void recycle_reusesSpanWhenPooled() throws Exception {
+    map = new MutableSpanMap(localEndpoint, () -> 0L, SpanReporter.create(spans::add),
+        new MutableSpanPool(localEndpoint, 1), TracerMetrics.NOOP_METRICS,
+        MutableSpanMap.DEFAULT_DRAIN_INTERVAL, 0L, false);
+
+    MutableSpan span = map.getOrCreate(context);
+    map.recycle(map.remove(context));
+
+    TraceContext context2 = context.toBuilder().spanId(2).build();
+    assertThat(map.getOrCreate(context2)).isSameAs(span);
+  }
+
+  @Test
+  public void recycle_ignoredWhenNotPooled() throws Exception {
+    MutableSpan span = map.getOrCreate(context);
+    map.recycle(map.remove(context));
+
+    assertThat(map.getOrCreate(context)).isNotSameAs(span);
+  }
+
   /** In reality, this clears a reference even if it is strongly held by the test! */
   void pretendGCHappened() {
     ((MutableSpanMap.RealKey) map.delegate.keySet().iterator().next()).clear();
@@ -0,0 +1,65 @@
+package brave.internal.recorder;
+
+import brave.Tracer;
+import brave.internal.Platform;
+import brave.propagation.TraceContext;
+import org.junit.Test;
+import zipkin.Endpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MutableSpanPoolTest {
+  Endpoint localEndpoint = Platform.get().localEndpoint();
+  TraceContext context = Tracer.newBuilder().build().newTrace().context();
+  MutableSpanPool pool = new MutableSpanPool(localEndpoint, 2);
+
+  @Test public void acquire_allocatesWhenEmpty() {
+    assertThat(pool.acquire(context))
+        .isNotSameAs(pool.acquire(context));
+  }
+
+  @Test public void acquire_reusesReleased() {
+    MutableSpan span = pool.acquire(context);
+    span.name("foo").start(1L).finish(2L);
+    pool.release(span);
+
+    TraceContext other = context.toBuilder().spanId(context.spanId() + 1).build();
+    MutableSpan recycled = pool.acquire(other);
+
+    assertThat(recycled).isSameAs(span);
+    assertThat(recycled.finished).isFalse();
+    assertThat(recycled.finish(null).toSpan().id).isEqualTo(other.spanId());
+    assertThat(recycled.toSpan().name).isEmpty();
+  }
+
+  @Test public void release_dropsOnOverflow() {
+    MutableSpan one = pool.acquire(context), two = pool.acquire(context);
+    MutableSpan three = pool.acquire(context);
+
+    pool.release(one);
+    pool.release(two);
+    pool.release(three);
+
+    assertThat(pool.acquire(context)).isSameAs(two);
+    assertThat(pool.acquire(context)).isSameAs(one);
+    assertThat(pool.acquire(context)).isNotIn(one, two, three);
+  }
+
+  @Test public void poolIsPerThread() throws Exception {
+    MutableSpan span = pool.acquire(context);
+    pool.release(span);
+
+    MutableSpan[] fromOtherThread = new MutableSpan[1];
+    Thread thread = new Thread(() -> fromOtherThread[0] = pool.acquire(context));
+    thread.start();
+    thread.join();
+
+    assertThat(fromOtherThread[0]).isNotSameAs(span);
+    assertThat(pool.acquire(context)).isSameAs(span);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void maxSize_mustBePositive() {
+    new MutableSpanPool(localEndpoint, 0);
+  }
+}
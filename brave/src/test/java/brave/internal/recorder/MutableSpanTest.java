@@ -202,6 +202,67 @@ public class MutableSpanTest {
     });
   }
 
+  @Test public void reset_isSameAsNewSpan() {
+    MutableSpan recycled = newSpan().kind(Span.Kind.CLIENT).name("foo").tag("foo", "bar")
+        .remoteEndpoint(Endpoint.create("backend", 127 << 24 | 1))
+        .start(1L).annotate(2L, "baz").finish(3L);
+
+    TraceContext other = context.toBuilder().spanId(context.spanId() + 1).build();
+    recycled.reset(other);
+
+    assertThat(recycled.start(5L).finish(6L).toSpan())
+        .isEqualTo(new MutableSpan(other, localEndpoint).start(5L).finish(6L).toSpan());
+  }
+
+  @Test public void reset_clearsDuration() {
+    MutableSpan recycled = newSpan().start(1L).finish(3L);
+
+    assertThat(recycled.reset(context).finish(null).toSpan().duration)
+        .isNull();
+  }
+
+  @Test public void mutationsFromStaleHandleAreDropped_afterFinish() {
+    MutableSpan span = newSpan().start(context, 1L).finish(2L);
+
+    int tagCount = span.tagCount;
+    span.tag(context, "late", "mutation");
+
+    assertThat(span.tagCount).isEqualTo(tagCount);
+  }
+
+  @Test public void mutationsFromStaleHandleAreDropped_afterReset() {
+    MutableSpan span = newSpan().finish(2L);
+    TraceContext other = context.toBuilder().spanId(context.spanId() + 1).build();
+    span.reset(other);
+
+    span.name(context, "late").annotate(context, 3L, "late").tag(context, "late", "mutation");
+
+    assertThat(span.name).isEmpty();
+    assertThat(span.annotationCount).isZero();
+    assertThat(span.tagCount).isZero();
+  }
+
+  @Test public void annotateIfInFlight() {
+    MutableSpan span = newSpan();
+
+    assertThat(span.annotateIfInFlight(context, 1L, "foo")).isTrue();
+    span.finish(2L);
+    assertThat(span.annotateIfInFlight(context, 3L, "late")).isFalse();
+
+    assertThat(span.annotationCount).isEqualTo(1);
+  }
+
+  @Test public void annotateIfInFlight_lockFree() {
+    MutableSpan span = newSpan();
+    span.events = new SpanEventLog();
+
+    assertThat(span.annotateIfInFlight(context, 1L, "foo")).isTrue();
+    span.drainEvents();
+    assertThat(span.annotateIfInFlight(context, 3L, "late")).isFalse();
+
+    assertThat(span.annotationCount).isEqualTo(1);
+  }
+
   MutableSpan newSpan() {
     return new MutableSpan(context, localEndpoint);
   }
@@ -0,0 +1,138 @@
+package brave.internal.recorder;
+
+import brave.Span;
+import brave.Tracer;
+import brave.internal.Platform;
+import brave.propagation.TraceContext;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import zipkin.Codec;
+import zipkin.Constants;
+import zipkin.Endpoint;
+import zipkin.TraceKeys;
+import zipkin.reporter.Encoding;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(Parameterized.class)
+public class SpanBytesEncoderTest {
+  @Parameterized.Parameters(name = "{0}")
+  public static Collection<Object[]> parameters() {
+    return Arrays.asList(new Object[][] {
+        {Encoding.JSON, Codec.JSON},
+        {Encoding.THRIFT, Codec.THRIFT}
+    });
+  }
+
+  @Parameterized.Parameter(0) public Encoding encoding;
+  @Parameterized.Parameter(1) public Codec codec;
+
+  Endpoint localEndpoint = Platform.get().localEndpoint();
+  TraceContext context = Tracer.newBuilder().build().newTrace().context();
+
+  @Test public void encoding() {
+    assertThat(encoder().encoding())
+        .isEqualTo(encoding);
+  }
+
+  @Test public void localSpan() {
+    assertRoundTrip(newSpan(context).name("encode").start(1L).finish(3L));
+  }
+
+  @Test public void unfinishedSpan() {
+    assertRoundTrip(newSpan(context).finish(null));
+  }
+
+  @Test public void clientSpan() {
+    MutableSpan span = newSpan(context.toBuilder().parentId(1L).build())
+        .kind(Span.Kind.CLIENT)
+        .name("get")
+        .tag(TraceKeys.HTTP_PATH, "/api")
+        .tag("clnt/finagle.version", "6.36.0")
+        .remoteEndpoint(Endpoint.builder().serviceName("backend").ipv4(127 << 24 | 1).port(8080)
+            .build())
+        .start(1L)
+        .annotate(2L, Constants.WIRE_SEND)
+        .annotate(3L, Constants.WIRE_RECV)
+        .finish(4L);
+
+    assertRoundTrip(span);
+  }
+
+  @Test public void serverSpan_128BitDebug() {
+    MutableSpan span = newSpan(context.toBuilder().traceIdHigh(1L).debug(true).build())
+        .kind(Span.Kind.SERVER)
+        .remoteEndpoint(Endpoint.create("frontend", 192 << 24 | 168 << 16 | 1))
+        .start(1L)
+        .finish(2L);
+
+    assertRoundTrip(span);
+  }
+
+  @Test public void escapesAndUnicode() {
+    MutableSpan span = newSpan(context)
+        .name("\"quoted\" \\ slash")
+        .tag("emoji", "😀 ☃ é")
+        .tag("control", "\n\t\r\b\f\u0001  ")
+        .start(1L)
+        .finish(2L);
+
+    assertRoundTrip(span);
+  }
+
+  @Test public void ipv6() throws Exception {
+    for (String address : Arrays.asList("2001:db8::c001", "::1", "::", "fe80::1:0:0:1",
+        "2001:db8:0:1:1:1:1:1")) {
+      Endpoint endpoint = Endpoint.builder().serviceName("service")
+          .ipv6(InetAddress.getByName(address).getAddress()).build();
+
+      MutableSpan span = new MutableSpan(context, endpoint).tag("foo", "bar").finish(null);
+      assertThat(codec.readSpan(SpanBytesEncoder.create(encoding, endpoint).encode(span)))
+          .isEqualTo(roundTrip(span.toSpan()));
+    }
+  }
+
+  @Test public void ipv6_compressedLikeZipkin() throws Exception {
+    Buffer b = new Buffer(64);
+    SpanBytesEncoder.JsonEncoder.writeIpV6(
+        InetAddress.getByName("2001:db8:0:0:1:0:0:1").getAddress(), b);
+
+    assertThat(new String(b.toByteArray(), "UTF-8"))
+        .isEqualTo("2001:db8::1:0:0:1");
+  }
+
+  @Test public void reusesBufferAcrossSpans() {
+    MutableSpan big = newSpan(context).name(new String(new char[2048]).replace('\0', 'a'))
+        .finish(null);
+    MutableSpan small = newSpan(context).name("small").finish(null);
+
+    byte[] encodedBig = encoder().encode(big);
+    byte[] encodedSmall = encoder().encode(small);
+
+    assertThat(codec.readSpan(encodedBig)).isEqualTo(roundTrip(big.toSpan()));
+    assertThat(codec.readSpan(encodedSmall)).isEqualTo(roundTrip(small.toSpan()));
+  }
+
+  /** Encoded spans should read back the same as if zipkin's codec wrote them. */
+  void assertRoundTrip(MutableSpan span) {
+    assertThat(codec.readSpan(encoder().encode(span)))
+        .isEqualTo(roundTrip(span.toSpan()));
+  }
+
+  /** Normalizes fields such as debug=false, which zipkin's json codec reads back as null. */
+  zipkin.Span roundTrip(zipkin.Span span) {
+    return codec.readSpan(codec.writeSpan(span));
+  }
+
+  SpanBytesEncoder encoder() {
+    return SpanBytesEncoder.create(encoding, localEndpoint);
+  }
+
+  MutableSpan newSpan(TraceContext context) {
+    return new MutableSpan(context, localEndpoint);
+  }
+}
@@ -0,0 +1,169 @@
+package brave.internal.recorder;
+
+import brave.SpanFields;
+import brave.Tracer;
+import brave.internal.Platform;
+import brave.propagation.TraceContext;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import zipkin.Endpoint;
+
+import static brave.Span.Kind.CLIENT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpanEventLogTest {
+  Endpoint localEndpoint = Platform.get().localEndpoint();
+  TraceContext context = Tracer.newBuilder().build().newTrace().context();
+
+  @Test public void mutationsAreDeferredUntilDrained() {
+    MutableSpan span = newSpan();
+
+    span.name("foo");
+    span.start(1L);
+
+    assertThat(span.name).isEmpty();
+    assertThat(span.startTimestamp).isZero();
+
+    span.drainEvents();
+
+    assertThat(span.name).isEqualTo("foo");
+    assertThat(span.startTimestamp).isEqualTo(1L);
+  }
+
+  @Test public void drain_appliesInOrder() {
+    MutableSpan span = newSpan();
+
+    span.name("foo");
+    span.annotate(1L, "1");
+    span.name("bar");
+    span.annotate(2L, "2");
+    span.tag("a", "b");
+    span.kind(CLIENT);
+    span.remoteEndpoint(localEndpoint);
+    span.drainEvents();
+
+    assertThat(span.name).isEqualTo("bar");
+    assertThat(span.annotationValues).startsWith("1", "2");
+    assertThat(span.tagKeys).startsWith("a");
+    assertThat(span.kind).isEqualTo(CLIENT);
+    assertThat(span.remoteEndpoint).isEqualTo(localEndpoint);
+  }
+
+  @Test public void drain_dropsLaterMutations() {
+    MutableSpan span = newSpan();
+
+    span.name("foo");
+    span.drainEvents();
+    span.name("bar");
+    span.drainEvents();
+
+    assertThat(span.name).isEqualTo("foo");
+    assertThat(span.events.append(null, SpanEventLog.NAME, 0L, null, "baz")).isFalse();
+  }
+
+  @Test public void customize_appendsOneEvent() {
+    MutableSpan span = newSpan();
+
+    span.customize(context, new SpanFields().name("foo").kind(CLIENT).tag("a", "b").tag("c", "d"),
+        1L);
+
+    assertThat(span.events.head.type).isEqualTo(SpanEventLog.CUSTOMIZE);
+    assertThat(span.events.head.next).isNull();
+    assertThat(span.events.startTimestamp(span)).isEqualTo(1L);
+
+    span.drainEvents();
+
+    assertThat(span.name).isEqualTo("foo");
+    assertThat(span.kind).isEqualTo(CLIENT);
+    assertThat(span.tagKeys).startsWith("a", "c");
+    assertThat(span.startTimestamp).isEqualTo(1L);
+  }
+
+  @Test public void customize_copiesFields() {
+    MutableSpan span = newSpan();
+    SpanFields fields = new SpanFields().name("foo").tag("a", "b");
+
+    span.customize(context, fields, 0L);
+    fields.clear().name("bar").tag("c", "d"); // re-used before the span is drained
+    span.drainEvents();
+
+    assertThat(span.name).isEqualTo("foo");
+    assertThat(span.tagKeys).startsWith("a");
+    assertThat(span.tagKeys).doesNotContain("c");
+    assertThat(span.startTimestamp).isZero();
+  }
+
+  @Test public void startTimestamp_readsLatestStart() {
+    MutableSpan span = newSpan();
+    SpanEventLog log = span.events;
+    assertThat(log.startTimestamp(span)).isZero();
+
+    log.append(null, SpanEventLog.START, 1L, null, null);
+    log.append(null, SpanEventLog.NAME, 0L, null, "foo");
+    log.append(context, SpanEventLog.START, 2L, null, null);
+
+    assertThat(log.startTimestamp(span)).isEqualTo(2L);
+  }
+
+  @Test public void reset_reopensLog() {
+    MutableSpan span = newSpan();
+    span.drainEvents();
+
+    span.reset(context);
+    span.name("foo");
+    span.drainEvents();
+
+    assertThat(span.name).isEqualTo("foo");
+  }
+
+  @Test public void reset_skipsEventsOfPreviousSpan() {
+    MutableSpan span = newSpan();
+    span.drainEvents();
+
+    TraceContext other = context.toBuilder().spanId(context.spanId() + 1).build();
+    span.reset(other);
+    span.tag(context, "late", "mutation"); // from a stale handle of the previous span
+    span.start(other, 1L);
+    span.drainEvents();
+
+    assertThat(span.tagCount).isZero();
+    assertThat(span.startTimestamp).isEqualTo(1L);
+  }
+
+  @Test public void concurrentMutations_areAllRecorded() throws Exception {
+    MutableSpan span = newSpan();
+    int threads = 4, annotationsPerThread = 1000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      for (int i = 0; i < threads; i++) {
+        executor.execute(() -> {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          for (int j = 0; j < annotationsPerThread; j++) span.annotate(j, "foo");
+        });
+      }
+      start.countDown();
+    } finally {
+      executor.shutdown();
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    span.drainEvents();
+
+    assertThat(span.annotationCount).isEqualTo(threads * annotationsPerThread);
+  }
+
+  MutableSpan newSpan() {
+    MutableSpan result = new MutableSpan(context, localEndpoint);
+    result.events = new SpanEventLog();
+    return result;
+  }
+}
@@ -0,0 +1,179 @@
+package brave.internal.recorder;
+
+import brave.Span;
+import brave.Tracer;
+import brave.internal.Platform;
+import brave.propagation.TraceContext;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import zipkin.Constants;
+import zipkin.Endpoint;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TailCaptureTest {
+  Endpoint localEndpoint = Platform.get().localEndpoint();
+  List<zipkin.Span> spans = new ArrayList<>();
+  TailCapture tailCapture =
+      new TailCapture(localEndpoint, 4, 100L, SpanReporter.create(spans::add));
+  TraceContext root = Tracer.newBuilder().build().newTrace().context();
+  TraceContext child = root.toBuilder().parentId(root.spanId()).spanId(root.spanId() + 1).build();
+
+  @Test public void localRootWithError_reportsTrace() {
+    long rootClaim = tailCapture.claim(root, true), childClaim = tailCapture.claim(child, false);
+    tailCapture.start(childClaim, 1L);
+    tailCapture.name(childClaim, "child");
+    tailCapture.finish(childClaim, 2L);
+    assertThat(spans).isEmpty();
+
+    tailCapture.start(rootClaim, 1L);
+    tailCapture.tag(rootClaim, Constants.ERROR, "timeout");
+    tailCapture.finish(rootClaim, 3L);
+
+    assertThat(spans).extracting(s -> s.id)
+        .containsExactly(root.spanId(), child.spanId());
+    assertThat(spans.get(1).name).isEqualTo("child");
+  }
+
+  @Test public void slowLocalRoot_reportsTrace() {
+    long claim = tailCapture.claim(root, true);
+    tailCapture.start(claim, 1L);
+    tailCapture.finish(claim, 101L);
+
+    assertThat(spans).extracting(s -> s.duration).containsExactly(100L);
+  }
+
+  /** Finishing zeros the duration of a server span joined from upstream, so it can't be used. */
+  @Test public void slowSharedServerRoot_reportsTrace() {
+    long claim = tailCapture.claim(root.toBuilder().shared(true).build(), true);
+    tailCapture.kind(claim, Span.Kind.SERVER);
+    tailCapture.start(claim, 1L);
+    tailCapture.finish(claim, 101L);
+
+    assertThat(spans).extracting(s -> s.id).containsExactly(root.spanId());
+  }
+
+  @Test public void fastLocalRoot_reportsNothing() {
+    long claim = tailCapture.claim(root, true);
+    tailCapture.start(claim, 1L);
+    tailCapture.finish(claim, 100L);
+
+    assertThat(spans).isEmpty();
+  }
+
+  @Test public void zeroThreshold_onlyReportsErrors() {
+    tailCapture = new TailCapture(localEndpoint, 4, 0L, SpanReporter.create(spans::add));
+
+    long claim = tailCapture.claim(root, true);
+    tailCapture.start(claim, 1L);
+    tailCapture.finish(claim, Long.MAX_VALUE);
+
+    assertThat(spans).isEmpty();
+  }
+
+  @Test public void doesntReportOtherTraces() {
+    TraceContext other = root.toBuilder().traceId(root.traceId() + 1).build();
+    long otherClaim = tailCapture.claim(other, false), claim = tailCapture.claim(root, true);
+    tailCapture.finish(otherClaim, 2L);
+
+    tailCapture.tag(claim, Constants.ERROR, "");
+    tailCapture.finish(claim, 2L);
+
+    assertThat(spans).extracting(s -> s.traceId).containsExactly(root.traceId());
+  }
+
+  @Test public void doesntReportUnfinishedSpans() {
+    long claim = tailCapture.claim(root, true);
+    tailCapture.claim(child, false);
+
+    tailCapture.tag(claim, Constants.ERROR, "");
+    tailCapture.finish(claim, 2L);
+
+    assertThat(spans).extracting(s -> s.id).containsExactly(root.spanId());
+  }
+
+  @Test public void overwrittenSlot_ignoresStaleClaim() {
+    long childClaim = tailCapture.claim(child, false);
+    for (int i = 0; i < 4; i++) tailCapture.claim(root, true); // wraps the ring
+
+    tailCapture.name(childClaim, "stale");
+    tailCapture.finish(childClaim, 2L);
+
+    // the slot re-used for the root wasn't affected
+    assertThat(tailCapture.slots[0].name).isEmpty();
+    assertThat(tailCapture.slots[0].finished).isFalse();
+  }
+
+  @Test public void reportsOnlyOnce() {
+    long childClaim = tailCapture.claim(child, false);
+    tailCapture.finish(childClaim, 2L);
+
+    long claim = tailCapture.claim(root, true);
+    tailCapture.tag(claim, Constants.ERROR, "");
+    tailCapture.finish(claim, 2L);
+    tailCapture.finish(claim, 2L);
+
+    assertThat(spans).hasSize(2);
+  }
+
+  @Test public void claim_reusesSlots() {
+    MutableSpan[] slots = tailCapture.slots.clone();
+    for (int i = 0; i < 10; i++) tailCapture.claim(root, true);
+
+    assertThat(tailCapture.slots).containsExactly(slots);
+  }
+
+  @Test public void claimOf_unfinishedSpan() {
+    long claim = tailCapture.claim(root, true);
+
+    assertThat(tailCapture.claimOf(root)).isEqualTo(claim);
+    assertThat(tailCapture.claimOf(child)).isEqualTo(TailCapture.RELEASED);
+  }
+
+  @Test public void claimOf_releasedOnFinish() {
+    long claim = tailCapture.claim(root, true);
+    tailCapture.finish(claim, 2L);
+
+    assertThat(tailCapture.claimOf(root)).isEqualTo(TailCapture.RELEASED);
+  }
+
+  @Test public void claimOf_releasedOnOverwrite() {
+    tailCapture.claim(child, false);
+    for (int i = 0; i < 4; i++) {
+      tailCapture.claim(root.toBuilder().spanId(root.spanId() + 2 + i).build(), false);
+    }
+
+    assertThat(tailCapture.claimOf(child)).isEqualTo(TailCapture.RELEASED);
+  }
+
+  @Test public void claimOf_collidingSpanIds() {
+    int lookupSize = tailCapture.lookupClaims.length;
+    TraceContext[] contexts = new TraceContext[3];
+    long[] claims = new long[3];
+    for (int i = 0; i < contexts.length; i++) { // all hash to the same lookup index
+      contexts[i] = root.toBuilder().spanId(root.spanId() + i * (long) lookupSize).build();
+      claims[i] = tailCapture.claim(contexts[i], false);
+    }
+
+    tailCapture.finish(claims[0], 2L);
+
+    assertThat(tailCapture.claimOf(contexts[0])).isEqualTo(TailCapture.RELEASED);
+    assertThat(tailCapture.claimOf(contexts[1])).isEqualTo(claims[1]);
+    assertThat(tailCapture.claimOf(contexts[2])).isEqualTo(claims[2]);
+  }
+
+  @Test public void claimOf_doesntMatchOtherTrace() {
+    tailCapture.claim(root, true);
+
+    assertThat(tailCapture.claimOf(root.toBuilder().traceId(root.traceId() + 1).build()))
+        .isEqualTo(TailCapture.RELEASED);
+  }
+
+  @Test public void isLocalRoot() {
+    long rootClaim = tailCapture.claim(root, true), childClaim = tailCapture.claim(child, false);
+
+    assertThat(tailCapture.isLocalRoot(rootClaim)).isTrue();
+    assertThat(tailCapture.isLocalRoot(childClaim)).isFalse();
+  }
+}
@@ -209,6 +209,37 @@ public class B3PropagationTest {
     );
   }
 
+  /** Simulates a carrier holding values as ASCII bytes, like Netty's AsciiString */
+  @Test
+  public void charSequenceExtractor_doesntNeedStrings() {
+    for (TraceContext context : new TraceContext[] {
+        rootSpan,
+        childSpan,
+        childSpan.toBuilder().traceIdHigh(3L).build(),
+        childSpan.toBuilder().sampled(false).build(),
+        childSpan.toBuilder().debug(true).build()
+    }) {
+      map.clear();
+      propagation.injector(mapEntry).inject(context, map);
+      Map<String, StringBuilder> asciiMap = new LinkedHashMap<>();
+      map.forEach((k, v) -> asciiMap.put(k, new StringBuilder(v)));
+
+      assertThat(B3Propagation.create(Propagation.KeyFactory.STRING)
+          .charSequenceExtractor(Map<String, StringBuilder>::get).extract(asciiMap).context())
+          .isEqualTo(context);
+    }
+  }
+
+  @Test
+  public void charSequenceExtractor_sampledTrueUpperCase() {
+    Map<String, CharSequence> asciiMap = new LinkedHashMap<>();
+    asciiMap.put("X-B3-Sampled", new StringBuilder("TRUE"));
+
+    assertThat(B3Propagation.create(Propagation.KeyFactory.STRING)
+        .charSequenceExtractor(Map<String, CharSequence>::get).extract(asciiMap).samplingFlags())
+        .isEqualTo(SamplingFlags.SAMPLED);
+  }
+
   static class MapEntry implements
       Propagation.Getter<Map<String, String>, String>,
       Propagation.Setter<Map<String, String>, String> {
@@ -0,0 +1,161 @@
+package brave.propagation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.data.MapEntry.entry;
+
+public class B3SinglePropagationTest {
+
+  Propagation<String> propagation =
+      Propagation.Factory.B3_SINGLE.create(Propagation.KeyFactory.STRING);
+  Map<String, String> map = new LinkedHashMap<>();
+  B3PropagationTest.MapEntry mapEntry = new B3PropagationTest.MapEntry();
+
+  TraceContext rootSpan = TraceContext.newBuilder()
+      .traceId(1L)
+      .spanId(1L)
+      .sampled(true).build();
+  TraceContext childSpan = rootSpan.toBuilder()
+      .parentId(rootSpan.spanId())
+      .spanId(2).build();
+
+  @Test public void keys_includeMultipleHeaderForm() {
+    assertThat(propagation.keys()).containsExactly(
+        "b3", "X-B3-TraceId", "X-B3-SpanId", "X-B3-ParentSpanId", "X-B3-Sampled", "X-B3-Flags"
+    );
+  }
+
+  @Test public void inject_rootSpan() {
+    propagation.injector(mapEntry).inject(rootSpan, map);
+
+    assertThat(map).containsExactly(
+        entry("b3", "0000000000000001-0000000000000001-1")
+    );
+  }
+
+  @Test public void inject_childSpan() {
+    propagation.injector(mapEntry).inject(childSpan, map);
+
+    assertThat(map).containsExactly(
+        entry("b3", "0000000000000001-0000000000000002-1-0000000000000001")
+    );
+  }
+
+  @Test public void inject_128BitTrace() {
+    propagation.injector(mapEntry).inject(rootSpan.toBuilder().traceIdHigh(3L).build(), map);
+
+    assertThat(map).containsExactly(
+        entry("b3", "00000000000000030000000000000001-0000000000000001-1")
+    );
+  }
+
+  @Test public void inject_debug() {
+    propagation.injector(mapEntry).inject(rootSpan.toBuilder().debug(true).build(), map);
+
+    assertThat(map).containsExactly(
+        entry("b3", "0000000000000001-0000000000000001-d")
+    );
+  }
+
+  /** The parent can't be written without the sampled field that precedes it */
+  @Test public void inject_unsampled_skipsParent() {
+    propagation.injector(mapEntry).inject(childSpan.toBuilder().sampled(null).build(), map);
+
+    assertThat(map).containsExactly(
+        entry("b3", "0000000000000001-0000000000000002")
+    );
+  }
+
+  @Test public void extract_roundTrip() {
+    for (TraceContext context : new TraceContext[] {
+        rootSpan,
+        childSpan,
+        childSpan.toBuilder().traceIdHigh(3L).build(),
+        childSpan.toBuilder().sampled(false).build(),
+        childSpan.toBuilder().debug(true).build(),
+        rootSpan.toBuilder().sampled(null).build()
+    }) {
+      map.clear();
+      propagation.injector(mapEntry).inject(context, map);
+
+      assertThat(propagation.extractor(mapEntry).extract(map).context())
+          .isEqualTo(context);
+    }
+  }
+
+  @Test public void extract_samplingFlagsOnly() {
+    map.put("b3", "0");
+
+    assertThat(propagation.extractor(mapEntry).extract(map).samplingFlags())
+        .isSameAs(SamplingFlags.NOT_SAMPLED);
+  }
+
+  @Test public void extract_fallsBackToMultipleHeaders() {
+    map.put("X-B3-TraceId", "0000000000000001");
+    map.put("X-B3-SpanId", "0000000000000001");
+    map.put("X-B3-Sampled", "1");
+
+    assertThat(propagation.extractor(mapEntry).extract(map).context())
+        .isEqualTo(rootSpan);
+  }
+
+  @Test public void extract_prefersSingleHeader() {
+    map.put("b3", "0000000000000001-0000000000000002-1-0000000000000001");
+    map.put("X-B3-TraceId", "0000000000000001");
+    map.put("X-B3-SpanId", "0000000000000001");
+
+    assertThat(propagation.extractor(mapEntry).extract(map).context())
+        .isEqualTo(childSpan);
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void extract_malformed_traceIdLength() {
+    map.put("b3", "00000000000001-0000000000000001");
+
+    propagation.extractor(mapEntry).extract(map);
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void extract_malformed_sampled() {
+    map.put("b3", "0000000000000001-0000000000000001-x");
+
+    propagation.extractor(mapEntry).extract(map);
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void extract_malformed_trailingCharacters() {
+    map.put("b3", "0000000000000001-0000000000000002-1-0000000000000001-");
+
+    propagation.extractor(mapEntry).extract(map);
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void extract_malformed_hex() {
+    map.put("b3", "000000000000000g-0000000000000001");
+
+    propagation.extractor(mapEntry).extract(map);
+  }
+
+  @Test public void charSequenceExtractor() {
+    Map<String, CharSequence> asciiMap = new LinkedHashMap<>();
+    asciiMap.put("b3", new StringBuilder("0000000000000001-0000000000000002-1-0000000000000001"));
+
+    assertThat(B3SinglePropagation.create(Propagation.KeyFactory.STRING)
+        .charSequenceExtractor(Map<String, CharSequence>::get).extract(asciiMap).context())
+        .isEqualTo(childSpan);
+  }
+
+  @Test public void charSequenceExtractor_fallsBackToMultipleHeaders() {
+    Map<String, CharSequence> asciiMap = new LinkedHashMap<>();
+    asciiMap.put("X-B3-TraceId", new StringBuilder("0000000000000001"));
+    asciiMap.put("X-B3-SpanId", new StringBuilder("0000000000000001"));
+    asciiMap.put("X-B3-Sampled", new StringBuilder("1"));
+
+    assertThat(B3SinglePropagation.create(Propagation.KeyFactory.STRING)
+        .charSequenceExtractor(Map<String, CharSequence>::get).extract(asciiMap).context())
+        .isEqualTo(rootSpan);
+  }
+}
@@ -0,0 +1,137 @@
+package brave.propagation;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+
+public class BinaryPropagationTest {
+
+  BinaryPropagation<String> propagation = BinaryPropagation.create(Propagation.KeyFactory.STRING);
+  Map<String, byte[]> map = new LinkedHashMap<>();
+
+  TraceContext rootSpan = TraceContext.newBuilder()
+      .traceId(1L)
+      .spanId(1L)
+      .sampled(true).build();
+  TraceContext childSpan = rootSpan.toBuilder()
+      .parentId(rootSpan.spanId())
+      .spanId(2).build();
+
+  @Test public void keys() {
+    assertThat(propagation.keys()).containsExactly("b3-bin");
+  }
+
+  @Test public void toBytes_childSpan() {
+    assertThat(BinaryPropagation.toBytes(childSpan)).containsExactly(new byte[] {
+        0, 0, 0, 0, 0, 0, 0, 2, // span ID
+        0, 0, 0, 0, 0, 0, 0, 1, // parent ID
+        0, 0, 0, 0, 0, 0, 0, 1, // trace ID
+        0, 0, 0, 0, 0, 0, 0, 6 // sampling set, sampled
+    });
+  }
+
+  @Test public void toBytes_rootSpan_flagsRoot() {
+    byte[] bytes = BinaryPropagation.toBytes(rootSpan.toBuilder().spanId(2L).build());
+
+    assertThat(bytes).hasSize(BinaryPropagation.SIZE_64);
+    assertThat(bytes[15]).isEqualTo((byte) 2); // the span's own ID is in the parent position
+    assertThat(bytes[31]).isEqualTo((byte) (2 | 4 | 8)); // sampling set, sampled, root
+  }
+
+  @Test public void toBytes_128BitTrace() {
+    byte[] bytes = BinaryPropagation.toBytes(childSpan.toBuilder().traceIdHigh(3L).build());
+
+    assertThat(bytes).hasSize(BinaryPropagation.SIZE_128);
+    assertThat(bytes[23]).isEqualTo((byte) 3);
+    assertThat(bytes[31]).isEqualTo((byte) 1);
+  }
+
+  @Test public void roundTrip() {
+    for (TraceContext context : contexts()) {
+      propagation.injector(Map<String, byte[]>::put).inject(context, map);
+
+      assertThat(propagation.extractor(Map<String, byte[]>::get).extract(map).context())
+          .isEqualTo(context);
+    }
+  }
+
+  @Test public void roundTrip_offsetInArray() {
+    byte[] bytes = new byte[3 + BinaryPropagation.SIZE_128];
+    for (TraceContext context : contexts()) {
+      int length = BinaryPropagation.write(context, bytes, 3);
+
+      assertThat(BinaryPropagation.read(bytes, 3, length))
+          .isEqualTo(context);
+    }
+  }
+
+  @Test public void roundTrip_byteBuffer() {
+    for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+      for (TraceContext context : contexts()) {
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryPropagation.SIZE_128).order(order);
+        BinaryPropagation.write(context, buffer);
+
+        assertThat(buffer.position()).isEqualTo(BinaryPropagation.sizeInBytes(context));
+        // regardless of the buffer's order, values are big-endian
+        assertThat(buffer.array()).startsWith(BinaryPropagation.toBytes(context));
+
+        buffer.flip();
+        assertThat(BinaryPropagation.read(buffer))
+            .isEqualTo(context);
+        assertThat(buffer.hasRemaining()).isFalse();
+      }
+    }
+  }
+
+  @Test public void extract_absent() {
+    TraceContextOrSamplingFlags result = propagation.extractor(Map<String, byte[]>::get)
+        .extract(map);
+
+    assertThat(result.samplingFlags()).isEqualTo(SamplingFlags.EMPTY);
+  }
+
+  /** Brave 3 used to mark a root span by setting all IDs the same instead of a flag */
+  @Test public void read_legacyRoot() {
+    byte[] bytes = BinaryPropagation.toBytes(childSpan.toBuilder().spanId(1L).build());
+    bytes[31] = 0; // clear the flags
+
+    assertThat(BinaryPropagation.read(bytes, 0, bytes.length).parentId())
+        .isNull();
+  }
+
+  @Test public void read_badLength() {
+    try {
+      BinaryPropagation.read(new byte[33], 0, 33);
+      failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("length 33 != 32 or 40");
+    }
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void read_notEnoughBytes() {
+    BinaryPropagation.read(new byte[40], 10, 32);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void write_notEnoughRoom() {
+    BinaryPropagation.write(rootSpan, new byte[40], 10);
+  }
+
+  TraceContext[] contexts() {
+    return new TraceContext[] {
+        rootSpan,
+        childSpan,
+        childSpan.toBuilder().traceIdHigh(3L).build(),
+        childSpan.toBuilder().sampled(false).build(),
+        childSpan.toBuilder().sampled(null).build(),
+        childSpan.toBuilder().debug(true).build(),
+        childSpan.toBuilder().spanId(-1L).traceId(Long.MIN_VALUE).build()
+    };
+  }
+}
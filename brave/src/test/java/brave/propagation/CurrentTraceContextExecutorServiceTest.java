@@ -0,0 +1,164 @@
+package brave.propagation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CurrentTraceContextExecutorServiceTest {
+  // Ensures one at-a-time, but also on a different thread
+  ScheduledExecutorService wrappedExecutor = Executors.newSingleThreadScheduledExecutor();
+  CurrentTraceContext currentTraceContext = CurrentTraceContext.Default.create();
+  ExecutorService executor = currentTraceContext.executorService(wrappedExecutor);
+
+  TraceContext context = TraceContext.newBuilder().traceId(1).spanId(1).build();
+  TraceContext context2 = TraceContext.newBuilder().traceId(1).parentId(1L).spanId(2).build();
+
+  @After public void shutdownExecutor() throws InterruptedException {
+    wrappedExecutor.shutdown();
+    wrappedExecutor.awaitTermination(1, TimeUnit.SECONDS);
+  }
+
+  @Test public void execute() throws Exception {
+    AtomicReference<TraceContext> result = new AtomicReference<>();
+    CountDownLatch latch = new CountDownLatch(1);
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+      executor.execute(() -> {
+        result.set(currentTraceContext.get());
+        latch.countDown();
+      });
+    }
+    latch.await();
+
+    assertThat(result.get()).isEqualTo(context);
+  }
+
+  @Test public void submit_Callable() throws Exception {
+    Future<TraceContext> future;
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+      future = executor.submit(currentTraceContext::get);
+    }
+
+    assertThat(future.get()).isEqualTo(context);
+  }
+
+  @Test public void submit_capturesAtSubmitTime() throws Exception {
+    Future<TraceContext> future1, future2;
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+      future1 = executor.submit(currentTraceContext::get);
+    }
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context2)) {
+      future2 = executor.submit(currentTraceContext::get);
+    }
+
+    assertThat(future1.get()).isEqualTo(context);
+    assertThat(future2.get()).isEqualTo(context2);
+  }
+
+  @Test public void submit_restoresPoolThreadScope() throws Exception {
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+      executor.submit(currentTraceContext::get).get();
+    }
+
+    assertThat(wrappedExecutor.submit(currentTraceContext::get).get()).isNull();
+  }
+
+  @Test public void invokeAll() throws Exception {
+    List<Future<TraceContext>> futures;
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+      Callable<TraceContext> task = currentTraceContext::get;
+      futures = executor.invokeAll(Arrays.asList(task, task));
+    }
+
+    for (Future<TraceContext> future : futures) {
+      assertThat(future.get()).isEqualTo(context);
+    }
+  }
+
+  @Test public void invokeAny() throws Exception {
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+      Callable<TraceContext> task = currentTraceContext::get;
+      assertThat(executor.invokeAny(Arrays.asList(task, task))).isEqualTo(context);
+    }
+  }
+
+  @Test public void schedule() throws Exception {
+    ScheduledExecutorService executor =
+        currentTraceContext.scheduledExecutorService(wrappedExecutor);
+
+    Future<TraceContext> future;
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+      future = executor.schedule(currentTraceContext::get, 1, TimeUnit.MILLISECONDS);
+    }
+
+    assertThat(future.get()).isEqualTo(context);
+  }
+
+  @Test public void scheduleAtFixedRate() throws Exception {
+    ScheduledExecutorService executor =
+        currentTraceContext.scheduledExecutorService(wrappedExecutor);
+
+    AtomicReference<TraceContext> result = new AtomicReference<>();
+    CountDownLatch latch = new CountDownLatch(2);
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+      executor.scheduleAtFixedRate(() -> {
+        result.set(currentTraceContext.get());
+        latch.countDown();
+      }, 0, 1, TimeUnit.MILLISECONDS);
+    }
+    latch.await();
+
+    assertThat(result.get()).isEqualTo(context);
+  }
+
+  @Test public void executor_completableFuture() throws Exception {
+    Executor executor = currentTraceContext.executor(ForkJoinPool.commonPool());
+
+    CompletableFuture<TraceContext> future;
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+      future = CompletableFuture.supplyAsync(currentTraceContext::get, executor)
+          .thenApplyAsync(previous -> currentTraceContext.get(), executor);
+    }
+
+    assertThat(future.get()).isEqualTo(context);
+  }
+
+  @Test public void executorService_forkJoinPool() throws Exception {
+    ExecutorService executor = currentTraceContext.executorService(new ForkJoinPool(1));
+    try {
+      Future<TraceContext> future;
+      try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+        future = executor.submit(currentTraceContext::get);
+      }
+      assertThat(future.get()).isEqualTo(context);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test public void wrap_noCurrentContext() throws Exception {
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+      Callable<TraceContext> task = CurrentTraceContext.Default.create().wrap(() -> null);
+      assertThat(task.call()).isNull();
+    }
+
+    Callable<TraceContext> task = currentTraceContext.wrap(currentTraceContext::get);
+    try (CurrentTraceContext.Scope ws = currentTraceContext.newScope(context)) {
+      assertThat(task.call()).isNull(); // what was current when wrapped
+      assertThat(currentTraceContext.get()).isEqualTo(context); // restored after
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package brave.propagation;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class CurrentTraceContextTest {
+  CurrentTraceContext currentTraceContext = CurrentTraceContext.Default.create();
+  TraceContext context = TraceContext.newBuilder().traceId(1L).spanId(1L).build();
+  TraceContext context2 = context.toBuilder().parentId(1L).spanId(2L).build();
+
+  @Test public void currentSpan_defaultsToNull() {
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void newScope_retainsContext() {
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      assertThat(currentTraceContext.get()).isEqualTo(context);
+    }
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void newScope_restoresPrevious() {
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      try (CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(context2)) {
+        assertThat(currentTraceContext.get()).isEqualTo(context2);
+      }
+      assertThat(currentTraceContext.get()).isEqualTo(context);
+    }
+  }
+
+  @Test public void newScope_canClearScope() {
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      try (CurrentTraceContext.Scope noScope = currentTraceContext.newScope(null)) {
+        assertThat(currentTraceContext.get()).isNull();
+      }
+      assertThat(currentTraceContext.get()).isEqualTo(context);
+    }
+  }
+
+  @Test public void newScope_deepNesting() {
+    CurrentTraceContext.Scope[] scopes = new CurrentTraceContext.Scope[10];
+    for (int i = 0; i < scopes.length; i++) {
+      scopes[i] = currentTraceContext.newScope(context.toBuilder().spanId(i + 1).build());
+    }
+    for (int i = scopes.length - 1; i >= 0; i--) {
+      assertThat(currentTraceContext.get().spanId()).isEqualTo(i + 1);
+      scopes[i].close();
+    }
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void close_extraCallsAreIgnored() {
+    CurrentTraceContext.Scope scope = currentTraceContext.newScope(context);
+    scope.close();
+    scope.close();
+
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void close_extraCallsAreIgnored_nested() {
+    CurrentTraceContext.Scope scope = currentTraceContext.newScope(context);
+    CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(context2);
+    scope2.close();
+    scope2.close(); // must not pop the outer scope
+
+    assertThat(currentTraceContext.get()).isEqualTo(context);
+    scope.close();
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void close_extraCallsAreIgnored_afterReopen() {
+    CurrentTraceContext.Scope scope = currentTraceContext.newScope(context);
+    CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(context2);
+    scope2.close();
+    CurrentTraceContext.Scope scope3 = currentTraceContext.newScope(context2);
+    scope2.close(); // same depth as scope3, but a different scope
+
+    assertThat(currentTraceContext.get()).isEqualTo(context2);
+    scope3.close();
+    scope.close();
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void close_outerUnwindsInnerScopes() {
+    CurrentTraceContext.Scope scope = currentTraceContext.newScope(context);
+    CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(context2);
+    currentTraceContext.newScope(context2); // leaked
+    scope.close();
+
+    assertThat(currentTraceContext.get()).isNull();
+    scope2.close(); // already closed by the outer scope
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  /** A leaked scope mustn't leave a pooled thread in a stale trace */
+  @Test public void close_outerRecoversFromLeakedScope() {
+    CurrentTraceContext.Scope scope = currentTraceContext.newScope(null);
+    currentTraceContext.newScope(context); // leaked
+    scope.close();
+
+    try (CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(context2)) {
+      assertThat(currentTraceContext.get()).isEqualTo(context2);
+    }
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void close_fromAnotherThreadIsIgnored() throws Exception {
+    CurrentTraceContext.Scope scope = currentTraceContext.newScope(context);
+    Thread thread = new Thread(scope::close);
+    thread.start();
+    thread.join();
+
+    assertThat(currentTraceContext.get()).isEqualTo(context);
+    scope.close();
+    assertThat(currentTraceContext.get()).isNull();
+  }
+
+  @Test public void newScope_doesntAllocate() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+    assumeTrue(allocations.isThreadAllocatedMemorySupported());
+    allocations.setThreadAllocatedMemoryEnabled(true);
+
+    for (int i = 0; i < 10_000; i++) openAndCloseNested(); // warm up, including the JIT
+    long id = Thread.currentThread().getId();
+    long before = allocations.getThreadAllocatedBytes(id);
+    for (int i = 0; i < 10_000; i++) openAndCloseNested();
+    long after = allocations.getThreadAllocatedBytes(id);
+
+    assertThat(after - before).isZero();
+  }
+
+  void openAndCloseNested() {
+    CurrentTraceContext.Scope scope = currentTraceContext.newScope(context);
+    currentTraceContext.newScope(context2).close();
+    scope.close();
+  }
+
+  @Test public void instancesDontShareScope() {
+    CurrentTraceContext other = CurrentTraceContext.Default.create();
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      assertThat(other.get()).isNull();
+    }
+  }
+
+  @Test public void default_isntInherited() throws Exception {
+    assertThat(getFromNewThread(context)).isNull();
+  }
+
+  @Test public void inheritable_isInherited() throws Exception {
+    currentTraceContext = CurrentTraceContext.Default.inheritable();
+
+    assertThat(getFromNewThread(context)).isEqualTo(context);
+  }
+
+  /** The child thread must not pop the parent's scopes */
+  @Test public void inheritable_childClosesOwnScopes() throws Exception {
+    currentTraceContext = CurrentTraceContext.Default.inheritable();
+
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      Thread thread = new Thread(() -> {
+        currentTraceContext.newScope(context2).close();
+        currentTraceContext.newScope(null);
+      });
+      thread.start();
+      thread.join();
+
+      assertThat(currentTraceContext.get()).isEqualTo(context);
+    }
+  }
+
+  TraceContext getFromNewThread(TraceContext context) throws InterruptedException {
+    AtomicReference<TraceContext> result = new AtomicReference<>();
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      Thread thread = new Thread(() -> result.set(currentTraceContext.get()));
+      thread.start();
+      thread.join();
+    }
+    return result.get();
+  }
+}
@@ -0,0 +1,131 @@
+package brave.propagation;
+
+import brave.Tracer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+import static org.assertj.core.data.MapEntry.entry;
+
+public class ExtraFieldPropagationTest {
+  ExtraFieldPropagation.Factory factory =
+      ExtraFieldPropagation.newFactory(Propagation.Factory.B3, "x-tenant", "X-Priority");
+  Propagation<String> propagation = factory.create(Propagation.KeyFactory.STRING);
+  Map<String, String> map = new LinkedHashMap<>();
+  TraceContext.Injector<Map<String, String>> injector = propagation.injector(Map::put);
+  TraceContext.Extractor<Map<String, String>> extractor = propagation.extractor(Map::get);
+
+  TraceContext context = TraceContext.newBuilder()
+      .traceId(1L)
+      .spanId(2L)
+      .sampled(true).build();
+
+  @Test public void keys_includeDelegateAndLowercaseFields() {
+    assertThat(propagation.keys()).containsExactly(
+        "X-B3-TraceId", "X-B3-SpanId", "X-B3-ParentSpanId", "X-B3-Sampled", "X-B3-Flags",
+        "x-tenant", "x-priority"
+    );
+  }
+
+  @Test public void get_unset() {
+    assertThat(ExtraFieldPropagation.get(context, "x-tenant")).isNull();
+  }
+
+  @Test public void set_copiesOnWrite() {
+    TraceContext withTenant = factory.set(context, "x-tenant", "acme");
+    TraceContext withPriority = factory.set(withTenant, "X-Priority", "high");
+
+    assertThat(ExtraFieldPropagation.get(context, "x-tenant")).isNull();
+    assertThat(ExtraFieldPropagation.get(withTenant, "x-tenant")).isEqualTo("acme");
+    assertThat(ExtraFieldPropagation.get(withTenant, "x-priority")).isNull();
+    assertThat(ExtraFieldPropagation.get(withPriority, "x-tenant")).isEqualTo("acme");
+    assertThat(ExtraFieldPropagation.get(withPriority, "x-priority")).isEqualTo("high");
+  }
+
+  @Test public void set_sameValueReturnsSameContext() {
+    TraceContext withTenant = factory.set(context, "x-tenant", "acme");
+
+    assertThat(factory.set(withTenant, "x-tenant", "acme")).isSameAs(withTenant);
+  }
+
+  @Test public void set_unknownField() {
+    try {
+      factory.set(context, "x-country", "nz");
+      failBecauseExceptionWasNotThrown(IllegalArgumentException.class);
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("x-country is not in [x-tenant, x-priority]");
+    }
+  }
+
+  @Test public void children_shareStorageUntilChanged() {
+    Tracer tracer = Tracer.newBuilder().build();
+    TraceContext parent = factory.set(tracer.newTrace().context(), "x-tenant", "acme");
+    TraceContext child = tracer.newChild(parent).context();
+
+    assertThat(child.extra).isSameAs(parent.extra);
+    assertThat(ExtraFieldPropagation.get(child, "x-tenant")).isEqualTo("acme");
+
+    TraceContext changed = factory.set(child, "x-tenant", "other");
+    assertThat(changed.extra).isNotSameAs(parent.extra);
+    assertThat(ExtraFieldPropagation.get(parent, "x-tenant")).isEqualTo("acme");
+  }
+
+  @Test public void inject() {
+    injector.inject(factory.set(context, "x-tenant", "acme"), map);
+
+    assertThat(map).containsExactly(
+        entry("X-B3-TraceId", "0000000000000001"),
+        entry("X-B3-SpanId", "0000000000000002"),
+        entry("X-B3-Sampled", "1"),
+        entry("x-tenant", "acme")
+    );
+  }
+
+  @Test public void extract() {
+    injector.inject(context, map);
+    map.put("x-tenant", "acme");
+    map.put("x-priority", "high");
+
+    TraceContext extracted = extractor.extract(map).context();
+
+    assertThat(extracted).isEqualTo(context);
+    assertThat(ExtraFieldPropagation.get(extracted, "x-tenant")).isEqualTo("acme");
+    assertThat(ExtraFieldPropagation.get(extracted, "x-priority")).isEqualTo("high");
+  }
+
+  @Test public void extract_noFields_noStorage() {
+    injector.inject(context, map);
+
+    assertThat(extractor.extract(map).context().extra).isNull();
+  }
+
+  /** Fields can only be carried with trace identifiers */
+  @Test public void extract_samplingFlagsOnly_dropsFields() {
+    map.put("X-B3-Sampled", "0");
+    map.put("x-tenant", "acme");
+
+    assertThat(extractor.extract(map).samplingFlags()).isEqualTo(SamplingFlags.NOT_SAMPLED);
+  }
+
+  /** A differently configured propagation reads fields by name */
+  @Test public void inject_otherFactory() {
+    ExtraFieldPropagation.Factory other =
+        ExtraFieldPropagation.newFactory(Propagation.Factory.B3, "x-priority");
+
+    injector.inject(other.set(context, "x-priority", "high"), map);
+
+    assertThat(map).contains(entry("x-priority", "high"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void newFactory_noNames() {
+    ExtraFieldPropagation.newFactory(Propagation.Factory.B3);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void newFactory_emptyName() {
+    ExtraFieldPropagation.newFactory(Propagation.Factory.B3, " ");
+  }
+}
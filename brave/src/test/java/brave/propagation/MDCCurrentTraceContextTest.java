@@ -0,0 +1,53 @@
+package brave.propagation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class MDCCurrentTraceContextTest {
+  Map<String, String> map = new LinkedHashMap<>();
+  CurrentTraceContext currentTraceContext = MDCCurrentTraceContext.create(
+      new MDCCurrentTraceContext.MDC() {
+        @Override public void put(String key, String value) {
+          map.put(key, value);
+        }
+
+        @Override public void remove(String key) {
+          map.remove(key);
+        }
+      });
+  TraceContext context = TraceContext.newBuilder().traceId(1L).spanId(1L).build();
+  TraceContext context2 = context.toBuilder().parentId(1L).spanId(2L).build();
+
+  @Test public void newScope_addsIds() {
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      assertThat(currentTraceContext.get()).isEqualTo(context);
+      assertThat(map).containsExactly(
+          entry("traceId", "0000000000000001"),
+          entry("spanId", "0000000000000001")
+      );
+    }
+    assertThat(map).isEmpty();
+  }
+
+  @Test public void close_restoresPreviousIds() {
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      try (CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(context2)) {
+        assertThat(map).containsEntry("spanId", "0000000000000002");
+      }
+      assertThat(map).containsEntry("spanId", "0000000000000001");
+    }
+  }
+
+  @Test public void newScope_nullClearsIds() {
+    try (CurrentTraceContext.Scope scope = currentTraceContext.newScope(context)) {
+      try (CurrentTraceContext.Scope scope2 = currentTraceContext.newScope(null)) {
+        assertThat(map).isEmpty();
+      }
+      assertThat(map).containsKeys("traceId", "spanId");
+    }
+  }
+}
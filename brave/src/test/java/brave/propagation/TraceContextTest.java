@@ -36,4 +36,65 @@ public class TraceContextTest {
     assertThat(context.toString())
         .isEqualTo("000000000000014d00000000000001bc/0000000000000003");
   }
+
+  @Test public void hexStrings_cached() {
+    TraceContext context = TraceContext.newBuilder().traceId(333L).spanId(3).parentId(2L).build();
+
+    assertThat(context.traceIdString())
+        .isEqualTo("000000000000014d")
+        .isSameAs(context.traceIdString());
+    assertThat(context.spanIdString())
+        .isEqualTo("0000000000000003")
+        .isSameAs(context.spanIdString());
+    assertThat(context.parentIdString())
+        .isEqualTo("0000000000000002")
+        .isSameAs(context.parentIdString());
+  }
+
+  @Test public void parentIdString_nullOnRoot() {
+    TraceContext context = TraceContext.newBuilder().traceId(333L).spanId(3).build();
+
+    assertThat(context.parentIdString()).isNull();
+  }
+
+  /** A child re-uses the encoded trace ID of its parent */
+  @Test public void toBuilder_retainsTraceIdString() {
+    TraceContext parent = TraceContext.newBuilder().traceId(333L).spanId(3).build();
+    String traceIdString = parent.traceIdString();
+
+    TraceContext child = parent.toBuilder().spanId(4).parentId(3L).build();
+    assertThat(child.traceIdString()).isSameAs(traceIdString);
+
+    TraceContext otherTrace = parent.toBuilder().traceId(444L).build();
+    assertThat(otherTrace.traceIdString()).isEqualTo("00000000000001bc");
+  }
+
+  @Test public void flags() {
+    TraceContext context = TraceContext.newBuilder().traceId(333L).spanId(3)
+        .sampled(true).debug(true).shared(true).build();
+
+    assertThat(context.sampled()).isTrue();
+    assertThat(context.debug()).isTrue();
+    assertThat(context.shared()).isTrue();
+
+    context = context.toBuilder().sampled(null).debug(false).shared(false).build();
+
+    assertThat(context.sampled()).isNull();
+    assertThat(context.debug()).isFalse();
+    assertThat(context.shared()).isFalse();
+  }
+
+  @Test public void parentId_nullClearsParent() {
+    TraceContext context = TraceContext.newBuilder().traceId(333L).spanId(3).parentId(2L)
+        .build().toBuilder().parentId(null).build();
+
+    assertThat(context.parentId()).isNull();
+    assertThat(context)
+        .isEqualTo(TraceContext.newBuilder().traceId(333L).spanId(3).build());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void build_requiresSpanId() {
+    TraceContext.newBuilder().traceId(333L).build();
+  }
 }
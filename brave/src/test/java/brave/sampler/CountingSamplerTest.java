@@ -1,8 +1,10 @@
 package brave.sampler;
 
+import java.util.Random;
 import org.assertj.core.data.Percentage;
 import org.junit.Test;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.data.Percentage.withPercentage;
 
 public class CountingSamplerTest extends SamplerTest {
@@ -15,8 +17,29 @@ public class CountingSamplerTest extends SamplerTest {
   }
 
   @Test
-  public void sampleRateMinimumOnePercent() throws Exception {
+  public void sampleRateMinimumOneHundredthOfAPercent() throws Exception {
     thrown.expect(IllegalArgumentException.class);
-    newSampler(0.0001f);
+    newSampler(0.00001f);
+  }
+
+  @Test
+  public void retainsOneHundredthOfAPercent() {
+    Sampler sampler = newSampler(0.0001f);
+
+    // parallel to ensure there aren't any unsynchronized race conditions
+    long passed = new Random().longs(INPUT_SIZE).parallel().filter(sampler::isSampled).count();
+
+    assertThat(passed).isEqualTo(INPUT_SIZE / 10000);
+  }
+
+  /** Any window of 10000 consecutive decisions is exact, not just those starting at zero */
+  @Test
+  public void accurateOverAnyWindow() {
+    Sampler sampler = newSampler(0.25f);
+    for (int i = 0; i < 1234; i++) sampler.isSampled(0L);
+
+    long passed = new Random().longs(10000).filter(sampler::isSampled).count();
+
+    assertThat(passed).isEqualTo(2500);
   }
 }
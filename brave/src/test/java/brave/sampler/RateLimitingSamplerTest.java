@@ -0,0 +1,151 @@
+package brave.sampler;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import static brave.sampler.RateLimitingSampler.NANOS_PER_DECISECOND;
+import static brave.sampler.RateLimitingSampler.NANOS_PER_SECOND;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(RateLimitingSampler.class)
+public class RateLimitingSamplerTest {
+
+  @Test public void samplesOnlySpecifiedNumber() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND);
+    Sampler sampler = RateLimitingSampler.create(2);
+
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND + NANOS_PER_DECISECOND * 9);
+    assertThat(sampler.isSampled(0L)).isTrue();
+    assertThat(sampler.isSampled(0L)).isTrue();
+    assertThat(sampler.isSampled(0L)).isFalse();
+  }
+
+  @Test public void resetsAfterASecond() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND);
+    Sampler sampler = RateLimitingSampler.create(10);
+
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND + NANOS_PER_DECISECOND * 9);
+    assertThat(countSampled(sampler, 20)).isEqualTo(10);
+
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND * 2);
+    assertThat(countSampled(sampler, 20)).isEqualTo(1); // only the first decisecond's budget
+  }
+
+  @Test public void releasesBudgetPerDecisecond() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    Sampler sampler = RateLimitingSampler.create(100);
+
+    assertThat(countSampled(sampler, 100)).isEqualTo(10);
+
+    when(System.nanoTime()).thenReturn(NANOS_PER_DECISECOND * 5);
+    assertThat(countSampled(sampler, 100)).isEqualTo(50);
+
+    when(System.nanoTime()).thenReturn(NANOS_PER_DECISECOND * 9);
+    assertThat(countSampled(sampler, 100)).isEqualTo(40);
+  }
+
+  /** System.nanoTime can be negative, and can overflow */
+  @Test public void worksWithNegativeNanoTime() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(Long.MAX_VALUE - NANOS_PER_DECISECOND);
+    Sampler sampler = RateLimitingSampler.create(10);
+
+    assertThat(countSampled(sampler, 20)).isEqualTo(1);
+
+    // the deadline overflowed to a negative number
+    when(System.nanoTime()).thenReturn(Long.MIN_VALUE + NANOS_PER_DECISECOND * 9);
+    assertThat(countSampled(sampler, 20)).isEqualTo(1);
+
+    when(System.nanoTime()).thenReturn(Long.MIN_VALUE + NANOS_PER_SECOND);
+    assertThat(countSampled(sampler, 20)).isEqualTo(1);
+  }
+
+  @Test public void lowRate_samplesInFirstDecisecond() {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    Sampler sampler = RateLimitingSampler.create(1);
+
+    assertThat(sampler.isSampled(0L)).isTrue();
+    assertThat(sampler.isSampled(0L)).isFalse();
+  }
+
+  @Test public void zeroMeansDropAllTraces() {
+    assertThat(RateLimitingSampler.create(0)).isSameAs(Sampler.NEVER_SAMPLE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void tracesPerSecondCantBeNegative() {
+    RateLimitingSampler.create(-1);
+  }
+
+  @Test public void concurrentCallers_dontExceedBudget() throws Exception {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    Sampler sampler = RateLimitingSampler.create(1000);
+    when(System.nanoTime()).thenReturn(NANOS_PER_DECISECOND * 9);
+
+    assertThat(countSampledConcurrently(sampler)).isEqualTo(1000);
+  }
+
+  /** Callers sampling against the new budget before the reset completes must stay counted. */
+  @Test public void concurrentCallers_dontExceedBudgetAcrossReset() throws Exception {
+    mockStatic(System.class);
+    when(System.nanoTime()).thenReturn(0L);
+    Sampler sampler = RateLimitingSampler.create(1000);
+    when(System.nanoTime()).thenReturn(NANOS_PER_DECISECOND * 5);
+    assertThat(countSampled(sampler, 10)).isEqualTo(10);
+
+    when(System.nanoTime()).thenReturn(NANOS_PER_SECOND);
+    assertThat(countSampledConcurrently(sampler)).isEqualTo(100); // the first decisecond's budget
+  }
+
+  static int countSampledConcurrently(Sampler sampler) throws Exception {
+    int threads = 4;
+    AtomicInteger sampled = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      for (int i = 0; i < threads; i++) {
+        executor.execute(() -> {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          Random random = new Random();
+          for (int j = 0; j < 1000; j++) {
+            if (sampler.isSampled(random.nextLong())) sampled.incrementAndGet();
+          }
+        });
+      }
+      start.countDown();
+    } finally {
+      executor.shutdown();
+      assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+    return sampled.get();
+  }
+
+  static int countSampled(Sampler sampler, int attempts) {
+    int result = 0;
+    for (int i = 0; i < attempts; i++) {
+      if (sampler.isSampled(0L)) result++;
+    }
+    return result;
+  }
+}